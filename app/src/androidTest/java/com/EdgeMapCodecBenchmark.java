@@ -0,0 +1,87 @@
+package com.yourname.edgedetection;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bandwidth and encode time of the edge map codec against the JPEG path
+ * (Bitmap.compress at quality 80) on edge maps from the native backend.
+ * Uses the replay corpus (see ReplayCorpus) or a synthetic moving scene.
+ * Results are logged under the tag below.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EdgeMapCodecBenchmark {
+
+    private static final String TAG = "EdgeMapCodecBenchmark";
+
+    @Test
+    public void edgeCodecBeatsJpeg() {
+        NativeProcessor.initProcessor();
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        List<Bitmap> inputs = ReplayCorpus.load(context);
+        String source = inputs.isEmpty() ? "synthetic" : "replay";
+        if (inputs.isEmpty()) {
+            inputs = ReplayCorpus.syntheticScene();
+        }
+
+        EdgeMapCodec codec = new EdgeMapCodec();
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream(64 * 1024);
+        int[] pixels = new int[0];
+
+        long jpegBytes = 0;
+        long edgeBytes = 0;
+        long jpegNanos = 0;
+        long edgeNanos = 0;
+        int keyframes = 0;
+        int sequence = 0;
+
+        for (Bitmap input : inputs) {
+            int width = input.getWidth();
+            int height = input.getHeight();
+            Bitmap edges = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            NativeProcessor.processFrame(input, edges, true);
+
+            long start = System.nanoTime();
+            jpeg.reset();
+            edges.compress(Bitmap.CompressFormat.JPEG, 80, jpeg);
+            jpegNanos += System.nanoTime() - start;
+            jpegBytes += jpeg.size();
+
+            // includes the pixel copy the server does per frame
+            start = System.nanoTime();
+            if (pixels.length != width * height) {
+                pixels = new int[width * height];
+            }
+            edges.getPixels(pixels, 0, width, 0, 0, width, height);
+            if (codec.encode(pixels, width, height, ++sequence)) {
+                keyframes++;
+            }
+            edgeNanos += System.nanoTime() - start;
+            edgeBytes += codec.getOutputLength();
+
+            edges.recycle();
+        }
+
+        int frames = inputs.size();
+        Log.i(TAG, String.format("%s corpus, %d frames (%d keyframes)", source, frames, keyframes));
+        Log.i(TAG, String.format("jpeg: %.1f KB/frame, %.2f ms/frame",
+            jpegBytes / 1024.0 / frames, jpegNanos / 1e6 / frames));
+        Log.i(TAG, String.format("edge: %.1f KB/frame, %.2f ms/frame",
+            edgeBytes / 1024.0 / frames, edgeNanos / 1e6 / frames));
+
+        assertTrue("edge codec larger than JPEG", edgeBytes < jpegBytes);
+        NativeProcessor.releaseProcessor();
+    }
+}
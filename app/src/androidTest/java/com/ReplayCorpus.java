@@ -0,0 +1,96 @@
+package com.yourname.edgedetection;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Input frames for the on-device benchmarks. Uses the replay corpus if one was
+ * pushed to the app's external files dir:
+ *
+ *   adb push corpus/. /sdcard/Android/data/com.yourname.edgedetection/files/replay/
+ *
+ * otherwise a synthetic moving scene.
+ */
+final class ReplayCorpus {
+
+    static final int WIDTH = 640;
+    static final int HEIGHT = 480;
+    private static final int SYNTHETIC_FRAMES = 120;
+
+    private ReplayCorpus() {
+    }
+
+    /**
+     * Replay frames in file name order, empty if no corpus was pushed
+     */
+    static List<Bitmap> load(Context context) {
+        List<Bitmap> frames = new ArrayList<>();
+        File dir = context.getExternalFilesDir("replay");
+        File[] files = dir != null ? dir.listFiles() : null;
+        if (files == null) {
+            return frames;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName().toLowerCase();
+            if (name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png")) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+                Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+                if (bitmap != null) {
+                    frames.add(bitmap);
+                }
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Mostly static scene with one moving object, roughly what a handheld demo looks like
+     */
+    static List<Bitmap> syntheticScene() {
+        List<Bitmap> frames = new ArrayList<>();
+        Paint paint = new Paint();
+        paint.setAntiAlias(true);
+        for (int i = 0; i < SYNTHETIC_FRAMES; i++) {
+            Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            canvas.drawColor(Color.rgb(40, 40, 40));
+
+            paint.setColor(Color.rgb(200, 200, 190));
+            canvas.drawRect(60, 60, 260, 200, paint);
+            paint.setColor(Color.rgb(90, 140, 200));
+            canvas.drawCircle(480, 140, 70, paint);
+            paint.setColor(Color.rgb(180, 90, 60));
+            canvas.drawRect(100, 300, 560, 420, paint);
+
+            paint.setColor(Color.WHITE);
+            float x = 80 + (i * 4) % (WIDTH - 160);
+            canvas.drawCircle(x, 250, 30, paint);
+            frames.add(bitmap);
+        }
+        return frames;
+    }
+
+    /**
+     * Edge maps of the inputs from the native backend; the processor must be initialised
+     */
+    static List<Bitmap> edgeMaps(List<Bitmap> inputs) {
+        List<Bitmap> edges = new ArrayList<>(inputs.size());
+        for (Bitmap input : inputs) {
+            Bitmap output = Bitmap.createBitmap(input.getWidth(), input.getHeight(), Bitmap.Config.ARGB_8888);
+            NativeProcessor.processFrame(input, output, true);
+            edges.add(output);
+        }
+        return edges;
+    }
+}
@@ -0,0 +1,356 @@
+package com.yourname.edgedetection;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load test for EdgeDetectionWebSocketServer: starts the server on loopback,
+ * feeds it replay frames (see ReplayCorpus) through FrameEncoder at camera rate
+ * and connects N simulated viewers, some of which read slowly. Reports server
+ * CPU, broadcast throughput, per-client latency percentiles and drop rates as
+ * JSON, logged under the tag below and written to files/benchmarks/ so runs
+ * before and after a server change can be compared.
+ *
+ * Configured with instrumentation arguments, e.g.
+ *
+ *   adb shell am instrument -w -e class com.yourname.edgedetection.WebSocketLoadBenchmark \
+ *       -e clients 16 -e slowClients 4 -e slowReceiveMs 80 -e durationSec 20 -e edge false \
+ *       com.yourname.edgedetection.test/androidx.test.runner.AndroidJUnitRunner
+ */
+@RunWith(AndroidJUnit4.class)
+public class WebSocketLoadBenchmark {
+
+    private static final String TAG = "WebSocketLoadBenchmark";
+
+    @Test
+    public void serverSustainsViewers() throws Exception {
+        Bundle args = InstrumentationRegistry.getArguments();
+        int clientCount = intArg(args, "clients", 8);
+        int slowClients = intArg(args, "slowClients", 2);
+        int slowReceiveMs = intArg(args, "slowReceiveMs", 50);
+        int durationSec = intArg(args, "durationSec", 10);
+        int fps = intArg(args, "fps", 30);
+        boolean edge = Boolean.parseBoolean(args != null ? args.getString("edge", "true") : "true");
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        List<Bitmap> inputs = ReplayCorpus.load(context);
+        String source = inputs.isEmpty() ? "synthetic" : "replay";
+        if (inputs.isEmpty()) {
+            inputs = ReplayCorpus.syntheticScene();
+        }
+        if (edge) {
+            NativeProcessor.initProcessor();
+            inputs = ReplayCorpus.edgeMaps(inputs);
+            NativeProcessor.releaseProcessor();
+        }
+
+        CountDownLatch started = new CountDownLatch(1);
+        EdgeDetectionWebSocketServer server = new EdgeDetectionWebSocketServer(
+            new StartListener(started), new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        assertTrue("server did not start", started.await(5, TimeUnit.SECONDS));
+
+        int expectedFrames = durationSec * fps;
+        List<LoadClient> clients = new ArrayList<>();
+        URI uri = URI.create("ws://127.0.0.1:" + server.getPort());
+        for (int i = 0; i < clientCount; i++) {
+            // the first clients read slowly, the rest as fast as they can
+            LoadClient client = new LoadClient(uri, i < slowClients ? slowReceiveMs : 0, expectedFrames);
+            assertTrue("client " + i + " could not connect", client.connectBlocking(5, TimeUnit.SECONDS));
+            clients.add(client);
+        }
+
+        FramePool pool = new FramePool(4);
+        FrameEncoder encoder = new FrameEncoder(server, 2);
+        long processCpuStart = Process.getElapsedCpuTime();
+        long start = System.nanoTime();
+        long frameIntervalNanos = 1_000_000_000L / fps;
+        int submitted = 0;
+
+        for (int i = 0; i < expectedFrames; i++) {
+            Bitmap input = inputs.get(i % inputs.size());
+            PooledFrame frame = pool.acquire(input.getWidth(), input.getHeight(), 0);
+            try {
+                new Canvas(frame.getBitmap()).drawBitmap(input, 0, 0, null);
+                frame.setEdgeMap(edge);
+                // same clock as the receivers, so latency covers encode, queueing and delivery
+                frame.setCaptureTimeUs(System.nanoTime() / 1000);
+                encoder.submit(frame);
+                submitted++;
+            } finally {
+                frame.release();
+            }
+            long next = start + (i + 1) * frameIntervalNanos;
+            long sleepNanos = next - System.nanoTime();
+            if (sleepNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            }
+        }
+        // let queued frames drain before measuring
+        Thread.sleep(500);
+        double elapsedSec = (System.nanoTime() - start) / 1e9;
+        long processCpuMs = Process.getElapsedCpuTime() - processCpuStart;
+
+        JSONObject report = new JSONObject();
+        report.put("source", source);
+        report.put("codec", edge ? "edge" : "jpeg");
+        report.put("clients", clientCount);
+        report.put("slowClients", slowClients);
+        report.put("slowReceiveMs", slowReceiveMs);
+        report.put("durationSec", elapsedSec);
+        report.put("targetFps", fps);
+
+        JSONObject serverReport = new JSONObject();
+        long clientCpuNanos = 0;
+        for (LoadClient client : clients) {
+            clientCpuNanos += client.getCpuNanos();
+        }
+        // the simulated viewers run in this process too, their receive CPU is subtracted
+        serverReport.put("processCpuMs", processCpuMs);
+        serverReport.put("clientCpuMs", clientCpuNanos / 1_000_000);
+        serverReport.put("serverCpuMs", processCpuMs - clientCpuNanos / 1_000_000);
+        serverReport.put("cpuCores", (processCpuMs - clientCpuNanos / 1e6) / 1000.0 / elapsedSec);
+        serverReport.put("encodeCpuMsPerFrame", server.getEncodeCpuMs());
+        serverReport.put("sendCpuMsPerFrame", server.getSendCpuMs());
+        serverReport.put("submittedFrames", submitted);
+        serverReport.put("encodedFrames", encoder.getEncodedFrames());
+        serverReport.put("encoderDroppedFrames", encoder.getDroppedFrames());
+        serverReport.put("broadcastFps", encoder.getEncodedFrames() / elapsedSec);
+        long sessionSent = 0;
+        long sessionDropped = 0;
+        for (ClientSession session : server.getClientSessions()) {
+            sessionSent += session.getSentFrames();
+            sessionDropped += session.getDroppedFrames();
+        }
+        serverReport.put("sessionSentFrames", sessionSent);
+        serverReport.put("sessionDroppedFrames", sessionDropped);
+        report.put("server", serverReport);
+
+        JSONArray clientReports = new JSONArray();
+        long totalBytes = 0;
+        for (int i = 0; i < clients.size(); i++) {
+            LoadClient client = clients.get(i);
+            JSONObject entry = client.report(elapsedSec);
+            entry.put("index", i);
+            clientReports.put(entry);
+            totalBytes += client.getBytes();
+        }
+        report.put("clientStats", clientReports);
+        report.put("deliveredMbps", totalBytes * 8 / 1e6 / elapsedSec);
+
+        encoder.release();
+        for (LoadClient client : clients) {
+            client.closeBlocking();
+        }
+        server.stopServer();
+        pool.clear();
+
+        String json = report.toString(2);
+        Log.i(TAG, json);
+        File file = writeReport(context, json);
+        Log.i(TAG, "Report written to " + file);
+
+        for (LoadClient client : clients) {
+            assertTrue("a viewer received no frames", client.getFrames() > 0);
+        }
+    }
+
+    private static int intArg(Bundle args, String key, int defaultValue) {
+        String value = args != null ? args.getString(key) : null;
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private static File writeReport(Context context, String json) throws IOException {
+        File dir = context.getExternalFilesDir("benchmarks");
+        if (dir == null) {
+            dir = context.getFilesDir();
+        }
+        File file = new File(dir, "websocket-load-" + System.currentTimeMillis() + ".json");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    /**
+     * Simulated viewer. A slow viewer sleeps in the read thread, so its TCP
+     * window fills up and the server sees it backed up, like a viewer on a bad link.
+     */
+    private static class LoadClient extends WebSocketClient {
+
+        private final int receiveDelayMs;
+        // latencies of received frames in microseconds, preallocated for the run
+        private final long[] latenciesUs;
+        private int frames = 0;
+        private long bytes = 0;
+        private long lastSequence = -1;
+        private long skippedFrames = 0;
+        private long outOfOrderFrames = 0;
+        // only written by the read thread
+        private volatile long cpuNanos = 0;
+
+        LoadClient(URI uri, int receiveDelayMs, int expectedFrames) {
+            super(uri);
+            this.receiveDelayMs = receiveDelayMs;
+            this.latenciesUs = new long[expectedFrames + 16];
+        }
+
+        @Override
+        public void onMessage(ByteBuffer message) {
+            long cpuStart = Debug.threadCpuTimeNanos();
+            long nowUs = System.nanoTime() / 1000;
+            int base = message.position();
+            if (message.remaining() >= FrameProtocol.HEADER_SIZE
+                    && message.get(base + 1) == FrameProtocol.TYPE_FRAME) {
+                long sequence = message.getInt(base + FrameProtocol.OFFSET_SEQUENCE) & 0xFFFFFFFFL;
+                long captureTimeUs = message.getLong(base + FrameProtocol.OFFSET_CAPTURE_TIME);
+                synchronized (this) {
+                    if (frames < latenciesUs.length) {
+                        latenciesUs[frames] = nowUs - captureTimeUs;
+                    }
+                    frames++;
+                    bytes += message.remaining();
+                    if (lastSequence >= 0) {
+                        if (sequence <= lastSequence) {
+                            outOfOrderFrames++;
+                        } else {
+                            skippedFrames += sequence - lastSequence - 1;
+                        }
+                    }
+                    lastSequence = Math.max(lastSequence, sequence);
+                }
+            }
+            cpuNanos += Debug.threadCpuTimeNanos() - cpuStart;
+            if (receiveDelayMs > 0) {
+                try {
+                    Thread.sleep(receiveDelayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void onMessage(String message) {
+            // welcome and stats
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            Log.e(TAG, "Load client error", ex);
+        }
+
+        synchronized JSONObject report(double elapsedSec) throws JSONException {
+            int count = Math.min(frames, latenciesUs.length);
+            long[] sorted = Arrays.copyOf(latenciesUs, count);
+            Arrays.sort(sorted);
+
+            JSONObject entry = new JSONObject();
+            entry.put("receiveDelayMs", receiveDelayMs);
+            entry.put("frames", frames);
+            entry.put("fps", frames / elapsedSec);
+            entry.put("bytes", bytes);
+            entry.put("skippedFrames", skippedFrames);
+            entry.put("outOfOrderFrames", outOfOrderFrames);
+            long expected = frames + skippedFrames;
+            entry.put("dropRate", expected > 0 ? (double) skippedFrames / expected : 0);
+            JSONObject latency = new JSONObject();
+            latency.put("p50", percentileMs(sorted, 0.50));
+            latency.put("p90", percentileMs(sorted, 0.90));
+            latency.put("p99", percentileMs(sorted, 0.99));
+            latency.put("max", count > 0 ? sorted[count - 1] / 1000.0 : 0);
+            entry.put("latencyMs", latency);
+            return entry;
+        }
+
+        synchronized int getFrames() {
+            return frames;
+        }
+
+        synchronized long getBytes() {
+            return bytes;
+        }
+
+        long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        private static double percentileMs(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000.0;
+        }
+    }
+
+    private static class StartListener implements EdgeDetectionWebSocketServer.ServerCallback {
+        private final CountDownLatch started;
+
+        StartListener(CountDownLatch started) {
+            this.started = started;
+        }
+
+        @Override
+        public void onServerStarted() {
+            started.countDown();
+        }
+
+        @Override
+        public void onServerStopped() {
+        }
+
+        @Override
+        public void onClientConnected(int clientCount) {
+        }
+
+        @Override
+        public void onClientDisconnected(int clientCount) {
+        }
+
+        @Override
+        public void onError(String error) {
+            Log.e(TAG, "Server error: " + error);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package gl;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.yourname.edgedetection.NativeProcessor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Golden-image checks of the shader edge pipeline against the native CPU backend.
+ * Runs offscreen on a pbuffer, so it also works on emulators backed by a
+ * software renderer (SwiftShader, Mesa llvmpipe).
+ */
+@RunWith(AndroidJUnit4.class)
+public class GpuEdgePipelineTest {
+
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    // pixels this close to the border are excluded, padding differs between backends
+    private static final int BORDER = 3;
+
+    private EGLDisplay display;
+    private EGLContext context;
+    private EGLSurface surface;
+
+    @Before
+    public void setUp() {
+        display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        assertTrue(EGL14.eglInitialize(display, version, 0, version, 1));
+
+        int[] configAttribs = {
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL14.EGL_SURFACE_TYPE, EGL14.EGL_PBUFFER_BIT,
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_NONE
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        assertTrue(EGL14.eglChooseConfig(display, configAttribs, 0, configs, 0, 1, numConfigs, 0));
+        assertTrue(numConfigs[0] > 0);
+
+        int[] contextAttribs = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+        context = EGL14.eglCreateContext(display, configs[0], EGL14.EGL_NO_CONTEXT, contextAttribs, 0);
+        int[] surfaceAttribs = {EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE};
+        surface = EGL14.eglCreatePbufferSurface(display, configs[0], surfaceAttribs, 0);
+        assertTrue(EGL14.eglMakeCurrent(display, surface, surface, context));
+
+        NativeProcessor.initProcessor();
+    }
+
+    @After
+    public void tearDown() {
+        EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        EGL14.eglDestroySurface(display, surface);
+        EGL14.eglDestroyContext(display, context);
+        EGL14.eglTerminate(display);
+    }
+
+    @Test
+    public void edgesMatchNativeCanny() {
+        Bitmap input = createTestImage();
+
+        Bitmap cpuOutput = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        NativeProcessor.processFrame(input, cpuOutput, true);
+        boolean[] cpuEdges = edgesFromBitmap(cpuOutput);
+        boolean[] gpuEdges = edgesFromBuffer(runPipeline(input));
+
+        // allow one pixel of localisation difference in either direction
+        double precision = matchRatio(gpuEdges, cpuEdges);
+        double recall = matchRatio(cpuEdges, gpuEdges);
+        assertTrue("GPU edges without CPU counterpart, precision=" + precision, precision >= 0.9);
+        assertTrue("CPU edges missed by GPU, recall=" + recall, recall >= 0.9);
+    }
+
+    @Test
+    public void flatImageHasNoEdges() {
+        Bitmap input = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        input.eraseColor(Color.rgb(128, 128, 128));
+
+        boolean[] gpuEdges = edgesFromBuffer(runPipeline(input));
+        assertEquals(0, count(gpuEdges));
+    }
+
+    private ByteBuffer runPipeline(Bitmap input) {
+        int[] tex = new int[1];
+        GLES20.glGenTextures(1, tex, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, tex[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, input, 0);
+
+        // Bitmap rows are uploaded top-down; flip like a SurfaceTexture transform does
+        float[] flip = new float[16];
+        android.opengl.Matrix.setIdentityM(flip, 0);
+        flip[5] = -1f;
+        flip[13] = 1f;
+
+        GpuEdgePipeline pipeline = new GpuEdgePipeline();
+        pipeline.init();
+        pipeline.resize(WIDTH, HEIGHT);
+        pipeline.process(tex[0], false, flip);
+        ByteBuffer pixels = pipeline.readPixels();
+        assertEquals(GLES20.GL_NO_ERROR, GLES20.glGetError());
+
+        ByteBuffer copy = ByteBuffer.allocate(pixels.remaining());
+        copy.put(pixels).flip();
+        pipeline.release();
+        GLES20.glDeleteTextures(1, tex, 0);
+        return copy;
+    }
+
+    private static Bitmap createTestImage() {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.rgb(20, 20, 20));
+
+        Paint paint = new Paint();
+        paint.setAntiAlias(false);
+        paint.setColor(Color.WHITE);
+        canvas.drawRect(20, 20, 70, 60, paint);
+        paint.setColor(Color.rgb(150, 90, 40));
+        canvas.drawCircle(115, 70, 28, paint);
+        paint.setColor(Color.rgb(60, 200, 220));
+        canvas.drawRect(30, 85, 90, 105, paint);
+        return bitmap;
+    }
+
+    private static boolean[] edgesFromBitmap(Bitmap bitmap) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        bitmap.getPixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+        boolean[] edges = new boolean[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            edges[i] = Color.red(pixels[i]) > 127;
+        }
+        return edges;
+    }
+
+    private static boolean[] edgesFromBuffer(ByteBuffer rgba) {
+        boolean[] edges = new boolean[WIDTH * HEIGHT];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = (rgba.get(i * 4) & 0xFF) > 127;
+        }
+        return edges;
+    }
+
+    /**
+     * Fraction of edge pixels in a that have an edge in b within one pixel
+     */
+    private static double matchRatio(boolean[] a, boolean[] b) {
+        int total = 0;
+        int matched = 0;
+        for (int y = BORDER; y < HEIGHT - BORDER; y++) {
+            for (int x = BORDER; x < WIDTH - BORDER; x++) {
+                if (!a[y * WIDTH + x]) {
+                    continue;
+                }
+                total++;
+                search:
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        if (b[(y + dy) * WIDTH + x + dx]) {
+                            matched++;
+                            break search;
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue("no edges found", total > 0);
+        return (double) matched / total;
+    }
+
+    private static int count(boolean[] edges) {
+        int n = 0;
+        for (int y = BORDER; y < HEIGHT - BORDER; y++) {
+            for (int x = BORDER; x < WIDTH - BORDER; x++) {
+                if (edges[y * WIDTH + x]) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+}
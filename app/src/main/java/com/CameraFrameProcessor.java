@@ -17,8 +17,8 @@ public class CameraFrameProcessor implements ImageAnalysis.Analyzer {
     
     private MainActivity mainActivity;
     private boolean applyEdgeDetection = true;
+    private volatile boolean gpuBackendEnabled = false;
     private int frameCount = 0;
-    private int totalFrameCount = 0;
     private long lastFpsTime = System.currentTimeMillis();
     private double currentFps = 0;
     
@@ -30,57 +30,73 @@ public class CameraFrameProcessor implements ImageAnalysis.Analyzer {
     @Override
     public void analyze(@NonNull ImageProxy imageProxy) {
         try {
+            // GPU backend computes edges from the camera texture on the GL thread,
+            // which counts its frames and stages itself
+            if (applyEdgeDetection && gpuBackendEnabled) {
+                return;
+            }
+            
+            // Every other camera frame is shown, in raw mode from the camera
+            // texture even when it isn't analyzed below
+            countFrame();
+            
+            // Raw feed is drawn straight from the camera texture, so analysis
+            // frames are only needed while a web viewer is streaming
+            if (!applyEdgeDetection && !mainActivity.hasStreamingClients()) {
+                return;
+            }
+            
+            long captureTimeUs = imageProxy.getImageInfo().getTimestamp() / 1000;
+            FramePool pool = mainActivity.getFramePool();
+            
+            StatsAggregator stats = mainActivity.getStats();
+            
             // Convert ImageProxy to Bitmap
-            Bitmap inputBitmap = imageProxyToBitmap(imageProxy);
+            long convertStart = System.nanoTime();
+            PooledFrame inputFrame = imageProxyToFrame(imageProxy, pool, captureTimeUs);
+            if (stats != null) {
+                stats.recordStage(StatsAggregator.STAGE_CONVERT, System.nanoTime() - convertStart);
+            }
             
-            if (inputBitmap != null) {
-                // Create output bitmap
-                Bitmap processedBitmap = Bitmap.createBitmap(
-                    inputBitmap.getWidth(),
-                    inputBitmap.getHeight(),
-                    Bitmap.Config.ARGB_8888
-                );
-                
-                // Process with OpenCV via JNI
-                NativeProcessor.processFrame(inputBitmap, processedBitmap, applyEdgeDetection);
-                
-                // Calculate FPS
-                frameCount++;
-                totalFrameCount++;
-                long currentTime = System.currentTimeMillis();
-                if (currentTime - lastFpsTime >= 1000) {
-                    currentFps = frameCount * 1000.0 / (currentTime - lastFpsTime);
-                    frameCount = 0;
-                    lastFpsTime = currentTime;
-                    
-                    // Update FPS display on UI
-                    mainActivity.runOnUiThread(() -> 
-                        mainActivity.updateFpsDisplay(currentFps)
+            if (inputFrame != null) {
+                PooledFrame outputFrame;
+                if (applyEdgeDetection) {
+                    // Output bitmap comes from the pool too
+                    outputFrame = pool.acquire(
+                        inputFrame.getWidth(),
+                        inputFrame.getHeight(),
+                        captureTimeUs
                     );
+                    
+                    // Process with OpenCV via JNI
+                    long processStart = System.nanoTime();
+                    NativeProcessor.processFrame(inputFrame.getBitmap(), outputFrame.getBitmap(), true);
+                    if (stats != null) {
+                        stats.recordStage(StatsAggregator.STAGE_PROCESS, System.nanoTime() - processStart);
+                    }
+                    outputFrame.setEdgeMap(true);
+                    inputFrame.release();
+                } else {
+                    // Raw frames are streamed as captured, no native copy
+                    outputFrame = inputFrame;
                 }
+                Bitmap processedBitmap = outputFrame.getBitmap();
                 
-                // Get processing time from native code
-                double processingTime = NativeProcessor.getProcessingTime();
-                
-                // Update OpenGL texture for rendering
-                mainActivity.updateGLTexture(processedBitmap);
+                // Update OpenGL texture for rendering (raw mode renders the camera texture)
+                if (applyEdgeDetection) {
+                    mainActivity.updateGLTexture(processedBitmap);
+                }
                 
-                // ⭐ SEND TO WEB VIEWER ⭐
-                mainActivity.sendFrameToWebViewer(processedBitmap);
+                // ⭐ SEND TO WEB VIEWER ⭐ (hand-off only, encoding runs on the encoder threads)
+                mainActivity.sendFrameToWebViewer(outputFrame);
                 
-                // Send stats every 30 frames to reduce overhead
-                if (totalFrameCount % 30 == 0) {
-                    mainActivity.sendStatsToWebViewer(
-                        processedBitmap.getWidth(),
-                        processedBitmap.getHeight(),
-                        currentFps,
-                        processingTime,
-                        totalFrameCount
-                    );
+                // Counted into the stats interval, sent on the server's stats timer
+                if (stats != null) {
+                    stats.recordFrame(processedBitmap.getWidth(), processedBitmap.getHeight());
                 }
                 
-                // Clean up
-                inputBitmap.recycle();
+                // Clean up, the encoder holds its own reference if it needs the frame
+                outputFrame.release();
                 
             } else {
                 // Log.w(TAG, "Failed to convert ImageProxy to Bitmap");
@@ -95,9 +111,29 @@ public class CameraFrameProcessor implements ImageAnalysis.Analyzer {
     }
     
     /**
-     * Convert ImageProxy to Bitmap (YUV to RGB)
+     * Count a displayed frame for the on-screen FPS counter; also called from
+     * the GL thread for GPU backend frames
+     */
+    public synchronized void countFrame() {
+        frameCount++;
+        long currentTime = System.currentTimeMillis();
+        if (currentTime - lastFpsTime >= 1000) {
+            currentFps = frameCount * 1000.0 / (currentTime - lastFpsTime);
+            frameCount = 0;
+            lastFpsTime = currentTime;
+            
+            // Update FPS display on UI
+            double fps = currentFps;
+            mainActivity.runOnUiThread(() -> 
+                mainActivity.updateFpsDisplay(fps)
+            );
+        }
+    }
+    
+    /**
+     * Convert ImageProxy to a pooled Bitmap (YUV to RGB)
      */
-    private Bitmap imageProxyToBitmap(ImageProxy imageProxy) {
+    private PooledFrame imageProxyToFrame(ImageProxy imageProxy, FramePool pool, long captureTimeUs) {
         ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
         ByteBuffer yBuffer = planes[0].getBuffer();
         ByteBuffer uBuffer = planes[1].getBuffer();
@@ -129,8 +165,19 @@ public class CameraFrameProcessor implements ImageAnalysis.Analyzer {
             out
         );
         
+        // Decode straight into a pooled bitmap instead of allocating one per frame
+        PooledFrame frame = pool.acquire(imageProxy.getWidth(), imageProxy.getHeight(), captureTimeUs);
+        android.graphics.BitmapFactory.Options options = new android.graphics.BitmapFactory.Options();
+        options.inMutable = true;
+        options.inBitmap = frame.getBitmap();
+        
         byte[] imageBytes = out.toByteArray();
-        return android.graphics.BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
+        Bitmap decoded = android.graphics.BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length, options);
+        if (decoded != frame.getBitmap()) {
+            frame.release();
+            return null;
+        }
+        return frame;
     }
     
     /**
@@ -148,6 +195,13 @@ public class CameraFrameProcessor implements ImageAnalysis.Analyzer {
         return applyEdgeDetection;
     }
     
+    /**
+     * Select the shader backend instead of native OpenCV processing
+     */
+    public void setGpuBackendEnabled(boolean enabled) {
+        gpuBackendEnabled = enabled;
+    }
+    
     /**
      * Clean up resources
      */
@@ -0,0 +1,38 @@
+package com.yourname.edgedetection;
+
+import android.os.SystemClock;
+
+/**
+ * Current time in the time base of the camera's capture timestamps, so send
+ * times and clock sync replies compare directly with capture times.
+ *
+ * Camera timestamps are either CLOCK_MONOTONIC or CLOCK_BOOTTIME depending on
+ * the device (SENSOR_INFO_TIMESTAMP_SOURCE). The two differ by the time spent
+ * in deep sleep, so the base is picked from the first capture timestamp seen:
+ * whichever clock it is closer to.
+ */
+public class CaptureClock {
+
+    private volatile boolean boottime = false;
+    private volatile boolean calibrated = false;
+
+    /**
+     * Pick the time base from a capture timestamp; only the first call counts
+     */
+    public void observe(long captureTimeUs) {
+        if (calibrated || captureTimeUs <= 0) {
+            return;
+        }
+        long monotonicUs = System.nanoTime() / 1000;
+        long boottimeUs = SystemClock.elapsedRealtimeNanos() / 1000;
+        boottime = Math.abs(boottimeUs - captureTimeUs) < Math.abs(monotonicUs - captureTimeUs);
+        calibrated = true;
+    }
+
+    /**
+     * Now, in microseconds of the capture time base
+     */
+    public long nowUs() {
+        return boottime ? SystemClock.elapsedRealtimeNanos() / 1000 : System.nanoTime() / 1000;
+    }
+}
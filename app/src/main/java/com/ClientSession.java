@@ -0,0 +1,245 @@
+package com.yourname.edgedetection;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Per-connection flow control for frame broadcasts.
+ * Frames are only queued while the connection's outgoing queue is within budget;
+ * otherwise the newest frame is parked and delivered once the client catches up.
+ * Delta frames are only sent if the client received the frame they reference;
+ * after a gap the client waits for the next keyframe (see needsKeyframe()).
+ * Stats and control messages are never skipped.
+ * Stream state is guarded by the session, counters are safe to read from any thread.
+ */
+public class ClientSession implements FrameSubscriber {
+
+    // A client may have this much unsent data before frames are skipped
+    static final int MAX_QUEUED_BYTES = 512 * 1024;
+    static final int MAX_IN_FLIGHT_FRAMES = 2;
+
+    private static final long FPS_WINDOW_NANOS = 1_000_000_000L;
+    // Each profile change restarts the stream with a keyframe, don't let feedback thrash
+    static final long MIN_FEEDBACK_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final WebSocket connection;
+    private final int id;
+
+    // Set by the viewer's subscribe message
+    private volatile boolean statsEnabled = true;
+    // Feedback can lower the profile below this, but never ask for more
+    private volatile OutputProfile subscribedProfile = OutputProfile.DEFAULT;
+    private long lastFeedbackNanos;
+    private boolean hasFeedback = false;
+
+    // Newest frame skipped while over budget, sent when the queue drains
+    private SharedBinaryFrame pendingFrame;
+
+    private int lastSentSequence;
+    private boolean hasSentFrame = false;
+    // a new client has nothing to apply deltas to
+    private boolean needsKeyframe = true;
+
+    private volatile long sentFrames = 0;
+    private volatile long droppedFrames = 0;
+    private volatile double fps = 0;
+    private long windowStartNanos = System.nanoTime();
+    private int windowFrames = 0;
+
+    public ClientSession(WebSocket connection, int id) {
+        this.connection = connection;
+        this.id = id;
+    }
+
+    /**
+     * Queue a frame or park it if the client is over budget
+     * @return true if the frame was handed to the connection
+     */
+    @Override
+    public synchronized boolean offer(SharedBinaryFrame frame) {
+        if (!connection.isOpen()) {
+            return false;
+        }
+        if (!canDecode(frame)) {
+            droppedFrames++;
+            needsKeyframe = true;
+            return false;
+        }
+        if (isOverBudget()) {
+            if (pendingFrame != null) {
+                // the parked frame is superseded before it was ever sent
+                droppedFrames++;
+            }
+            pendingFrame = frame;
+            return false;
+        }
+        if (pendingFrame != null) {
+            droppedFrames++;
+            pendingFrame = null;
+        }
+        send(frame);
+        return true;
+    }
+
+    /**
+     * Send a cached keyframe to a client that has not received anything from its
+     * group yet; skipped if a live frame got there first
+     */
+    @Override
+    public synchronized boolean offerCachedKeyframe(SharedBinaryFrame frame) {
+        if (!connection.isOpen() || hasSentFrame || !frame.isKeyframe()) {
+            return false;
+        }
+        send(frame);
+        return true;
+    }
+
+    /**
+     * Send the parked frame if the client has caught up
+     */
+    synchronized boolean flushPending() {
+        if (pendingFrame == null || !connection.isOpen() || isOverBudget()) {
+            return false;
+        }
+        SharedBinaryFrame frame = pendingFrame;
+        pendingFrame = null;
+        if (!canDecode(frame)) {
+            droppedFrames++;
+            needsKeyframe = true;
+            return false;
+        }
+        send(frame);
+        return true;
+    }
+
+    /**
+     * Whether the client missed frames of a delta-coded stream and can only resume at a keyframe
+     */
+    @Override
+    public synchronized boolean needsKeyframe() {
+        return needsKeyframe;
+    }
+
+    /**
+     * Start over with a keyframe, e.g. after moving to another profile group
+     */
+    synchronized void resetStream() {
+        pendingFrame = null;
+        hasSentFrame = false;
+        needsKeyframe = true;
+    }
+
+    private boolean canDecode(SharedBinaryFrame frame) {
+        return frame.isKeyframe()
+            || (hasSentFrame && frame.getReferenceSequence() == lastSentSequence);
+    }
+
+    synchronized boolean hasPendingFrame() {
+        return pendingFrame != null;
+    }
+
+    private void send(SharedBinaryFrame frame) {
+        connection.sendFrame(frame);
+        sentFrames++;
+        lastSentSequence = frame.getSequence();
+        hasSentFrame = true;
+        if (frame.isKeyframe()) {
+            needsKeyframe = false;
+        }
+
+        long now = System.nanoTime();
+        windowFrames++;
+        long elapsed = now - windowStartNanos;
+        if (elapsed >= FPS_WINDOW_NANOS) {
+            fps = windowFrames * 1_000_000_000.0 / elapsed;
+            windowFrames = 0;
+            windowStartNanos = now;
+        }
+    }
+
+    private boolean isOverBudget() {
+        return getInFlightMessages() >= MAX_IN_FLIGHT_FRAMES
+            || getQueuedBytes() > MAX_QUEUED_BYTES;
+    }
+
+    /**
+     * Bytes handed to the connection but not yet written to the socket
+     */
+    public long getQueuedBytes() {
+        if (!(connection instanceof WebSocketImpl)) {
+            return 0;
+        }
+        long bytes = 0;
+        for (ByteBuffer buffer : ((WebSocketImpl) connection).outQueue) {
+            bytes += buffer.remaining();
+        }
+        return bytes;
+    }
+
+    /**
+     * Messages waiting in the connection's write queue (frames and stats)
+     */
+    public int getInFlightMessages() {
+        if (!(connection instanceof WebSocketImpl)) {
+            return 0;
+        }
+        return ((WebSocketImpl) connection).outQueue.size();
+    }
+
+    public WebSocket getConnection() {
+        return connection;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public boolean isStatsEnabled() {
+        return statsEnabled;
+    }
+
+    void setStatsEnabled(boolean statsEnabled) {
+        this.statsEnabled = statsEnabled;
+    }
+
+    public OutputProfile getSubscribedProfile() {
+        return subscribedProfile;
+    }
+
+    void setSubscribedProfile(OutputProfile subscribedProfile) {
+        this.subscribedProfile = subscribedProfile;
+    }
+
+    /**
+     * Whether a feedback message at this time may change the profile,
+     * at most one per MIN_FEEDBACK_INTERVAL_NANOS
+     */
+    synchronized boolean acceptFeedback(long nowNanos) {
+        if (hasFeedback && nowNanos - lastFeedbackNanos < MIN_FEEDBACK_INTERVAL_NANOS) {
+            return false;
+        }
+        hasFeedback = true;
+        lastFeedbackNanos = nowNanos;
+        return true;
+    }
+
+    public long getSentFrames() {
+        return sentFrames;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Frames actually delivered per second over the last window, decays to 0 when stalled
+     */
+    public double getEffectiveFps() {
+        if (System.nanoTime() - windowStartNanos > 2 * FPS_WINDOW_NANOS) {
+            return 0;
+        }
+        return fps;
+    }
+}
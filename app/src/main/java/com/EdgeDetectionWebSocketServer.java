@@ -1,7 +1,5 @@
 package com.yourname.edgedetection;
 
-import android.graphics.Bitmap;
-import android.util.Base64;
 import android.util.Log;
 
 import org.java_websocket.WebSocket;
@@ -10,18 +8,49 @@ import org.java_websocket.server.WebSocketServer;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.ByteArrayOutputStream;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class EdgeDetectionWebSocketServer extends WebSocketServer {
+public class EdgeDetectionWebSocketServer extends WebSocketServer
+        implements FrameEncoder.Sink, SubscriberRegistry {
     private static final String TAG = "WebSocketServer";
     private static final int PORT = 8765;
+    // How often parked frames are retried for clients that were over budget
+    private static final long FLUSH_INTERVAL_MS = 20;
+    // Stats are aggregated over this interval and sent as one message
+    private static final long STATS_INTERVAL_MS = 500;
+    // Memory bound for the late-joiner keyframes of all profiles
+    private static final long KEYFRAME_CACHE_BYTES = 4 * 1024 * 1024;
     
-    private Set<WebSocket> clients = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Map<WebSocket, ClientSession> clients = new ConcurrentHashMap<>();
+    private final AtomicInteger nextClientId = new AtomicInteger();
     private ServerCallback callback;
+    private ScheduledExecutorService flushExecutor;
+    
+    // Viewers with the same subscription share one encode per frame
+    private final Map<OutputProfile, ProfileGroup> groups = new ConcurrentHashMap<>();
+    private final Map<FrameSubscriber, ProfileGroup> subscriptions = new ConcurrentHashMap<>();
+    // Groups taking the frame being encoded, only used by the encoder's drain thread
+    private final List<ProfileGroup> dueGroups = new ArrayList<>();
+    private final KeyframeCache keyframeCache = new KeyframeCache(KEYFRAME_CACHE_BYTES);
+    // Time base of the frame timestamps, shared with viewers through clockSync
+    private final CaptureClock captureClock = new CaptureClock();
+    private final StatsAggregator stats = new StatsAggregator();
+    // Stats message buffer and client drop total, only used by the timer thread
+    private final StringBuilder statsMessage = new StringBuilder(4096);
+    private long lastClientDrops = 0;
+    // Gets the stats messages alongside the frames it records
+    private volatile FrameRecorder statsRecorder;
     
     public interface ServerCallback {
         void onServerStarted();
@@ -32,14 +61,23 @@ public class EdgeDetectionWebSocketServer extends WebSocketServer {
     }
     
     public EdgeDetectionWebSocketServer(ServerCallback callback) {
-        super(new InetSocketAddress(PORT));
+        this(callback, new InetSocketAddress(PORT));
+    }
+    
+    /**
+     * Listen on a specific address, e.g. loopback for the load benchmark
+     */
+    public EdgeDetectionWebSocketServer(ServerCallback callback, InetSocketAddress address) {
+        // Frames are framed once per broadcast and shared by all connections
+        super(address, Collections.singletonList(new SharedFrameDraft()));
         this.callback = callback;
         setReuseAddr(true);
     }
     
     @Override
     public void onOpen(WebSocket conn, ClientHandshake handshake) {
-        clients.add(conn);
+        ClientSession session = new ClientSession(conn, nextClientId.incrementAndGet());
+        clients.put(conn, session);
         Log.d(TAG, "New client connected: " + conn.getRemoteSocketAddress());
         
         if (callback != null) {
@@ -50,16 +88,24 @@ public class EdgeDetectionWebSocketServer extends WebSocketServer {
             JSONObject message = new JSONObject();
             message.put("type", "welcome");
             message.put("message", "Connected to Android Edge Detection App");
+            message.put("clientId", session.getId());
             conn.send(message.toString());
         } catch (JSONException e) {
             Log.e(TAG, "Error creating welcome message", e);
         }
+        
+        // full stream until the viewer subscribes, starting with the cached keyframe
+        assignProfile(session, OutputProfile.DEFAULT);
     }
     
     @Override
     public void onClose(WebSocket conn, int code, String reason, boolean remote) {
-        clients.remove(conn);
-        Log.d(TAG, "Client disconnected: " + conn.getRemoteSocketAddress());
+        ClientSession session = clients.remove(conn);
+        if (session != null) {
+            assignProfile(session, null);
+            Log.d(TAG, String.format("Client disconnected: %s sent=%d dropped=%d",
+                conn.getRemoteSocketAddress(), session.getSentFrames(), session.getDroppedFrames()));
+        }
         
         if (callback != null) {
             callback.onClientDisconnected(clients.size());
@@ -69,6 +115,100 @@ public class EdgeDetectionWebSocketServer extends WebSocketServer {
     @Override
     public void onMessage(WebSocket conn, String message) {
         Log.d(TAG, "Received message: " + message);
+        
+        ClientSession session = clients.get(conn);
+        if (session == null) {
+            return;
+        }
+        try {
+            JSONObject json = new JSONObject(message);
+            if ("subscribe".equals(json.optString("type"))) {
+                OutputProfile profile = OutputProfile.fromJson(json);
+                session.setStatsEnabled(json.optBoolean("stats", true));
+                session.setSubscribedProfile(profile);
+                assignProfile(session, profile);
+                
+                JSONObject reply = new JSONObject();
+                reply.put("type", "subscribed");
+                reply.put("profile", profile.toJson());
+                conn.send(reply.toString());
+            } else if ("feedback".equals(json.optString("type"))) {
+                // the viewer can't keep up or has headroom; it may go as far as its subscription
+                if (!session.acceptFeedback(System.nanoTime())) {
+                    return;
+                }
+                OutputProfile profile = OutputProfile.fromJson(json).within(session.getSubscribedProfile());
+                Log.d(TAG, String.format("Client %d feedback: render %.1f ms, %d not drawn, asks %s",
+                    session.getId(), json.optDouble("renderMs", 0), json.optInt("dropped", 0), profile));
+                if (assignProfile(session, profile)) {
+                    JSONObject reply = new JSONObject();
+                    reply.put("type", "adapted");
+                    reply.put("profile", profile.toJson());
+                    conn.send(reply.toString());
+                }
+            } else if ("clockSync".equals(json.optString("type"))) {
+                // echo the viewer's time with ours, the viewer derives offset and round trip
+                JSONObject reply = new JSONObject();
+                reply.put("type", "clockSync");
+                reply.put("clientTimeMs", json.optDouble("clientTimeMs"));
+                reply.put("serverTimeUs", captureClock.nowUs());
+                conn.send(reply.toString());
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Ignoring malformed message: " + message);
+        }
+    }
+    
+    /**
+     * Move a session to the group for its profile, or out of all groups if profile is null
+     * @return whether the session changed groups
+     */
+    private synchronized boolean assignProfile(ClientSession session, OutputProfile profile) {
+        ProfileGroup current = subscriptions.get(session);
+        if (current != null && profile != null && current.getProfile().equals(profile)) {
+            return false;
+        }
+        removeSubscriber(session);
+        if (profile == null) {
+            return current != null;
+        }
+        // deltas of the old group's stream don't apply to the new one
+        session.resetStream();
+        addSubscriber(profile, session);
+        Log.d(TAG, "Client " + session.getId() + " subscribed: " + profile
+            + " (" + groups.size() + " profiles)");
+        return true;
+    }
+    
+    @Override
+    public synchronized void addSubscriber(OutputProfile profile, FrameSubscriber subscriber) {
+        removeSubscriber(subscriber);
+        ProfileGroup group = groups.get(profile);
+        if (group == null) {
+            group = new ProfileGroup(profile, keyframeCache, captureClock, stats);
+            groups.put(profile, group);
+        }
+        subscriptions.put(subscriber, group);
+        group.add(subscriber);
+        
+        SharedBinaryFrame keyframe = keyframeCache.get(profile);
+        if (keyframe != null) {
+            subscriber.offerCachedKeyframe(keyframe);
+        }
+    }
+    
+    @Override
+    public synchronized void removeSubscriber(FrameSubscriber subscriber) {
+        ProfileGroup group = subscriptions.remove(subscriber);
+        if (group == null) {
+            return;
+        }
+        group.remove(subscriber);
+        if (group.isEmpty()) {
+            // no longer encoded, its cached keyframe would only go stale
+            groups.remove(group.getProfile());
+            keyframeCache.remove(group.getProfile());
+        }
     }
     
     @Override
@@ -82,83 +222,216 @@ public class EdgeDetectionWebSocketServer extends WebSocketServer {
     
     @Override
     public void onStart() {
-        Log.d(TAG, "WebSocket server started on port " + PORT);
+        Log.d(TAG, "WebSocket server started on port " + getPort());
+        
+        flushExecutor = Executors.newSingleThreadScheduledExecutor();
+        flushExecutor.scheduleWithFixedDelay(this::flushPendingFrames,
+            FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        flushExecutor.scheduleAtFixedRate(this::sendStats,
+            STATS_INTERVAL_MS, STATS_INTERVAL_MS, TimeUnit.MILLISECONDS);
         
         if (callback != null) {
             callback.onServerStarted();
         }
     }
     
-    public void broadcastFrame(Bitmap bitmap) {
-        if (clients.isEmpty()) {
-            return;
+    /**
+     * One output per profile group that is due for a frame under its FPS cap
+     */
+    @Override
+    public int getOutputCount() {
+        dueGroups.clear();
+        long now = System.nanoTime();
+        for (ProfileGroup group : groups.values()) {
+            if (!group.isEmpty() && group.claimFrame(now)) {
+                dueGroups.add(group);
+            }
         }
-        
+        return dueGroups.size();
+    }
+    
+    @Override
+    public void encodeOutput(int output, PooledFrame frame) {
+        dueGroups.get(output).encodeAndSend(frame.getBitmap(), frame.getCaptureTimeUs(), frame.isEdgeMap());
+    }
+    
+    /**
+     * Deliver frames parked for clients that have drained their queue since
+     */
+    private void flushPendingFrames() {
         try {
-            String base64Image = bitmapToBase64(bitmap);
-            
-            JSONObject message = new JSONObject();
-            message.put("type", "frame");
-            message.put("data", base64Image);
-            
-            String jsonString = message.toString();
-            for (WebSocket client : clients) {
-                if (client.isOpen()) {
-                    client.send(jsonString);
-                }
+            for (ClientSession session : clients.values()) {
+                session.flushPending();
             }
-            
         } catch (Exception e) {
-            Log.e(TAG, "Error broadcasting frame", e);
+            Log.e(TAG, "Error flushing pending frames", e);
         }
     }
     
-    public void broadcastStats(int width, int height, double fps, double processingTime, int frameCount) {
-        if (clients.isEmpty()) {
-            return;
+    /**
+     * Smoothed CPU time to encode one frame for all profiles
+     */
+    public double getEncodeCpuMs() {
+        double total = 0;
+        for (ProfileGroup group : groups.values()) {
+            total += group.getEncodeCpuMs();
         }
-        
+        return total;
+    }
+    
+    /**
+     * Smoothed CPU time to hand one frame to all clients
+     */
+    public double getSendCpuMs() {
+        double total = 0;
+        for (ProfileGroup group : groups.values()) {
+            total += group.getSendCpuMs();
+        }
+        return total;
+    }
+    
+    /**
+     * Interval statistics shared by the capture, analysis and encoder threads
+     */
+    public StatsAggregator getStats() {
+        return stats;
+    }
+    
+    /**
+     * Close the stats interval and send it to the clients that asked for stats.
+     * Runs on the flush executor; the message is built in a reused buffer.
+     */
+    private void sendStats() {
         try {
-            JSONObject stats = new JSONObject();
-            stats.put("fps", fps);
-            stats.put("width", width);
-            stats.put("height", height);
-            stats.put("processingTime", processingTime);
-            stats.put("frameCount", frameCount);
+            StringBuilder out = statsMessage;
+            out.setLength(0);
+            out.append("{\"type\":\"stats\",\"stats\":{");
+            stats.appendInterval(out, System.nanoTime());
             
-            JSONObject message = new JSONObject();
-            message.put("type", "stats");
-            message.put("stats", stats);
+            // per profile: clients, smoothed per-frame CPU cost and size
+            out.append(",\"broadcast\":{\"clients\":").append(clients.size());
+            out.append(",\"keyframeCacheBytes\":").append(keyframeCache.getTotalBytes());
+            out.append(",\"profiles\":[");
+            boolean first = true;
+            for (ProfileGroup group : groups.values()) {
+                OutputProfile profile = group.getProfile();
+                out.append(first ? "{" : ",{");
+                first = false;
+                out.append("\"maxWidth\":").append(profile.getMaxWidth());
+                out.append(",\"maxHeight\":").append(profile.getMaxHeight());
+                out.append(",\"maxFps\":").append(profile.getMaxFps());
+                out.append(",\"codec\":\"").append(profile.getCodec()).append('"');
+                out.append(",\"clients\":").append(group.getClientCount());
+                out.append(",\"encodeCpuMs\":");
+                StatsAggregator.appendFixed(out, group.getEncodeCpuMs());
+                out.append(",\"sendCpuMs\":");
+                StatsAggregator.appendFixed(out, group.getSendCpuMs());
+                out.append(",\"frameBytes\":").append(Math.round(group.getFrameBytes()));
+                out.append('}');
+            }
+            out.append("]}");
             
-            String jsonString = message.toString();
-            for (WebSocket client : clients) {
-                if (client.isOpen()) {
-                    client.send(jsonString);
-                }
+            long clientDrops = 0;
+            boolean anyStats = false;
+            out.append(",\"clients\":[");
+            first = true;
+            for (ClientSession session : clients.values()) {
+                clientDrops += session.getDroppedFrames();
+                anyStats |= session.isStatsEnabled();
+                out.append(first ? "{" : ",{");
+                first = false;
+                out.append("\"id\":").append(session.getId());
+                out.append(",\"fps\":");
+                StatsAggregator.appendFixed(out, session.getEffectiveFps());
+                out.append(",\"sent\":").append(session.getSentFrames());
+                out.append(",\"dropped\":").append(session.getDroppedFrames());
+                out.append(",\"queuedBytes\":").append(session.getQueuedBytes());
+                out.append('}');
             }
+            out.append(']');
+            // frames skipped for backed-up clients during the interval
+            out.append(",\"clientDropped\":").append(Math.max(0, clientDrops - lastClientDrops));
+            lastClientDrops = clientDrops;
+            out.append("}}");
             
-        } catch (JSONException e) {
-            Log.e(TAG, "Error broadcasting stats", e);
+            FrameRecorder recorder = statsRecorder;
+            if (!anyStats && recorder == null) {
+                return;
+            }
+            String message = out.toString();
+            if (recorder != null) {
+                recorder.recordStats(message);
+            }
+            // stats are small and always sent, even to clients that are skipping frames
+            for (ClientSession session : clients.values()) {
+                WebSocket client = session.getConnection();
+                if (session.isStatsEnabled() && client.isOpen()) {
+                    client.send(message);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error sending stats", e);
+        }
+    }
+    
+    public void setStatsRecorder(FrameRecorder recorder) {
+        statsRecorder = recorder;
+    }
+    
+    /**
+     * Prepare viewers for a direct replay: their streams restart at a keyframe
+     */
+    public void beginReplay() {
+        for (ClientSession session : clients.values()) {
+            session.resetStream();
         }
     }
     
-    private String bitmapToBase64(Bitmap bitmap) {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 80, byteArrayOutputStream);
-        byte[] byteArray = byteArrayOutputStream.toByteArray();
-        return Base64.encodeToString(byteArray, Base64.NO_WRAP);
+    /**
+     * Send one recorded frame message to every WebSocket viewer as recorded,
+     * regardless of their profiles. Call beginReplay() first, and again when
+     * going back to the live stream.
+     */
+    public void replayFrame(ByteBuffer message) {
+        int base = message.position();
+        int sequence = message.getInt(base + FrameProtocol.OFFSET_SEQUENCE);
+        boolean keyframe = (message.get(base + FrameProtocol.OFFSET_FLAGS) & FrameProtocol.FLAG_KEYFRAME) != 0;
+        int referenceSequence = SharedBinaryFrame.NO_REFERENCE;
+        if (!keyframe && message.get(base + FrameProtocol.OFFSET_CODEC) == FrameProtocol.CODEC_EDGE) {
+            // edge deltas start with the sequence of the frame they apply to
+            referenceSequence = message.getInt(base + FrameProtocol.HEADER_SIZE);
+        }
+        ByteBuffer wire = SharedBinaryFrame.allocate(message.remaining());
+        wire.put(message.duplicate());
+        SharedBinaryFrame frame = SharedBinaryFrame.seal(wire, sequence, referenceSequence);
+        for (ClientSession session : clients.values()) {
+            session.offer(frame);
+        }
     }
     
     public int getClientCount() {
         return clients.size();
     }
     
+    /**
+     * Snapshot of the per-client flow control state
+     */
+    public Collection<ClientSession> getClientSessions() {
+        return Collections.unmodifiableCollection(clients.values());
+    }
+    
+    /**
+     * Whether anyone consumes frames: WebSocket viewers or other subscribers
+     */
     public boolean hasConnectedClients() {
-        return !clients.isEmpty();
+        return !clients.isEmpty() || !subscriptions.isEmpty();
     }
     
     public void stopServer() {
         try {
+            if (flushExecutor != null) {
+                flushExecutor.shutdownNow();
+            }
             stop();
             if (callback != null) {
                 callback.onServerStopped();
@@ -0,0 +1,314 @@
+package com.yourname.edgedetection;
+
+import java.util.Arrays;
+
+/**
+ * Lossless wire codec for binary edge maps (FrameProtocol.CODEC_EDGE), mirrored
+ * by web/src/edgecodec.ts. Pixels are packed to 1 bit (red channel > 127, MSB first),
+ * and each row is coded as runs of set bits:
+ *
+ *   keyframe payload:  rows
+ *   delta payload:     u32 reference sequence, rows of (current XOR reference)
+ *   row:               varint runCount, then runCount x (varint gap, varint length)
+ *
+ * where gap counts clear bits since the end of the previous run. Edge maps are
+ * sparse and mostly static between frames, so deltas are usually a byte per row.
+ * Keyframes are sent periodically and on request (new or lagging viewers).
+ * Not thread-safe; one encoder per output stream.
+ */
+public class EdgeMapCodec {
+
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 30;
+
+    private final int keyframeInterval;
+
+    private int width;
+    private int height;
+    private int stride;
+    private byte[] current = new byte[0];
+    private byte[] reference = new byte[0];
+    private byte[] deltaRow = new byte[0];
+    private int[] runs = new int[0];
+
+    private int referenceSequence;
+    private int encodedReference;
+    private boolean hasReference = false;
+    private boolean keyframeRequested = false;
+    private int framesSinceKeyframe = 0;
+
+    private byte[] output = new byte[16 * 1024];
+    private int outputLength = 0;
+
+    public EdgeMapCodec() {
+        this(DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    public EdgeMapCodec(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Make the next encoded frame a keyframe
+     */
+    public void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    /**
+     * Forget the reference frame, e.g. after frames of another codec were sent
+     */
+    public void reset() {
+        hasReference = false;
+    }
+
+    /**
+     * Encode an edge map given as ARGB pixels
+     * @param sequence frame sequence number, referenced by the following delta
+     * @return true if a keyframe was written
+     */
+    public boolean encode(int[] argb, int width, int height, int sequence) {
+        if (width != this.width || height != this.height) {
+            resize(width, height);
+        }
+        pack(argb);
+
+        boolean keyframe = !hasReference || keyframeRequested
+            || framesSinceKeyframe >= keyframeInterval - 1;
+
+        outputLength = 0;
+        if (keyframe) {
+            for (int y = 0; y < height; y++) {
+                writeRow(current, y * stride);
+            }
+            framesSinceKeyframe = 0;
+            keyframeRequested = false;
+        } else {
+            encodedReference = referenceSequence;
+            writeInt(referenceSequence);
+            for (int y = 0; y < height; y++) {
+                int offset = y * stride;
+                for (int i = 0; i < stride; i++) {
+                    deltaRow[i] = (byte) (current[offset + i] ^ reference[offset + i]);
+                }
+                writeRow(deltaRow, 0);
+            }
+            framesSinceKeyframe++;
+        }
+
+        // the encoded frame becomes the reference for the next delta
+        byte[] swap = reference;
+        reference = current;
+        current = swap;
+        referenceSequence = sequence;
+        hasReference = true;
+        return keyframe;
+    }
+
+    /**
+     * Rewrite the output as a keyframe of the last encoded frame, for viewers that
+     * can't apply its delta. The stream state is untouched: the next frame is still
+     * coded against the last one, so viewers that got either version can decode it.
+     */
+    public void encodeLastAsKeyframe() {
+        if (!hasReference) {
+            throw new IllegalStateException("No frame encoded yet");
+        }
+        outputLength = 0;
+        for (int y = 0; y < height; y++) {
+            writeRow(reference, y * stride);
+        }
+    }
+
+    /**
+     * Encoded bytes of the last frame; valid until the next encode()
+     */
+    public byte[] getOutput() {
+        return output;
+    }
+
+    public int getOutputLength() {
+        return outputLength;
+    }
+
+    /**
+     * Sequence number the last frame was coded against, if it was a delta
+     */
+    public int getReferenceSequence() {
+        return encodedReference;
+    }
+
+    private void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.stride = (width + 7) >> 3;
+        current = new byte[stride * height];
+        reference = new byte[stride * height];
+        deltaRow = new byte[stride];
+        runs = new int[width + 2];
+        hasReference = false;
+    }
+
+    private void pack(int[] argb) {
+        Arrays.fill(current, (byte) 0);
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            int rowOffset = y * stride;
+            for (int x = 0; x < width; x++) {
+                if (((argb[index++] >> 16) & 0xFF) > 127) {
+                    current[rowOffset + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+                }
+            }
+        }
+    }
+
+    /**
+     * Write one packed row as runs of set bits. Bits past the row width are always clear.
+     */
+    private void writeRow(byte[] row, int offset) {
+        int runCount = 0;
+        int lastEnd = 0;
+        int end = offset + stride;
+        int i = offset;
+        while (i < end) {
+            // skip clear bytes
+            while (i < end && row[i] == 0) {
+                i++;
+            }
+            if (i == end) {
+                break;
+            }
+            int bits = row[i] & 0xFF;
+            int bit = ((i - offset) << 3) + Integer.numberOfLeadingZeros(bits) - 24;
+            if (bit < lastEnd) {
+                // continue scanning the byte after the previous run ended
+                bits &= 0xFF >>> (lastEnd & 7);
+                if (bits == 0) {
+                    i++;
+                    continue;
+                }
+                bit = ((i - offset) << 3) + Integer.numberOfLeadingZeros(bits) - 24;
+            }
+            int start = bit;
+
+            // find the first clear bit after start
+            int j = offset + (start >> 3);
+            int clear = ~row[j] & 0xFF & (0xFF >>> (start & 7));
+            while (clear == 0 && ++j < end) {
+                clear = ~row[j] & 0xFF;
+            }
+            int runEnd = clear == 0 ? width : Math.min(width, ((j - offset) << 3) + Integer.numberOfLeadingZeros(clear) - 24);
+
+            runs[runCount++] = start - lastEnd;
+            runs[runCount++] = runEnd - start;
+            lastEnd = runEnd;
+            i = offset + (runEnd >> 3);
+        }
+
+        ensureCapacity(5 + runCount * 5);
+        writeVarint(runCount >> 1);
+        for (int r = 0; r < runCount; r++) {
+            writeVarint(runs[r]);
+        }
+    }
+
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            output[outputLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output[outputLength++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        output[outputLength++] = (byte) (value >>> 24);
+        output[outputLength++] = (byte) (value >>> 16);
+        output[outputLength++] = (byte) (value >>> 8);
+        output[outputLength++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (outputLength + extra > output.length) {
+            output = Arrays.copyOf(output, Math.max(output.length * 2, outputLength + extra));
+        }
+    }
+
+    /**
+     * Decoder counterpart, used by tests and tools; the viewer has its own in TypeScript
+     */
+    public static class Decoder {
+
+        private int width;
+        private int height;
+        private int stride;
+        private byte[] bits = new byte[0];
+        private int sequence;
+        private boolean hasFrame = false;
+
+        /**
+         * Decode a payload into the current frame
+         * @return false if a delta does not apply to the frame held by this decoder
+         */
+        public boolean decode(byte[] payload, int offset, int length, boolean keyframe,
+                              int sequence, int width, int height) {
+            int position = offset;
+            int limit = offset + length;
+            if (width != this.width || height != this.height) {
+                this.width = width;
+                this.height = height;
+                this.stride = (width + 7) >> 3;
+                bits = new byte[stride * height];
+                hasFrame = false;
+            }
+            if (!keyframe) {
+                int referenceSequence = ((payload[position] & 0xFF) << 24)
+                    | ((payload[position + 1] & 0xFF) << 16)
+                    | ((payload[position + 2] & 0xFF) << 8)
+                    | (payload[position + 3] & 0xFF);
+                position += 4;
+                if (!hasFrame || referenceSequence != this.sequence) {
+                    return false;
+                }
+            } else {
+                Arrays.fill(bits, (byte) 0);
+            }
+
+            int[] cursor = {position};
+            for (int y = 0; y < height; y++) {
+                int rowOffset = y * stride;
+                int runCount = readVarint(payload, cursor);
+                int x = 0;
+                for (int r = 0; r < runCount; r++) {
+                    x += readVarint(payload, cursor);
+                    int runEnd = x + readVarint(payload, cursor);
+                    for (; x < runEnd; x++) {
+                        // XOR works for both: keyframes start from a cleared map
+                        bits[rowOffset + (x >> 3)] ^= (byte) (0x80 >>> (x & 7));
+                    }
+                }
+            }
+            if (cursor[0] > limit) {
+                throw new IllegalArgumentException("Truncated edge map payload");
+            }
+            this.sequence = sequence;
+            hasFrame = true;
+            return true;
+        }
+
+        public boolean isSet(int x, int y) {
+            return (bits[y * stride + (x >> 3)] & (0x80 >>> (x & 7))) != 0;
+        }
+
+        private static int readVarint(byte[] data, int[] cursor) {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = data[cursor[0]++] & 0xFF;
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
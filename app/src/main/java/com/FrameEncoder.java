@@ -0,0 +1,186 @@
+package com.yourname.edgedetection;
+
+import android.util.Log;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Encoder stage between frame producers (analyzer, GL readback) and the network.
+ * Producers hand off a pooled frame reference and return immediately; a single
+ * latest-wins slot holds the next frame to encode, so a slow encode drops stale
+ * frames instead of stalling the camera. When the sink wants several outputs
+ * (e.g. one per viewer resolution) they are encoded in parallel on a small pool.
+ */
+public class FrameEncoder {
+
+    private static final String TAG = "FrameEncoder";
+
+    /**
+     * Encodes and sends a frame; outputs may be encoded concurrently
+     */
+    public interface Sink {
+        /** Number of independent encodings wanted for the next frame, 0 to skip */
+        int getOutputCount();
+
+        /** Encode and send one output. Must not keep the frame after returning. */
+        void encodeOutput(int output, PooledFrame frame);
+    }
+
+    private final Sink sink;
+    private final ExecutorService workers;
+    private final AtomicReference<PooledFrame> slot = new AtomicReference<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private volatile boolean released = false;
+
+    // Statistics
+    private final AtomicLong submittedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private volatile long encodedFrames = 0;
+
+    public FrameEncoder(Sink sink, int threads) {
+        this.sink = sink;
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "FrameEncoder-" + threadIndex.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        };
+        // at least two threads: the drain task waits on its parallel outputs
+        this.workers = Executors.newFixedThreadPool(Math.max(2, threads), factory);
+    }
+
+    /**
+     * Queue a frame for encoding. Takes its own reference; the caller keeps and
+     * releases its reference as usual. Replaces a frame that has not started encoding.
+     */
+    public void submit(PooledFrame frame) {
+        if (released) {
+            return;
+        }
+        submittedFrames.incrementAndGet();
+        PooledFrame previous = slot.getAndSet(frame.retain());
+        if (previous != null) {
+            droppedFrames.incrementAndGet();
+            previous.release();
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Whether a frame is waiting to be encoded; producers can skip expensive work meanwhile
+     */
+    public boolean hasPendingFrame() {
+        return slot.get() != null;
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                workers.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // released concurrently
+                draining.set(false);
+                PooledFrame pending = slot.getAndSet(null);
+                if (pending != null) {
+                    pending.release();
+                }
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            PooledFrame frame;
+            while ((frame = slot.getAndSet(null)) != null) {
+                try {
+                    encode(frame);
+                } finally {
+                    frame.release();
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+        // a frame may have arrived after the slot was found empty
+        if (slot.get() != null && !released) {
+            scheduleDrain();
+        }
+    }
+
+    private void encode(PooledFrame frame) {
+        int outputs = sink.getOutputCount();
+        if (outputs <= 0) {
+            return;
+        }
+        if (outputs == 1) {
+            encodeSafely(0, frame);
+        } else {
+            CountDownLatch done = new CountDownLatch(outputs - 1);
+            for (int i = 1; i < outputs; i++) {
+                int output = i;
+                frame.retain();
+                try {
+                    workers.execute(() -> {
+                        try {
+                            encodeSafely(output, frame);
+                        } finally {
+                            frame.release();
+                            done.countDown();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    frame.release();
+                    done.countDown();
+                }
+            }
+            encodeSafely(0, frame);
+            try {
+                // next frame starts only after all outputs of this one are sent
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        encodedFrames++;
+    }
+
+    private void encodeSafely(int output, PooledFrame frame) {
+        try {
+            sink.encodeOutput(output, frame);
+        } catch (Exception e) {
+            Log.e(TAG, "Error encoding output " + output, e);
+        }
+    }
+
+    public long getSubmittedFrames() {
+        return submittedFrames.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getEncodedFrames() {
+        return encodedFrames;
+    }
+
+    /**
+     * Stop encoding and release the pending frame
+     */
+    public void release() {
+        released = true;
+        workers.shutdown();
+        PooledFrame pending = slot.getAndSet(null);
+        if (pending != null) {
+            pending.release();
+        }
+    }
+}
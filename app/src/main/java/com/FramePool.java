@@ -0,0 +1,66 @@
+package com.yourname.edgedetection;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+
+/**
+ * Small pool of mutable ARGB_8888 bitmaps of one size, shared by the analyzer,
+ * the GL readback and the encoder so steady-state streaming allocates no bitmaps.
+ * A size change drains the pool; frames of the old size are recycled on release.
+ */
+public class FramePool {
+
+    private final int maxIdle;
+    private final ArrayDeque<PooledFrame> idle = new ArrayDeque<>();
+    private int width;
+    private int height;
+
+    public FramePool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Borrow a frame of the given size, holding one reference
+     */
+    public PooledFrame acquire(int width, int height, long captureTimeUs) {
+        PooledFrame frame = null;
+        synchronized (this) {
+            if (width != this.width || height != this.height) {
+                clear();
+                this.width = width;
+                this.height = height;
+            }
+            if (!idle.isEmpty()) {
+                frame = idle.pop();
+            }
+        }
+        if (frame == null) {
+            frame = new PooledFrame(this, Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+        }
+        frame.reset(captureTimeUs);
+        return frame;
+    }
+
+    void recycle(PooledFrame frame) {
+        synchronized (this) {
+            if (frame.getWidth() == width && frame.getHeight() == height && idle.size() < maxIdle) {
+                idle.push(frame);
+                return;
+            }
+        }
+        frame.getBitmap().recycle();
+    }
+
+    /**
+     * Recycle all idle bitmaps; frames still in use are recycled when released
+     */
+    public synchronized void clear() {
+        for (PooledFrame frame : idle) {
+            frame.getBitmap().recycle();
+        }
+        idle.clear();
+        width = 0;
+        height = 0;
+    }
+}
@@ -0,0 +1,195 @@
+package com.yourname.edgedetection;
+
+import android.opengl.GLSurfaceView;
+import android.util.Log;
+import android.view.Choreographer;
+
+import gl.GLRenderer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Paces OpenGL presentation to the display vsync using Choreographer.
+ * Processed frames are posted into a single-slot mailbox from the analyzer thread;
+ * on each vsync only the newest frame is handed to the renderer and older ones are dropped.
+ * Frame age is measured when the GL thread has drawn the frame, not when it is handed over.
+ * Must be created on the main thread.
+ */
+public class FramePresenter implements Choreographer.FrameCallback {
+
+    private static final String TAG = "FramePresenter";
+
+    private final GLRenderer renderer;
+    private final GLSurfaceView surfaceView;
+    private final Choreographer choreographer;
+    private final long vsyncPeriodNanos;
+
+    // Single-slot mailbox: the analyzer overwrites, the vsync callback takes
+    private final AtomicReference<Frame> mailbox = new AtomicReference<>();
+    private final AtomicBoolean callbackPosted = new AtomicBoolean(false);
+    private final AtomicBoolean redrawRequested = new AtomicBoolean(false);
+    private volatile boolean running = false;
+
+    // Statistics
+    private final AtomicLong submittedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    // written on the GL thread as frames are drawn
+    private volatile long presentedFrames = 0;
+    private volatile long lateFrames = 0;
+    private volatile double lastFrameAgeMs = 0;
+    private volatile double maxFrameAgeMs = 0;
+    private volatile double totalFrameAgeMs = 0;
+
+    private static final class Frame {
+        final byte[] rgba;
+        final int width;
+        final int height;
+        final long submitTimeNanos;
+
+        Frame(byte[] rgba, int width, int height, long submitTimeNanos) {
+            this.rgba = rgba;
+            this.width = width;
+            this.height = height;
+            this.submitTimeNanos = submitTimeNanos;
+        }
+    }
+
+    public FramePresenter(GLRenderer renderer, GLSurfaceView surfaceView, float refreshRate) {
+        this.renderer = renderer;
+        this.surfaceView = surfaceView;
+        this.choreographer = Choreographer.getInstance();
+        this.vsyncPeriodNanos = (long) (1_000_000_000L / (refreshRate > 0 ? refreshRate : 60f));
+        renderer.setFrameDrawnListener(this::onFrameDrawn);
+    }
+
+    /**
+     * Start presenting frames on vsync
+     */
+    public void start() {
+        running = true;
+        if (mailbox.get() != null || redrawRequested.get()) {
+            scheduleFrame();
+        }
+    }
+
+    /**
+     * Stop presenting; pending frames stay in the mailbox until start() is called again
+     */
+    public void stop() {
+        running = false;
+        if (callbackPosted.getAndSet(false)) {
+            choreographer.removeFrameCallback(this);
+        }
+    }
+
+    /**
+     * Post a processed frame for presentation. Called from the analyzer thread.
+     * Replaces any frame that has not been presented yet.
+     */
+    public void submit(byte[] rgbaBytes, int width, int height) {
+        submittedFrames.incrementAndGet();
+        Frame previous = mailbox.getAndSet(new Frame(rgbaBytes, width, height, System.nanoTime()));
+        if (previous != null) {
+            droppedFrames.incrementAndGet();
+        }
+        if (running) {
+            scheduleFrame();
+        }
+    }
+
+    /**
+     * Ask for a redraw without a new CPU frame, e.g. when the camera texture has a new buffer.
+     * Coalesced with frame submissions into a single render per vsync.
+     */
+    public void requestRedraw() {
+        redrawRequested.set(true);
+        if (running) {
+            scheduleFrame();
+        }
+    }
+
+    private void scheduleFrame() {
+        // At most one outstanding callback, so at most one render per vsync
+        if (callbackPosted.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        callbackPosted.set(false);
+        if (!running) {
+            return;
+        }
+
+        boolean redraw = redrawRequested.getAndSet(false);
+        Frame frame = mailbox.getAndSet(null);
+        if (frame == null) {
+            if (redraw) {
+                surfaceView.requestRender();
+            }
+            return;
+        }
+
+        renderer.updateFrame(frame.rgba, frame.width, frame.height, frame.submitTimeNanos);
+        surfaceView.requestRender();
+    }
+
+    /**
+     * A submitted frame has been drawn; called on the GL thread just before the buffer swap
+     */
+    private void onFrameDrawn(long submitTimeNanos) {
+        // A frame that took longer than one vsync period from submit to draw missed its slot
+        long ageNanos = System.nanoTime() - submitTimeNanos;
+        double ageMs = ageNanos / 1_000_000.0;
+        if (ageNanos > vsyncPeriodNanos) {
+            lateFrames++;
+        }
+        presentedFrames++;
+        lastFrameAgeMs = ageMs;
+        totalFrameAgeMs += ageMs;
+        if (ageMs > maxFrameAgeMs) {
+            maxFrameAgeMs = ageMs;
+        }
+
+        if (presentedFrames % 300 == 0) {
+            Log.d(TAG, String.format("presented=%d dropped=%d late=%d avgAge=%.2fms maxAge=%.2fms",
+                    presentedFrames, droppedFrames.get(), lateFrames,
+                    getAverageFrameAgeMs(), maxFrameAgeMs));
+        }
+    }
+
+    public long getSubmittedFrames() {
+        return submittedFrames.get();
+    }
+
+    public long getPresentedFrames() {
+        return presentedFrames;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getLateFrames() {
+        return lateFrames;
+    }
+
+    /**
+     * Time from submit until the most recently presented frame was drawn, in ms
+     */
+    public double getLastFrameAgeMs() {
+        return lastFrameAgeMs;
+    }
+
+    public double getMaxFrameAgeMs() {
+        return maxFrameAgeMs;
+    }
+
+    public double getAverageFrameAgeMs() {
+        long presented = presentedFrames;
+        return presented > 0 ? totalFrameAgeMs / presented : 0;
+    }
+}
@@ -0,0 +1,77 @@
+package com.yourname.edgedetection;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary WebSocket frame message shared with the web viewer (web/src/protocol.ts).
+ * A fixed big-endian header is followed by the encoded image payload:
+ *
+ *   offset  size  field
+ *        0     1  protocol version
+ *        1     1  message type
+ *        2     1  codec
+ *        3     1  flags
+ *        4     4  sequence number
+ *        8     8  capture timestamp (microseconds)
+ *       16     8  send timestamp (microseconds)
+ *       24     2  width
+ *       26     2  height
+ *       28     -  payload
+ *
+ * Sequence numbers increase by one per frame of a stream (a subscription), so
+ * gaps are skipped frames. Both timestamps are in the camera's clock (see
+ * CaptureClock); the send timestamp is when the encoded frame was handed to the
+ * sockets. Viewers map them onto their own clock with the clockSync handshake:
+ *
+ *   viewer: {"type":"clockSync","clientTimeMs":t0}
+ *   server: {"type":"clockSync","clientTimeMs":t0,"serverTimeUs":now}
+ *
+ * Frames with FLAG_KEYFRAME decode on their own; CODEC_EDGE deltas need the
+ * frame they reference (see EdgeMapCodec).
+ * JSON text messages are only used for control and stats.
+ */
+public final class FrameProtocol {
+
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 28;
+
+    // Field offsets for readers of the header
+    public static final int OFFSET_CODEC = 2;
+    public static final int OFFSET_FLAGS = 3;
+    public static final int OFFSET_SEQUENCE = 4;
+    public static final int OFFSET_CAPTURE_TIME = 8;
+    public static final int OFFSET_SEND_TIME = 16;
+    public static final int OFFSET_WIDTH = 24;
+    public static final int OFFSET_HEIGHT = 26;
+
+    // Message types
+    public static final int TYPE_FRAME = 1;
+
+    // Codecs
+    public static final int CODEC_JPEG = 1;
+    public static final int CODEC_EDGE = 2;
+
+    // Flags
+    public static final int FLAG_KEYFRAME = 0x01;
+
+    private FrameProtocol() {
+    }
+
+    /**
+     * Write the header at the buffer's current position and advance past it
+     */
+    public static void writeHeader(ByteBuffer buffer, int type, int codec, int flags,
+                                   int sequence, long captureTimeUs, long sendTimeUs,
+                                   int width, int height) {
+        buffer.put((byte) VERSION);
+        buffer.put((byte) type);
+        buffer.put((byte) codec);
+        buffer.put((byte) flags);
+        buffer.putInt(sequence);
+        buffer.putLong(captureTimeUs);
+        buffer.putLong(sendTimeUs);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+    }
+
+}
@@ -0,0 +1,307 @@
+package com.yourname.edgedetection;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flight recorder for the stream: joins a profile group like a viewer and
+ * appends its frames, with their timestamps, plus the periodic stats messages
+ * to memory-mapped segment files (see RecordingSegment).
+ *
+ * offer() only queues the shared frame, never blocks and never copies; the
+ * recorder's thread writes it into the mapping. When the queue is full the
+ * frame is dropped and recording resumes at the next keyframe, as for a
+ * backed-up viewer. Segments rotate by size and age, and the oldest are
+ * deleted beyond maxSegments. Read back with RecordingReader.
+ */
+public class FrameRecorder implements FrameSubscriber {
+
+    private static final String TAG = "FrameRecorder";
+
+    public static final int DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+    public static final long DEFAULT_SEGMENT_AGE_MS = 60_000;
+    public static final int DEFAULT_MAX_SEGMENTS = 16;
+
+    private static final int QUEUE_CAPACITY = 8;
+    // At most one index entry per interval, the index only needs to narrow a seek
+    private static final long INDEX_INTERVAL_US = 1_000_000;
+    private static final String SEGMENT_PREFIX = "rec-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // Queued by stop() behind the remaining items; the writer ends when it gets here
+    private static final Object STOP = new Object();
+
+    private final File dir;
+    private final int segmentBytes;
+    private final long maxSegmentAgeMs;
+    private final int maxSegments;
+
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    // Set after a frame was dropped on offer: deltas are refused until a keyframe
+    private volatile boolean awaitingKeyframe = true;
+    // Set by the writer to ask the group for an early keyframe
+    private volatile boolean keyframeRequested = false;
+    private volatile boolean running = false;
+    private Thread writerThread;
+
+    // Writer thread state
+    private RecordingSegment segment;
+    private int nextSegmentNumber;
+    private long lastIndexedUs = Long.MIN_VALUE;
+    private boolean skipToKeyframe = false;
+
+    private volatile long recordedFrames = 0;
+    private volatile long droppedFrames = 0;
+
+    public FrameRecorder(File dir) {
+        this(dir, DEFAULT_SEGMENT_BYTES, DEFAULT_SEGMENT_AGE_MS, DEFAULT_MAX_SEGMENTS);
+    }
+
+    public FrameRecorder(File dir, int segmentBytes, long maxSegmentAgeMs, int maxSegments) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxSegmentAgeMs = maxSegmentAgeMs;
+        this.maxSegments = maxSegments;
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        // continue numbering after segments from earlier runs
+        File[] existing = listSegments(dir);
+        nextSegmentNumber = existing.length > 0 ? segmentNumber(existing[existing.length - 1]) + 1 : 0;
+        awaitingKeyframe = true;
+        running = true;
+        writerThread = new Thread(this::writeLoop, "FrameRecorder");
+        writerThread.setPriority(Thread.NORM_PRIORITY - 1);
+        writerThread.start();
+        Log.d(TAG, "Recording to " + dir);
+    }
+
+    /**
+     * Stop after writing what is queued
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = writerThread;
+            writerThread = null;
+        }
+        // not interrupt(): a pending interrupt closes the segment's channel mid-write
+        try {
+            if (queue.offer(STOP, 2, TimeUnit.SECONDS)) {
+                thread.join(2000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Log.d(TAG, String.format("Recording stopped: recorded=%d dropped=%d", recordedFrames, droppedFrames));
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean offer(SharedBinaryFrame frame) {
+        if (!running) {
+            return false;
+        }
+        boolean keyframe = frame.isKeyframe();
+        if (awaitingKeyframe && !keyframe) {
+            // a delta without its reference can't be replayed
+            return false;
+        }
+        if (!queue.offer(frame)) {
+            droppedFrames++;
+            awaitingKeyframe = true;
+            return false;
+        }
+        if (keyframe) {
+            awaitingKeyframe = false;
+            keyframeRequested = false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offerCachedKeyframe(SharedBinaryFrame frame) {
+        return offer(frame);
+    }
+
+    @Override
+    public boolean needsKeyframe() {
+        return awaitingKeyframe || keyframeRequested;
+    }
+
+    /**
+     * Record a stats message next to the frames; dropped if the queue is full
+     */
+    public void recordStats(String statsJson) {
+        if (running) {
+            queue.offer(statsJson);
+        }
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    public long getRecordedFrames() {
+        return recordedFrames;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Object item;
+                try {
+                    item = queue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (item == STOP) {
+                    break;
+                }
+                if (item instanceof SharedBinaryFrame) {
+                    writeFrame((SharedBinaryFrame) item);
+                } else if (item instanceof String) {
+                    writeStats((String) item);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Recording failed", e);
+            running = false;
+        } finally {
+            closeSegment();
+            queue.clear();
+        }
+    }
+
+    private void writeFrame(SharedBinaryFrame frame) throws IOException {
+        ByteBuffer message = frame.payloadBytes();
+        long timestampUs = message.getLong(message.position() + FrameProtocol.OFFSET_CAPTURE_TIME);
+        boolean keyframe = frame.isKeyframe();
+        if (skipToKeyframe && !keyframe) {
+            return;
+        }
+        if (!RecordingSegment.fits(segmentBytes, message.remaining())) {
+            Log.w(TAG, "Frame of " + message.remaining() + " bytes exceeds the segment size");
+            skipFrame();
+            return;
+        }
+        if (segment != null && !keyframe && needsRotation()) {
+            // rotate at the next keyframe so every segment starts decodable
+            keyframeRequested = true;
+        }
+        if (segment == null || (keyframe && needsRotation())) {
+            rotate();
+        }
+        skipToKeyframe = false;
+        boolean indexed = keyframe
+            && (lastIndexedUs == Long.MIN_VALUE || timestampUs - lastIndexedUs >= INDEX_INTERVAL_US);
+        int flags = keyframe ? RecordingSegment.FLAG_KEYFRAME : 0;
+        if (!segment.append(RecordingSegment.TYPE_FRAME, flags, timestampUs, message, indexed)) {
+            if (!keyframe) {
+                // full: the delta is lost, continue from a keyframe in a new segment
+                skipFrame();
+                return;
+            }
+            rotate();
+            indexed = true;
+            segment.append(RecordingSegment.TYPE_FRAME, flags, timestampUs, message, true);
+        }
+        if (indexed) {
+            lastIndexedUs = timestampUs;
+        }
+        recordedFrames++;
+    }
+
+    private void writeStats(String statsJson) throws IOException {
+        if (segment == null) {
+            return;
+        }
+        ByteBuffer payload = ByteBuffer.wrap(statsJson.getBytes(StandardCharsets.UTF_8));
+        long timestampUs = segment.getLastTimestampUs();
+        // stats that don't fit are skipped, frames rotate the segment
+        segment.append(RecordingSegment.TYPE_STATS, 0, timestampUs, payload, false);
+    }
+
+    /**
+     * Drop a frame on the writer side; queued deltas after it are skipped too
+     */
+    private void skipFrame() {
+        droppedFrames++;
+        skipToKeyframe = true;
+        keyframeRequested = true;
+    }
+
+    private boolean needsRotation() {
+        return System.currentTimeMillis() - segment.getCreatedWallMs() >= maxSegmentAgeMs
+            || segmentBytes - segment.getDataEnd() < segmentBytes / 16;
+    }
+
+    private void rotate() throws IOException {
+        closeSegment();
+        File file = new File(dir, String.format("%s%08d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX));
+        segment = RecordingSegment.create(file, segmentBytes, System.currentTimeMillis());
+        lastIndexedUs = Long.MIN_VALUE;
+        deleteOldSegments();
+    }
+
+    private void closeSegment() {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+    }
+
+    private void deleteOldSegments() {
+        File[] segments = listSegments(dir);
+        for (int i = 0; i < segments.length - maxSegments; i++) {
+            if (!segments[i].delete()) {
+                Log.w(TAG, "Could not delete " + segments[i]);
+            }
+        }
+    }
+
+    /**
+     * Segment files of a recording directory, oldest first
+     */
+    static File[] listSegments(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static int segmentNumber(File file) {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
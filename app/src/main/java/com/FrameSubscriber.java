@@ -0,0 +1,24 @@
+package com.yourname.edgedetection;
+
+/**
+ * Member of a ProfileGroup: receives the group's shared wire frames and applies
+ * its own backpressure (skip while backed up, deliver the newest once caught up)
+ */
+public interface FrameSubscriber {
+
+    /**
+     * Hand over a frame; frames are shared, read-only and must not be modified
+     * @return true if the frame went out now, false if it was parked or dropped
+     */
+    boolean offer(SharedBinaryFrame frame);
+
+    /**
+     * Offer the group's cached keyframe right after joining
+     */
+    boolean offerCachedKeyframe(SharedBinaryFrame frame);
+
+    /**
+     * Whether the subscriber can only continue at a keyframe
+     */
+    boolean needsKeyframe();
+}
@@ -0,0 +1,94 @@
+package com.yourname.edgedetection;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Most recent keyframe per output profile, sent to viewers right after they join
+ * or change profile so they don't wait for the next keyframe on a blank canvas.
+ * Bounded by total wire size; least recently used profiles are evicted first.
+ */
+public class KeyframeCache {
+
+    private final long maxBytes;
+    private long totalBytes = 0;
+
+    // access order, so iteration starts at the least recently used entry
+    private final LinkedHashMap<OutputProfile, Entry> entries = new LinkedHashMap<>(8, 0.75f, true);
+
+    private static final class Entry {
+        final SharedBinaryFrame frame;
+        final int width;
+        final int height;
+
+        Entry(SharedBinaryFrame frame, int width, int height) {
+            this.frame = frame;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    public KeyframeCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Remember a keyframe of the given output size for a profile
+     */
+    public synchronized void put(OutputProfile profile, SharedBinaryFrame frame, int width, int height) {
+        if (!frame.isKeyframe()) {
+            throw new IllegalArgumentException("Only keyframes can be cached");
+        }
+        remove(profile);
+        if (frame.getWireLength() > maxBytes) {
+            return;
+        }
+        entries.put(profile, new Entry(frame, width, height));
+        totalBytes += frame.getWireLength();
+
+        Iterator<Map.Entry<OutputProfile, Entry>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            totalBytes -= it.next().getValue().frame.getWireLength();
+            it.remove();
+        }
+    }
+
+    /**
+     * Cached keyframe for a profile, or null
+     */
+    public synchronized SharedBinaryFrame get(OutputProfile profile) {
+        Entry entry = entries.get(profile);
+        return entry != null ? entry.frame : null;
+    }
+
+    /**
+     * Drop the profile's keyframe if its output size no longer matches
+     */
+    public synchronized void invalidateIfResized(OutputProfile profile, int width, int height) {
+        Entry entry = entries.get(profile);
+        if (entry != null && (entry.width != width || entry.height != height)) {
+            remove(profile);
+        }
+    }
+
+    public synchronized void remove(OutputProfile profile) {
+        Entry entry = entries.remove(profile);
+        if (entry != null) {
+            totalBytes -= entry.frame.getWireLength();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -3,9 +3,12 @@ package com.yourname.edgedetection;
 import android.Manifest;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
+import android.graphics.SurfaceTexture;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
 import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -15,14 +18,17 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.Preview;
+import androidx.camera.core.SurfaceRequest;
 import androidx.camera.lifecycle.ProcessCameraProvider;
-import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import gl.GLRenderer;
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.nio.ByteBuffer;
+import java.io.File;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.util.Collections;
@@ -36,7 +42,6 @@ public class MainActivity extends AppCompatActivity {
     private static final int CAMERA_PERMISSION_REQUEST = 100;
     
     // UI Components
-    private PreviewView previewView;
     private GLSurfaceView glSurfaceView;
     private TextView serverStatusText;
     private TextView ipAddressText;
@@ -44,9 +49,24 @@ public class MainActivity extends AppCompatActivity {
     private Button startServerButton;
     private Button stopServerButton;
     private Button toggleEdgeButton;
+    private Button backendButton;
+    private Button recordButton;
+    private Button replayButton;
     
     // WebSocket Server
     private EdgeDetectionWebSocketServer webSocketServer;
+    // MJPEG over HTTP, shares the WebSocket server's JPEG frames
+    private MjpegHttpServer mjpegServer;
+    
+    // Frames handed from the analyzer and GL readback to the encoder threads
+    private final FramePool framePool = new FramePool(4);
+    private FrameEncoder frameEncoder;
+    
+    // Flight recorder of the default stream, and replay of its last seconds
+    private static final long REPLAY_WINDOW_US = 30_000_000;
+    private FrameRecorder frameRecorder;
+    private RecordingPlayer recordingPlayer;
+    private volatile boolean replaying = false;
     
     // Camera
     private CameraFrameProcessor frameProcessor;
@@ -54,6 +74,15 @@ public class MainActivity extends AppCompatActivity {
     
     // OpenGL Renderer
     private GLRenderer glRenderer;
+    private FramePresenter framePresenter;
+    
+    // Camera preview is rendered from a SurfaceTexture owned by the GL thread
+    private SurfaceTexture cameraSurfaceTexture;
+    private SurfaceRequest pendingSurfaceRequest;
+    private Preview preview;
+    
+    // GPU edge backend readback for streaming
+    private boolean gpuBackendEnabled = false;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -87,7 +116,6 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void initializeUI() {
-        previewView = findViewById(R.id.previewView);
         glSurfaceView = findViewById(R.id.glSurfaceView);
         serverStatusText = findViewById(R.id.serverStatus);
         ipAddressText = findViewById(R.id.ipAddress);
@@ -95,6 +123,9 @@ public class MainActivity extends AppCompatActivity {
         startServerButton = findViewById(R.id.startServerButton);
         stopServerButton = findViewById(R.id.stopServerButton);
         toggleEdgeButton = findViewById(R.id.toggleEdgeButton);
+        backendButton = findViewById(R.id.backendButton);
+        recordButton = findViewById(R.id.recordButton);
+        replayButton = findViewById(R.id.replayButton);
         
         // Initial states
         stopServerButton.setEnabled(false);
@@ -103,9 +134,62 @@ public class MainActivity extends AppCompatActivity {
     
     private void setupOpenGLRenderer() {
         glRenderer = new GLRenderer();
+        glRenderer.setCameraTextureListener(new GLRenderer.CameraTextureListener() {
+            @Override
+            public void onCameraTextureCreated(SurfaceTexture surfaceTexture) {
+                runOnUiThread(() -> {
+                    boolean replaced = cameraSurfaceTexture != null;
+                    cameraSurfaceTexture = surfaceTexture;
+                    if (pendingSurfaceRequest != null) {
+                        provideCameraSurface(pendingSurfaceRequest);
+                    } else if (replaced && preview != null) {
+                        // The GL context was lost and the texture CameraX draws into with it.
+                        // A bound Preview doesn't ask again on its own; setting the provider
+                        // resets it, so it ends the old request (releasing its Surface) and
+                        // sends a new one for this texture.
+                        preview.setSurfaceProvider(ContextCompat.getMainExecutor(MainActivity.this),
+                            MainActivity.this::provideCameraSurface);
+                    }
+                });
+            }
+            
+            @Override
+            public void onCameraFrameAvailable() {
+                framePresenter.requestRedraw();
+            }
+        });
+        glRenderer.setEdgeFrameListener(new GLRenderer.EdgeFrameListener() {
+            @Override
+            public void onEdgeMapProcessed(long processNanos) {
+                StatsAggregator stats = getStats();
+                if (stats != null) {
+                    stats.recordStage(StatsAggregator.STAGE_PROCESS, processNanos);
+                }
+                if (frameProcessor != null) {
+                    frameProcessor.countFrame();
+                }
+            }
+            
+            @Override
+            public boolean wantsEdgeFrame() {
+                // skip the readback while the previous one is still waiting to be encoded
+                return hasStreamingClients() && !frameEncoder.hasPendingFrame();
+            }
+            
+            @Override
+            public void onEdgeFrame(ByteBuffer rgba, int width, int height, long timestampNs, long readNanos) {
+                sendGpuEdgeFrame(rgba, width, height, timestampNs, readNanos);
+            }
+        });
         glSurfaceView.setEGLContextClientVersion(2);
+        // Keep the camera texture across pause/resume where the device allows it
+        glSurfaceView.setPreserveEGLContextOnPause(true);
         glSurfaceView.setRenderer(glRenderer);
         glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        
+        // Present at most one frame per vsync, always the newest
+        float refreshRate = getWindowManager().getDefaultDisplay().getRefreshRate();
+        framePresenter = new FramePresenter(glRenderer, glSurfaceView, refreshRate);
     }
     
     private void setupWebSocketServer() {
@@ -166,17 +250,26 @@ public class MainActivity extends AppCompatActivity {
                 }
             }
         );
+        
+        // JPEG encoding runs off the analyzer and GL threads
+        frameEncoder = new FrameEncoder(webSocketServer, 2);
+        webSocketServer.getStats().setEncoder(frameEncoder);
+        mjpegServer = new MjpegHttpServer(webSocketServer);
     }
     
     private void setupButtonListeners() {
         startServerButton.setOnClickListener(v -> startWebSocketServer());
         stopServerButton.setOnClickListener(v -> stopWebSocketServer());
         toggleEdgeButton.setOnClickListener(v -> toggleEdgeDetection());
+        backendButton.setOnClickListener(v -> toggleEdgeBackend());
+        recordButton.setOnClickListener(v -> toggleRecording());
+        replayButton.setOnClickListener(v -> toggleReplay());
     }
     
     private void startWebSocketServer() {
         try {
             webSocketServer.start();
+            mjpegServer.start();
         } catch (Exception e) {
             Toast.makeText(this, 
                 "Failed to start server: " + e.getMessage(), 
@@ -186,6 +279,9 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void stopWebSocketServer() {
+        if (mjpegServer != null) {
+            mjpegServer.stop();
+        }
         if (webSocketServer != null) {
             webSocketServer.stopServer();
         }
@@ -199,34 +295,160 @@ public class MainActivity extends AppCompatActivity {
             toggleEdgeButton.setText("Mode: " + mode);
             Toast.makeText(this, "Switched to " + mode, Toast.LENGTH_SHORT).show();
             
-            // Toggle between camera preview and OpenGL rendering
-            if (frameProcessor.isEdgeDetectionEnabled()) {
-                previewView.setVisibility(android.view.View.GONE);
-                glSurfaceView.setVisibility(android.view.View.VISIBLE);
-            } else {
-                previewView.setVisibility(android.view.View.VISIBLE);
-                glSurfaceView.setVisibility(android.view.View.GONE);
-            }
+            updateRendererMode();
         }
     }
     
     /**
-     * Send processed frame to web viewer via WebSocket
+     * Switch edge detection between the native CPU (OpenCV) and GPU (shader) backends
      */
-    public void sendFrameToWebViewer(Bitmap processedFrame) {
-        if (webSocketServer != null && webSocketServer.hasConnectedClients()) {
-            webSocketServer.broadcastFrame(processedFrame);
+    private void toggleEdgeBackend() {
+        gpuBackendEnabled = !gpuBackendEnabled;
+        String backend = gpuBackendEnabled ? "GPU" : "CPU";
+        backendButton.setText("Backend: " + backend);
+        Toast.makeText(this, "Edge backend: " + backend, Toast.LENGTH_SHORT).show();
+        
+        if (frameProcessor != null) {
+            frameProcessor.setGpuBackendEnabled(gpuBackendEnabled);
+        }
+        updateRendererMode();
+    }
+    
+    private File getRecordingDir() {
+        File dir = getExternalFilesDir("recordings");
+        return dir != null ? dir : new File(getFilesDir(), "recordings");
+    }
+    
+    private void toggleRecording() {
+        if (frameRecorder != null) {
+            stopRecording();
+            Toast.makeText(this, "Recording stopped", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (replaying) {
+            return;
+        }
+        FrameRecorder recorder = new FrameRecorder(getRecordingDir());
+        try {
+            recorder.start();
+        } catch (IOException e) {
+            Log.e(TAG, "Recorder start error", e);
+            Toast.makeText(this, "Failed to start recording: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            return;
+        }
+        // shares the encode of viewers on the default profile
+        webSocketServer.addSubscriber(OutputProfile.DEFAULT, recorder);
+        webSocketServer.setStatsRecorder(recorder);
+        frameRecorder = recorder;
+        recordButton.setText("Record: On");
+        Toast.makeText(this, "Recording to " + recorder.getDirectory(), Toast.LENGTH_SHORT).show();
+    }
+    
+    private void stopRecording() {
+        if (frameRecorder == null) {
+            return;
         }
+        webSocketServer.removeSubscriber(frameRecorder);
+        webSocketServer.setStatsRecorder(null);
+        frameRecorder.stop();
+        frameRecorder = null;
+        recordButton.setText("Record: Off");
     }
     
     /**
-     * Send frame statistics to web viewer
+     * Replay the last seconds of the recording through the encoder, in place of live frames
      */
-    public void sendStatsToWebViewer(int width, int height, double fps, 
-                                      double processingTime, int frameCount) {
-        if (webSocketServer != null && webSocketServer.hasConnectedClients()) {
-            webSocketServer.broadcastStats(width, height, fps, processingTime, frameCount);
+    private void toggleReplay() {
+        if (recordingPlayer != null) {
+            recordingPlayer.stop();
+            return;
+        }
+        // don't record the replay
+        stopRecording();
+        
+        RecordingReader reader;
+        try {
+            reader = new RecordingReader(getRecordingDir());
+        } catch (IOException e) {
+            Log.e(TAG, "Recording open error", e);
+            Toast.makeText(this, "Failed to open recording: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            return;
         }
+        if (reader.getSegmentCount() == 0) {
+            Toast.makeText(this, "Nothing recorded yet", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        
+        replaying = true;
+        replayButton.setText("Stop Replay");
+        recordingPlayer = new RecordingPlayer(reader,
+            new PipelineReplayTarget(framePool, frameEncoder, () -> runOnUiThread(() -> {
+                replaying = false;
+                recordingPlayer = null;
+                replayButton.setText("Replay Last 30 s");
+            })));
+        recordingPlayer.play(reader.getEndTimestampUs() - REPLAY_WINDOW_US, 1.0);
+    }
+    
+    private void updateRendererMode() {
+        boolean edges = frameProcessor == null || frameProcessor.isEdgeDetectionEnabled();
+        // Raw feed samples the camera texture directly; edge mode either draws
+        // CPU-processed frames or runs the shader pipeline on the camera texture
+        glRenderer.setExternalSourceEnabled(!edges);
+        glRenderer.setGpuEdgeEnabled(edges && gpuBackendEnabled);
+        framePresenter.requestRedraw();
+    }
+    
+    /**
+     * Stream a GPU edge map. Called on the GL thread with a buffer that is reused
+     * afterwards, so pixels are copied into a pooled frame before encoding. The
+     * readback and the copy are the GPU backend's convert stage.
+     */
+    private void sendGpuEdgeFrame(ByteBuffer rgba, int width, int height, long timestampNs, long readNanos) {
+        PooledFrame frame = framePool.acquire(width, height, timestampNs / 1000);
+        try {
+            long copyStart = System.nanoTime();
+            frame.getBitmap().copyPixelsFromBuffer(rgba);
+            frame.setEdgeMap(true);
+            StatsAggregator stats = webSocketServer.getStats();
+            stats.recordStage(StatsAggregator.STAGE_CONVERT, readNanos + System.nanoTime() - copyStart);
+            stats.recordFrame(width, height);
+            sendFrameToWebViewer(frame);
+        } finally {
+            frame.release();
+        }
+    }
+    
+    /**
+     * Frame pool shared by the analyzer and the encoder
+     */
+    public FramePool getFramePool() {
+        return framePool;
+    }
+    
+    /**
+     * Whether any web viewer is connected and needs analysis frames
+     */
+    public boolean hasStreamingClients() {
+        return webSocketServer != null && webSocketServer.hasConnectedClients();
+    }
+    
+    /**
+     * Send processed frame to web viewer via WebSocket.
+     * Only hands the frame to the encoder; the caller still releases its own reference.
+     */
+    public void sendFrameToWebViewer(PooledFrame processedFrame) {
+        // live frames pause while a recording is replayed into the encoder
+        if (frameEncoder != null && !replaying && webSocketServer.hasConnectedClients()) {
+            frameEncoder.submit(processedFrame);
+        }
+    }
+    
+    /**
+     * Interval statistics sent to web viewers, null before the server is set up
+     */
+    public StatsAggregator getStats() {
+        return webSocketServer != null ? webSocketServer.getStats() : null;
     }
     
     /**
@@ -240,7 +462,7 @@ public class MainActivity extends AppCompatActivity {
      * Update OpenGL texture with processed frame
      */
     public void updateGLTexture(Bitmap processedFrame) {
-        if (glRenderer != null && processedFrame != null) {
+        if (framePresenter != null && processedFrame != null) {
             // Convert bitmap to RGBA byte array for OpenGL
             int width = processedFrame.getWidth();
             int height = processedFrame.getHeight();
@@ -257,9 +479,8 @@ public class MainActivity extends AppCompatActivity {
                 rgbaBytes[i * 4 + 3] = (byte) ((pixel >> 24) & 0xFF); // A
             }
             
-            // Update OpenGL texture
-            glRenderer.updateFrame(rgbaBytes, width, height);
-            glSurfaceView.requestRender();
+            // Hand off to the vsync-paced presenter
+            framePresenter.submit(rgbaBytes, width, height);
         }
     }
     
@@ -311,8 +532,8 @@ public class MainActivity extends AppCompatActivity {
     
     private void bindCameraUseCases(ProcessCameraProvider cameraProvider) {
         // Preview use case
-        Preview preview = new Preview.Builder().build();
-        preview.setSurfaceProvider(previewView.getSurfaceProvider());
+        preview = new Preview.Builder().build();
+        preview.setSurfaceProvider(ContextCompat.getMainExecutor(this), this::provideCameraSurface);
         
         // Image analysis use case (for OpenCV processing)
         ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
@@ -321,6 +542,7 @@ public class MainActivity extends AppCompatActivity {
         
         // Set up frame processor
         frameProcessor = new CameraFrameProcessor(this);
+        frameProcessor.setGpuBackendEnabled(gpuBackendEnabled);
         imageAnalysis.setAnalyzer(cameraExecutor, frameProcessor);
         
         // Select back camera
@@ -338,6 +560,24 @@ public class MainActivity extends AppCompatActivity {
         );
     }
     
+    /**
+     * Hand the GL camera SurfaceTexture to CameraX. The request may arrive before the
+     * GL thread has created the texture, in which case it is fulfilled once it exists.
+     */
+    private void provideCameraSurface(SurfaceRequest request) {
+        if (cameraSurfaceTexture == null) {
+            pendingSurfaceRequest = request;
+            return;
+        }
+        pendingSurfaceRequest = null;
+        
+        Size resolution = request.getResolution();
+        cameraSurfaceTexture.setDefaultBufferSize(resolution.getWidth(), resolution.getHeight());
+        glRenderer.setCameraBufferSize(resolution.getWidth(), resolution.getHeight());
+        Surface surface = new Surface(cameraSurfaceTexture);
+        request.provideSurface(surface, ContextCompat.getMainExecutor(this), result -> surface.release());
+    }
+    
     private boolean checkCameraPermission() {
         return ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) 
                == PackageManager.PERMISSION_GRANTED;
@@ -370,11 +610,37 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     
+    @Override
+    protected void onResume() {
+        super.onResume();
+        glSurfaceView.onResume();
+        framePresenter.start();
+    }
+    
+    @Override
+    protected void onPause() {
+        framePresenter.stop();
+        glSurfaceView.onPause();
+        super.onPause();
+    }
+    
     @Override
     protected void onDestroy() {
         super.onDestroy();
         
-        // Stop WebSocket server
+        // Stop replay and recording, encoding, then the MJPEG and WebSocket servers
+        if (recordingPlayer != null) {
+            recordingPlayer.stop();
+        }
+        if (frameRecorder != null) {
+            frameRecorder.stop();
+        }
+        if (frameEncoder != null) {
+            frameEncoder.release();
+        }
+        if (mjpegServer != null) {
+            mjpegServer.stop();
+        }
         if (webSocketServer != null) {
             webSocketServer.stopServer();
         }
@@ -384,6 +650,11 @@ public class MainActivity extends AppCompatActivity {
             frameProcessor.release();
         }
         
+        // Release camera texture
+        if (glRenderer != null) {
+            glRenderer.release();
+        }
+        
         // Shutdown camera executor
         if (cameraExecutor != null) {
             cameraExecutor.shutdown();
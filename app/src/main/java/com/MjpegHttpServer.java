@@ -0,0 +1,324 @@
+package com.yourname.edgedetection;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Plain HTTP endpoint serving the stream as MJPEG (multipart/x-mixed-replace)
+ * for consumers that can't speak the WebSocket protocol, e.g. recorders or
+ * dashboards pointed at http://phone-ip:8766/stream.mjpg
+ *
+ * Each consumer joins a JPEG profile group of the WebSocket server, so it is
+ * served from the same encoded JPEG buffers as WebSocket viewers with that profile.
+ * Size and rate limits come from the query string: ?maxWidth=640&maxHeight=480&maxFps=15
+ * Backpressure matches ClientSession: while a consumer's socket is backed up
+ * new frames are skipped, and the newest one is written once it catches up.
+ */
+public class MjpegHttpServer {
+
+    private static final String TAG = "MjpegHttpServer";
+    public static final int PORT = 8766;
+
+    static final String BOUNDARY = "edgeframe";
+    private static final int MAX_REQUEST_HEAD = 8 * 1024;
+
+    private final SubscriberRegistry registry;
+    private final int port;
+    private final Set<Client> clients = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private ServerSocketChannel serverChannel;
+    private Thread acceptThread;
+
+    public MjpegHttpServer(SubscriberRegistry registry) {
+        this(registry, PORT);
+    }
+
+    /**
+     * @param port port to listen on, 0 for any free port
+     */
+    public MjpegHttpServer(SubscriberRegistry registry, int port) {
+        this.registry = registry;
+        this.port = port;
+    }
+
+    public synchronized void start() throws IOException {
+        if (serverChannel != null) {
+            return;
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(new InetSocketAddress(port));
+
+        ServerSocketChannel channel = serverChannel;
+        acceptThread = new Thread(() -> acceptLoop(channel), "MjpegAccept");
+        acceptThread.start();
+        Log.d(TAG, "MJPEG server started on port " + getPort());
+    }
+
+    public synchronized void stop() {
+        if (serverChannel == null) {
+            return;
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing server socket", e);
+        }
+        serverChannel = null;
+        for (Client client : clients) {
+            client.close();
+        }
+    }
+
+    /**
+     * Port actually bound, useful when started with port 0
+     */
+    public synchronized int getPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : port;
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    private void acceptLoop(ServerSocketChannel channel) {
+        while (channel.isOpen()) {
+            try {
+                SocketChannel socket = channel.accept();
+                Thread handler = new Thread(() -> serve(socket), "MjpegClient");
+                handler.start();
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                Log.e(TAG, "Accept failed", e);
+            }
+        }
+    }
+
+    private void serve(SocketChannel socket) {
+        Client client = null;
+        try {
+            socket.socket().setTcpNoDelay(true);
+            String target = readRequestTarget(socket);
+            URI uri = target != null ? URI.create(target) : null;
+            if (uri == null || !("/".equals(uri.getPath()) || "/stream.mjpg".equals(uri.getPath()))) {
+                write(socket, "HTTP/1.0 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+                return;
+            }
+
+            write(socket, "HTTP/1.0 200 OK\r\n"
+                + "Content-Type: multipart/x-mixed-replace; boundary=" + BOUNDARY + "\r\n"
+                + "Cache-Control: no-cache, no-store, private\r\n"
+                + "Pragma: no-cache\r\n"
+                + "Connection: close\r\n\r\n");
+
+            client = new Client(socket);
+            clients.add(client);
+            registry.addSubscriber(profileFromQuery(uri.getRawQuery()), client);
+            Log.d(TAG, "MJPEG client connected: " + socket.socket().getRemoteSocketAddress());
+
+            client.writeLoop();
+        } catch (IOException | IllegalArgumentException e) {
+            // consumers disconnect by closing the socket
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (client != null) {
+                registry.removeSubscriber(client);
+                clients.remove(client);
+                client.close();
+                Log.d(TAG, String.format("MJPEG client disconnected: sent=%d dropped=%d",
+                    client.getSentFrames(), client.getDroppedFrames()));
+            } else {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Read the request head and return the request target of a GET, or null
+     */
+    private static String readRequestTarget(SocketChannel socket) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(MAX_REQUEST_HEAD);
+        while (head.hasRemaining()) {
+            if (socket.read(head) < 0) {
+                return null;
+            }
+            String text = new String(head.array(), 0, head.position(), StandardCharsets.ISO_8859_1);
+            if (text.contains("\r\n\r\n") || text.contains("\n\n")) {
+                String[] requestLine = text.substring(0, text.indexOf('\n')).trim().split(" ");
+                if (requestLine.length < 2 || !"GET".equals(requestLine[0])) {
+                    return null;
+                }
+                return requestLine[1];
+            }
+        }
+        return null;
+    }
+
+    static OutputProfile profileFromQuery(String query) {
+        int maxWidth = 0;
+        int maxHeight = 0;
+        int maxFps = 0;
+        if (query != null) {
+            for (String param : query.split("&")) {
+                int eq = param.indexOf('=');
+                if (eq <= 0) {
+                    continue;
+                }
+                String key = param.substring(0, eq);
+                int value;
+                try {
+                    value = Integer.parseInt(param.substring(eq + 1));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if ("maxWidth".equals(key)) {
+                    maxWidth = value;
+                } else if ("maxHeight".equals(key)) {
+                    maxHeight = value;
+                } else if ("maxFps".equals(key)) {
+                    maxFps = value;
+                }
+            }
+        }
+        return new OutputProfile(maxWidth, maxHeight, maxFps, OutputProfile.CODEC_JPEG);
+    }
+
+    private static void write(SocketChannel socket, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+        while (buffer.hasRemaining()) {
+            socket.write(buffer);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * One MJPEG consumer. The group offers frames from the encoder threads; the
+     * client's own thread writes them. One frame is written at a time and only
+     * the newest waiting frame is kept.
+     */
+    static class Client implements FrameSubscriber {
+
+        private final SocketChannel socket;
+        private SharedBinaryFrame pendingFrame;
+        private boolean writing = false;
+        private boolean closed = false;
+
+        private volatile long sentFrames = 0;
+        private volatile long droppedFrames = 0;
+
+        Client(SocketChannel socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public synchronized boolean offer(SharedBinaryFrame frame) {
+            if (closed || !isJpeg(frame)) {
+                return false;
+            }
+            boolean idle = !writing && pendingFrame == null;
+            if (pendingFrame != null) {
+                // superseded before it was written
+                droppedFrames++;
+            }
+            pendingFrame = frame;
+            notifyAll();
+            return idle;
+        }
+
+        @Override
+        public boolean offerCachedKeyframe(SharedBinaryFrame frame) {
+            return offer(frame);
+        }
+
+        @Override
+        public boolean needsKeyframe() {
+            // every JPEG frame is a keyframe
+            return false;
+        }
+
+        /**
+         * Wait for the next frame to write, or null once closed
+         */
+        synchronized SharedBinaryFrame take() throws InterruptedException {
+            while (pendingFrame == null && !closed) {
+                wait();
+            }
+            if (closed) {
+                return null;
+            }
+            SharedBinaryFrame frame = pendingFrame;
+            pendingFrame = null;
+            writing = true;
+            return frame;
+        }
+
+        private synchronized void written() {
+            writing = false;
+            sentFrames++;
+        }
+
+        void writeLoop() throws IOException, InterruptedException {
+            SharedBinaryFrame frame;
+            while ((frame = take()) != null) {
+                ByteBuffer payload = frame.payloadBytes();
+                long captureTimeUs = payload.getLong(payload.position() + FrameProtocol.OFFSET_CAPTURE_TIME);
+                payload.position(payload.position() + FrameProtocol.HEADER_SIZE);
+
+                String partHeader = "--" + BOUNDARY + "\r\n"
+                    + "Content-Type: image/jpeg\r\n"
+                    + "Content-Length: " + payload.remaining() + "\r\n"
+                    + "X-Timestamp: " + captureTimeUs + "\r\n\r\n";
+                ByteBuffer[] part = {
+                    ByteBuffer.wrap(partHeader.getBytes(StandardCharsets.ISO_8859_1)),
+                    payload,
+                    ByteBuffer.wrap(CRLF)
+                };
+                // blocks while the consumer's socket is backed up; newer frames replace pendingFrame
+                while (part[2].hasRemaining()) {
+                    socket.write(part);
+                }
+                written();
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+            closeQuietly(socket);
+        }
+
+        long getSentFrames() {
+            return sentFrames;
+        }
+
+        long getDroppedFrames() {
+            return droppedFrames;
+        }
+
+        private static boolean isJpeg(SharedBinaryFrame frame) {
+            ByteBuffer payload = frame.payloadBytes();
+            return payload.remaining() > FrameProtocol.HEADER_SIZE
+                && payload.get(payload.position() + FrameProtocol.OFFSET_CODEC) == FrameProtocol.CODEC_JPEG;
+        }
+
+        private static final byte[] CRLF = {'\r', '\n'};
+    }
+}
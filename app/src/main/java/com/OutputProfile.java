@@ -0,0 +1,141 @@
+package com.yourname.edgedetection;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * What a viewer asked to receive: size limits, frame rate cap and codec.
+ * Viewers with equal profiles share one encode per frame.
+ * 0 means unlimited for the size and rate limits.
+ */
+public final class OutputProfile {
+
+    public static final String CODEC_EDGE = "edge";
+    public static final String CODEC_JPEG = "jpeg";
+
+    static final int MAX_FPS = 60;
+
+    /** Full resolution, full rate, edge codec for edge maps */
+    public static final OutputProfile DEFAULT = new OutputProfile(0, 0, 0, CODEC_EDGE);
+
+    private final int maxWidth;
+    private final int maxHeight;
+    private final int maxFps;
+    private final String codec;
+
+    public OutputProfile(int maxWidth, int maxHeight, int maxFps, String codec) {
+        this.maxWidth = Math.max(0, maxWidth);
+        this.maxHeight = Math.max(0, maxHeight);
+        this.maxFps = maxFps >= MAX_FPS ? 0 : Math.max(0, maxFps);
+        this.codec = CODEC_JPEG.equals(codec) ? CODEC_JPEG : CODEC_EDGE;
+    }
+
+    /**
+     * Profile from a subscribe message; missing fields keep their defaults
+     */
+    public static OutputProfile fromJson(JSONObject message) {
+        return new OutputProfile(
+            message.optInt("maxWidth", 0),
+            message.optInt("maxHeight", 0),
+            message.optInt("maxFps", 0),
+            message.optString("codec", CODEC_EDGE)
+        );
+    }
+
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    public int getMaxFps() {
+        return maxFps;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Whether edge maps should use the edge codec; raw frames are always JPEG
+     */
+    public boolean usesEdgeCodec() {
+        return CODEC_EDGE.equals(codec);
+    }
+
+    /**
+     * Scale factor that fits a frame into the size limits, never upscaling
+     */
+    public float scaleFor(int width, int height) {
+        float scale = 1f;
+        if (maxWidth > 0 && width > maxWidth) {
+            scale = Math.min(scale, (float) maxWidth / width);
+        }
+        if (maxHeight > 0 && height > maxHeight) {
+            scale = Math.min(scale, (float) maxHeight / height);
+        }
+        return scale;
+    }
+
+    /**
+     * This profile limited to what the ceiling allows: the lower of each
+     * limit, where 0 is unlimited. The codec stays this profile's, both
+     * codecs are valid for any viewer.
+     */
+    public OutputProfile within(OutputProfile ceiling) {
+        return new OutputProfile(
+            lowerLimit(maxWidth, ceiling.maxWidth),
+            lowerLimit(maxHeight, ceiling.maxHeight),
+            lowerLimit(maxFps, ceiling.maxFps),
+            codec
+        );
+    }
+
+    private static int lowerLimit(int a, int b) {
+        if (a == 0) {
+            return b;
+        }
+        return b == 0 ? a : Math.min(a, b);
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("maxWidth", maxWidth);
+        json.put("maxHeight", maxHeight);
+        json.put("maxFps", maxFps);
+        json.put("codec", codec);
+        return json;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof OutputProfile)) {
+            return false;
+        }
+        OutputProfile other = (OutputProfile) o;
+        return maxWidth == other.maxWidth
+            && maxHeight == other.maxHeight
+            && maxFps == other.maxFps
+            && codec.equals(other.codec);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = maxWidth;
+        result = 31 * result + maxHeight;
+        result = 31 * result + maxFps;
+        result = 31 * result + codec.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return (maxWidth > 0 ? maxWidth : "*") + "x" + (maxHeight > 0 ? maxHeight : "*")
+            + "@" + (maxFps > 0 ? maxFps : "*") + " " + codec;
+    }
+}
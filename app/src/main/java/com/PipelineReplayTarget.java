@@ -0,0 +1,106 @@
+package com.yourname.edgedetection;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Feeds recorded frames back into the encoder as if they came from the
+ * camera, so every viewer gets them in its own profile. Edge maps are decoded
+ * with the edge map codec, JPEG frames with BitmapFactory, both into pooled bitmaps.
+ */
+public class PipelineReplayTarget implements RecordingPlayer.Target {
+
+    private static final String TAG = "PipelineReplay";
+
+    private static final int EDGE = 0xFFFFFFFF;
+    private static final int BACKGROUND = 0xFF000000;
+
+    private final FramePool pool;
+    private final FrameEncoder encoder;
+    private final Runnable onEnd;
+
+    // Player thread state
+    private final EdgeMapCodec.Decoder edgeDecoder = new EdgeMapCodec.Decoder();
+    private byte[] payload = new byte[64 * 1024];
+    private int[] pixels = new int[0];
+
+    /**
+     * @param onEnd run on the player thread when playback ends, may be null
+     */
+    public PipelineReplayTarget(FramePool pool, FrameEncoder encoder, Runnable onEnd) {
+        this.pool = pool;
+        this.encoder = encoder;
+        this.onEnd = onEnd;
+    }
+
+    @Override
+    public void onFrame(ByteBuffer message) {
+        int base = message.position();
+        int codec = message.get(base + FrameProtocol.OFFSET_CODEC);
+        boolean keyframe = (message.get(base + FrameProtocol.OFFSET_FLAGS) & FrameProtocol.FLAG_KEYFRAME) != 0;
+        int sequence = message.getInt(base + FrameProtocol.OFFSET_SEQUENCE);
+        long captureTimeUs = message.getLong(base + FrameProtocol.OFFSET_CAPTURE_TIME);
+        int width = message.getShort(base + FrameProtocol.OFFSET_WIDTH) & 0xFFFF;
+        int height = message.getShort(base + FrameProtocol.OFFSET_HEIGHT) & 0xFFFF;
+
+        // the mapping is read-only; codecs here work on arrays
+        int length = message.remaining() - FrameProtocol.HEADER_SIZE;
+        if (payload.length < length) {
+            payload = new byte[length];
+        }
+        ByteBuffer source = message.duplicate();
+        source.position(base + FrameProtocol.HEADER_SIZE);
+        source.get(payload, 0, length);
+
+        PooledFrame frame = pool.acquire(width, height, captureTimeUs);
+        try {
+            if (codec == FrameProtocol.CODEC_EDGE) {
+                if (!edgeDecoder.decode(payload, 0, length, keyframe, sequence, width, height)) {
+                    return;
+                }
+                fillEdgeMap(frame.getBitmap(), width, height);
+                frame.setEdgeMap(true);
+            } else if (!decodeJpeg(frame.getBitmap(), length)) {
+                return;
+            }
+            encoder.submit(frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+    @Override
+    public void onReplayEnd() {
+        if (onEnd != null) {
+            onEnd.run();
+        }
+    }
+
+    private void fillEdgeMap(Bitmap bitmap, int width, int height) {
+        if (pixels.length != width * height) {
+            pixels = new int[width * height];
+        }
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                pixels[row + x] = edgeDecoder.isSet(x, y) ? EDGE : BACKGROUND;
+            }
+        }
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+    }
+
+    private boolean decodeJpeg(Bitmap target, int length) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        options.inBitmap = target;
+        Bitmap decoded = BitmapFactory.decodeByteArray(payload, 0, length, options);
+        if (decoded != target) {
+            Log.w(TAG, "Recorded JPEG did not decode into the pooled bitmap");
+            return false;
+        }
+        return true;
+    }
+}
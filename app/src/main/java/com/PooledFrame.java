@@ -0,0 +1,83 @@
+package com.yourname.edgedetection;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference-counted frame bitmap borrowed from a FramePool.
+ * Every stage that keeps the frame beyond the call it was handed in must retain()
+ * it and release() when done; the bitmap goes back to the pool on the last release.
+ */
+public final class PooledFrame {
+
+    private final FramePool pool;
+    private final Bitmap bitmap;
+    private final AtomicInteger refCount = new AtomicInteger();
+    private volatile long captureTimeUs;
+    private volatile boolean edgeMap;
+
+    PooledFrame(FramePool pool, Bitmap bitmap) {
+        this.pool = pool;
+        this.bitmap = bitmap;
+    }
+
+    /**
+     * Called by the pool when the frame is handed out, with one reference held
+     */
+    void reset(long captureTimeUs) {
+        this.captureTimeUs = captureTimeUs;
+        this.edgeMap = false;
+        refCount.set(1);
+    }
+
+    public PooledFrame retain() {
+        if (refCount.getAndIncrement() <= 0) {
+            throw new IllegalStateException("Frame retained after release");
+        }
+        return this;
+    }
+
+    public void release() {
+        int remaining = refCount.decrementAndGet();
+        if (remaining == 0) {
+            pool.recycle(this);
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Frame released too often");
+        }
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public int getWidth() {
+        return bitmap.getWidth();
+    }
+
+    public int getHeight() {
+        return bitmap.getHeight();
+    }
+
+    /**
+     * Sensor capture timestamp in microseconds
+     */
+    public long getCaptureTimeUs() {
+        return captureTimeUs;
+    }
+
+    public void setCaptureTimeUs(long captureTimeUs) {
+        this.captureTimeUs = captureTimeUs;
+    }
+
+    /**
+     * Whether the frame is a binary edge map, which streams with the edge codec
+     */
+    public boolean isEdgeMap() {
+        return edgeMap;
+    }
+
+    public void setEdgeMap(boolean edgeMap) {
+        this.edgeMap = edgeMap;
+    }
+}
@@ -0,0 +1,295 @@
+package com.yourname.edgedetection;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Viewers (and other subscribers) sharing one OutputProfile. Each frame is scaled, throttled and encoded
+ * once per group and the same wire frame is offered to every member, so encode
+ * cost grows with the number of distinct profiles, not with the number of viewers.
+ * Groups encode in parallel; all encoder state here is owned by the group.
+ */
+public class ProfileGroup {
+
+    private static final String TAG = "ProfileGroup";
+
+    // Frames up to 10% early still count as due, absorbs camera timestamp jitter
+    private static final double FPS_TOLERANCE = 0.9;
+
+    // At most two recovery keyframes per second per group
+    static final long RECOVERY_INTERVAL_NANOS = 500_000_000L;
+
+    private final OutputProfile profile;
+    private final KeyframeCache keyframeCache;
+    private final CaptureClock clock;
+    private final StatsAggregator stats;
+    private final Set<FrameSubscriber> sessions = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final JpegOutputStream jpegStream = new JpegOutputStream();
+    private final EdgeMapCodec edgeCodec = new EdgeMapCodec();
+    private int[] edgePixels = new int[0];
+    private int sequence = 0;
+
+    // Keyframes encoded on the side for members that need one
+    private SharedBinaryFrame recoveryFrame;
+    private long lastRecoveryNanos;
+    private boolean hasRecovery = false;
+
+    // Downscaling target, reused while the output size is stable
+    private Bitmap scaledBitmap;
+    private Canvas scaledCanvas;
+    private final Rect scaledRect = new Rect();
+    private Paint filterPaint;
+    // nearest neighbour keeps edge maps binary
+    private Paint nearestPaint;
+
+    // Throttling, only touched by the encoder's drain thread
+    private long lastFrameNanos;
+    private boolean hasFrame = false;
+
+    // Smoothed per-frame costs
+    private volatile double encodeCpuMs = 0;
+    private volatile double sendCpuMs = 0;
+    private volatile double frameBytes = 0;
+    private long encodedFrames = 0;
+
+    public ProfileGroup(OutputProfile profile, KeyframeCache keyframeCache, CaptureClock clock,
+                        StatsAggregator stats) {
+        this.profile = profile;
+        this.keyframeCache = keyframeCache;
+        this.clock = clock;
+        this.stats = stats;
+    }
+
+    public OutputProfile getProfile() {
+        return profile;
+    }
+
+    void add(FrameSubscriber subscriber) {
+        sessions.add(subscriber);
+    }
+
+    void remove(FrameSubscriber subscriber) {
+        sessions.remove(subscriber);
+    }
+
+    public boolean isEmpty() {
+        return sessions.isEmpty();
+    }
+
+    public int getClientCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Decide whether this group takes the current frame under its frame rate cap
+     */
+    boolean claimFrame(long nowNanos) {
+        int maxFps = profile.getMaxFps();
+        if (maxFps > 0 && hasFrame
+                && nowNanos - lastFrameNanos < FPS_TOLERANCE * 1_000_000_000L / maxFps) {
+            return false;
+        }
+        lastFrameNanos = nowNanos;
+        hasFrame = true;
+        return true;
+    }
+
+    /**
+     * Scale, encode and offer a frame to all members
+     * @return number of members the frame was sent to
+     */
+    synchronized int encodeAndSend(Bitmap source, long captureTimeUs, boolean edgeMap) {
+        if (sessions.isEmpty()) {
+            return 0;
+        }
+        long encodeStart = Debug.threadCpuTimeNanos();
+        long encodeStartWall = System.nanoTime();
+        Bitmap bitmap = scale(source, edgeMap);
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int frameSequence = ++sequence;
+        // a late joiner must not get a keyframe of the previous size
+        keyframeCache.invalidateIfResized(profile, width, height);
+
+        SharedBinaryFrame frame;
+        if (edgeMap && profile.usesEdgeCodec()) {
+            if (edgePixels.length != width * height) {
+                edgePixels = new int[width * height];
+            }
+            bitmap.getPixels(edgePixels, 0, width, 0, 0, width, height);
+            frame = encodeEdgeMap(edgePixels, width, height, frameSequence, captureTimeUs, encodeStartWall);
+        } else {
+            jpegStream.reset();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 80, jpegStream);
+            // the next edge map must not be a delta across JPEG frames
+            edgeCodec.reset();
+            frame = buildFrame(FrameProtocol.CODEC_JPEG, FrameProtocol.FLAG_KEYFRAME, frameSequence,
+                SharedBinaryFrame.NO_REFERENCE, captureTimeUs, width, height,
+                jpegStream.buffer(), jpegStream.size());
+        }
+
+        long sendStart = Debug.threadCpuTimeNanos();
+        long sendStartWall = System.nanoTime();
+        int sent = offer(frame);
+        long sendEnd = Debug.threadCpuTimeNanos();
+        stats.recordStage(StatsAggregator.STAGE_ENCODE, sendStartWall - encodeStartWall);
+        stats.recordStage(StatsAggregator.STAGE_SEND, System.nanoTime() - sendStartWall);
+        stats.recordEncoded(frame.getPayloadLength());
+
+        recordCost(sendStart - encodeStart, sendEnd - sendStart, frame.getPayloadLength());
+        return sent;
+    }
+
+    /**
+     * Encode an edge map for the group. Members in sync get the group's stream,
+     * usually a delta; if some need a keyframe (new or lagging viewers), the same
+     * image is also encoded as a keyframe for just them, at most once per
+     * RECOVERY_INTERVAL_NANOS so one slow viewer can't keep the encoder busy.
+     * @return the frame for members in sync, the keyframe is left in recoveryFrame
+     */
+    SharedBinaryFrame encodeEdgeMap(int[] pixels, int width, int height, int frameSequence,
+                                    long captureTimeUs, long nowNanos) {
+        boolean keyframe = edgeCodec.encode(pixels, width, height, frameSequence);
+        SharedBinaryFrame frame = buildFrame(FrameProtocol.CODEC_EDGE,
+            keyframe ? FrameProtocol.FLAG_KEYFRAME : 0, frameSequence,
+            keyframe ? SharedBinaryFrame.NO_REFERENCE : edgeCodec.getReferenceSequence(),
+            captureTimeUs, width, height, edgeCodec.getOutput(), edgeCodec.getOutputLength());
+
+        recoveryFrame = null;
+        if (!keyframe && anyNeedsKeyframe()
+                && (!hasRecovery || nowNanos - lastRecoveryNanos >= RECOVERY_INTERVAL_NANOS)) {
+            edgeCodec.encodeLastAsKeyframe();
+            recoveryFrame = buildFrame(FrameProtocol.CODEC_EDGE, FrameProtocol.FLAG_KEYFRAME,
+                frameSequence, SharedBinaryFrame.NO_REFERENCE, captureTimeUs, width, height,
+                edgeCodec.getOutput(), edgeCodec.getOutputLength());
+            lastRecoveryNanos = nowNanos;
+            hasRecovery = true;
+        }
+        return frame;
+    }
+
+    /**
+     * Offer a frame to all members; those needing a keyframe get recoveryFrame
+     * instead when one was encoded for this frame
+     * @return number of members a frame was sent to
+     */
+    int offer(SharedBinaryFrame frame) {
+        SharedBinaryFrame recovery = recoveryFrame;
+        recoveryFrame = null;
+        int sent = 0;
+        for (FrameSubscriber session : sessions) {
+            // only queues a read-only view of the shared bytes, slow clients skip
+            SharedBinaryFrame next = recovery != null && session.needsKeyframe() ? recovery : frame;
+            if (session.offer(next)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    private boolean anyNeedsKeyframe() {
+        for (FrameSubscriber session : sessions) {
+            if (session.needsKeyframe()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Build the complete WebSocket frame once for the whole group,
+     * stamped with the time it goes out to the sockets
+     */
+    private SharedBinaryFrame buildFrame(int codec, int flags, int frameSequence, int referenceSequence,
+                                         long captureTimeUs, int width, int height,
+                                         byte[] payload, int payloadLength) {
+        clock.observe(captureTimeUs);
+        ByteBuffer wire = SharedBinaryFrame.allocate(FrameProtocol.HEADER_SIZE + payloadLength);
+        FrameProtocol.writeHeader(wire, FrameProtocol.TYPE_FRAME, codec, flags,
+            frameSequence, captureTimeUs, clock.nowUs(), width, height);
+        wire.put(payload, 0, payloadLength);
+        SharedBinaryFrame frame = SharedBinaryFrame.seal(wire, frameSequence, referenceSequence);
+        if (frame.isKeyframe()) {
+            keyframeCache.put(profile, frame, width, height);
+        }
+        return frame;
+    }
+
+    private Bitmap scale(Bitmap source, boolean edgeMap) {
+        float scale = profile.scaleFor(source.getWidth(), source.getHeight());
+        if (scale >= 1f) {
+            return source;
+        }
+        int width = Math.max(1, Math.round(source.getWidth() * scale));
+        int height = Math.max(1, Math.round(source.getHeight() * scale));
+        if (scaledBitmap == null || scaledBitmap.getWidth() != width || scaledBitmap.getHeight() != height) {
+            scaledBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            scaledCanvas = new Canvas(scaledBitmap);
+            scaledRect.set(0, 0, width, height);
+        }
+        if (filterPaint == null) {
+            filterPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            nearestPaint = new Paint();
+        }
+        scaledCanvas.drawBitmap(source, null, scaledRect, edgeMap ? nearestPaint : filterPaint);
+        return scaledBitmap;
+    }
+
+    private void recordCost(long encodeNanos, long sendNanos, int bytes) {
+        // threadCpuTimeNanos() returns -1 where unsupported
+        if (encodeNanos < 0 || sendNanos < 0) {
+            return;
+        }
+        double alpha = encodedFrames == 0 ? 1.0 : 0.1;
+        encodeCpuMs += alpha * (encodeNanos / 1_000_000.0 - encodeCpuMs);
+        sendCpuMs += alpha * (sendNanos / 1_000_000.0 - sendCpuMs);
+        frameBytes += alpha * (bytes - frameBytes);
+
+        if (++encodedFrames % 300 == 0) {
+            Log.d(TAG, String.format("%s: encode=%.2fms send=%.3fms bytes=%.0f clients=%d",
+                profile, encodeCpuMs, sendCpuMs, frameBytes, sessions.size()));
+        }
+    }
+
+    /**
+     * Smoothed CPU time to scale and encode one frame for this group
+     */
+    public double getEncodeCpuMs() {
+        return encodeCpuMs;
+    }
+
+    /**
+     * Smoothed CPU time to hand one frame to all members
+     */
+    public double getSendCpuMs() {
+        return sendCpuMs;
+    }
+
+    public double getFrameBytes() {
+        return frameBytes;
+    }
+
+    /**
+     * Reusable JPEG sink exposing its buffer to avoid a copy per frame
+     */
+    private static class JpegOutputStream extends ByteArrayOutputStream {
+        JpegOutputStream() {
+            super(64 * 1024);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.yourname.edgedetection;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Replays frames from a RecordingReader at their recorded pace on its own
+ * thread, into the encoder pipeline (PipelineReplayTarget) or straight out to
+ * WebSocket viewers (EdgeDetectionWebSocketServer.replayFrame).
+ */
+public class RecordingPlayer {
+
+    private static final String TAG = "RecordingPlayer";
+
+    // Longer pauses in the recording (e.g. no viewers) are skipped
+    private static final long MAX_GAP_US = 1_000_000;
+
+    public interface Target {
+        /**
+         * One frame message (protocol header + payload); a read-only view that
+         * is only valid during the call
+         */
+        void onFrame(ByteBuffer message);
+
+        /**
+         * Playback reached the end or was stopped
+         */
+        void onReplayEnd();
+    }
+
+    private final RecordingReader reader;
+    private final Target target;
+    private volatile boolean playing = false;
+    private Thread thread;
+
+    public RecordingPlayer(RecordingReader reader, Target target) {
+        this.reader = reader;
+        this.target = target;
+    }
+
+    /**
+     * Play from the keyframe at or before the timestamp
+     * @param speed playback rate, 1 for real time
+     */
+    public synchronized void play(long fromTimestampUs, double speed) {
+        if (playing) {
+            return;
+        }
+        reader.seek(fromTimestampUs);
+        playing = true;
+        thread = new Thread(() -> playLoop(speed), "RecordingPlayer");
+        thread.start();
+    }
+
+    public void stop() {
+        Thread current;
+        synchronized (this) {
+            playing = false;
+            current = thread;
+            thread = null;
+        }
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    private void playLoop(double speed) {
+        long firstTimestampUs = -1;
+        long startNanos = 0;
+        long offsetUs = 0;
+        long lastTimestampUs = 0;
+        int frames = 0;
+        try {
+            ByteBuffer message;
+            while (playing && (message = reader.nextFrame()) != null) {
+                long timestampUs = message.getLong(message.position() + FrameProtocol.OFFSET_CAPTURE_TIME);
+                if (firstTimestampUs < 0) {
+                    firstTimestampUs = timestampUs;
+                    startNanos = System.nanoTime();
+                } else if (timestampUs - lastTimestampUs > MAX_GAP_US || timestampUs < lastTimestampUs) {
+                    offsetUs += timestampUs - lastTimestampUs;
+                }
+                lastTimestampUs = timestampUs;
+
+                long dueNanos = startNanos + (long) ((timestampUs - firstTimestampUs - offsetUs) * 1000 / speed);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+                }
+                target.onFrame(message);
+                frames++;
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (Exception e) {
+            Log.e(TAG, "Replay failed", e);
+        } finally {
+            playing = false;
+            Log.d(TAG, "Replayed " + frames + " frames");
+            target.onReplayEnd();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.yourname.edgedetection;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a FrameRecorder directory. Segments are mapped read-only and entries
+ * are returned as views of the mapping, without copying. seek() uses the
+ * segments' time ranges and sparse keyframe indexes, so reading always starts
+ * at a keyframe at or before the requested time.
+ *
+ * Not thread-safe; one reader per replay.
+ */
+public class RecordingReader {
+
+    private static final String TAG = "RecordingReader";
+
+    private final List<RecordingSegment> segments = new ArrayList<>();
+    private final RecordingSegment.Entry entry = new RecordingSegment.Entry();
+    private int segmentIndex = 0;
+    private int offset = RecordingSegment.HEADER_SIZE;
+
+    public RecordingReader(File dir) throws IOException {
+        for (File file : FrameRecorder.listSegments(dir)) {
+            try {
+                RecordingSegment segment = RecordingSegment.open(file);
+                if (segment.getFirstTimestampUs() >= 0) {
+                    segments.add(segment);
+                }
+            } catch (IOException e) {
+                // e.g. deleted by rotation while listing
+                Log.w(TAG, "Skipping segment " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Timestamp of the first recorded entry, or -1 if the recording is empty
+     */
+    public long getStartTimestampUs() {
+        return segments.isEmpty() ? -1 : segments.get(0).getFirstTimestampUs();
+    }
+
+    /**
+     * Timestamp of the last recorded entry, or -1 if the recording is empty
+     */
+    public long getEndTimestampUs() {
+        return segments.isEmpty() ? -1 : segments.get(segments.size() - 1).getLastTimestampUs();
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Position at the last indexed keyframe at or before the timestamp,
+     * or at the start if the timestamp precedes the recording
+     */
+    public void seek(long timestampUs) {
+        segmentIndex = 0;
+        offset = RecordingSegment.HEADER_SIZE;
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            RecordingSegment segment = segments.get(i);
+            if (segment.getFirstTimestampUs() <= timestampUs) {
+                segmentIndex = i;
+                offset = segment.seek(timestampUs);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Next entry in recording order, or null at the end. The returned holder
+     * and its payload view are reused by the next call.
+     */
+    RecordingSegment.Entry next() {
+        while (segmentIndex < segments.size()) {
+            int nextOffset = segments.get(segmentIndex).read(offset, entry);
+            if (nextOffset >= 0) {
+                offset = nextOffset;
+                return entry;
+            }
+            segmentIndex++;
+            offset = RecordingSegment.HEADER_SIZE;
+        }
+        return null;
+    }
+
+    /**
+     * Next frame message (protocol header + payload), skipping stats, or null at the end
+     */
+    public ByteBuffer nextFrame() {
+        RecordingSegment.Entry e;
+        while ((e = next()) != null) {
+            if (e.isFrame()) {
+                return e.payload;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,231 @@
+package com.yourname.edgedetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * One fixed-size, memory-mapped segment file of a recording. Entries are
+ * appended from the front; a sparse time index of keyframe entries grows
+ * from the back, so each segment is seekable on its own:
+ *
+ *   0   header (HEADER_SIZE bytes)
+ *         0  int   magic
+ *         4  short version
+ *         8  long  creation wall time (ms)
+ *        16  long  first entry timestamp (us)
+ *        24  long  last entry timestamp (us)
+ *        32  int   end of committed entries
+ *        36  int   index entry count
+ *   64  entries: int length, byte type, byte flags, short reserved, long timestamp (us), payload
+ *   ... free space ...
+ *   end - 16 * n  index entries, last written first: long timestamp (us), int offset, int reserved
+ *
+ * An entry is written before the end offset in the header moves past it, so a
+ * reader (or a restart after a crash) never sees a partial entry.
+ */
+final class RecordingSegment {
+
+    static final int MAGIC = 0x45445243; // "EDRC"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int ENTRY_HEADER_SIZE = 16;
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    static final int TYPE_FRAME = 1;
+    static final int TYPE_STATS = 2;
+    static final int FLAG_KEYFRAME = 0x01;
+
+    private static final int OFFSET_CREATED = 8;
+    private static final int OFFSET_FIRST_TIMESTAMP = 16;
+    private static final int OFFSET_LAST_TIMESTAMP = 24;
+    private static final int OFFSET_DATA_END = 32;
+    private static final int OFFSET_INDEX_COUNT = 36;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private RecordingSegment(File file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity();
+    }
+
+    /**
+     * Create a new segment file of the given size for appending
+     */
+    static RecordingSegment create(File file, int size, long createdWallMs) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+            // the mapping stays valid after the channel is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, (short) VERSION);
+        buffer.putLong(OFFSET_CREATED, createdWallMs);
+        buffer.putLong(OFFSET_FIRST_TIMESTAMP, -1);
+        buffer.putLong(OFFSET_LAST_TIMESTAMP, -1);
+        buffer.putInt(OFFSET_DATA_END, HEADER_SIZE);
+        buffer.putInt(OFFSET_INDEX_COUNT, 0);
+        return new RecordingSegment(file, buffer);
+    }
+
+    /**
+     * Map an existing segment read-only
+     */
+    static RecordingSegment open(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a recording segment: " + file);
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException("Unsupported segment version " + buffer.getShort(4) + ": " + file);
+        }
+        return new RecordingSegment(file, buffer);
+    }
+
+    /**
+     * Append an entry; the payload is copied straight from its buffer into the mapping
+     * @return false if the segment has no room left for it
+     */
+    boolean append(int type, int flags, long timestampUs, ByteBuffer payload, boolean indexed) {
+        int length = payload.remaining();
+        int offset = getDataEnd();
+        int indexCount = getIndexCount();
+        int indexStart = capacity - (indexCount + (indexed ? 1 : 0)) * INDEX_ENTRY_SIZE;
+        if (offset + ENTRY_HEADER_SIZE + length > indexStart) {
+            return false;
+        }
+
+        ByteBuffer target = buffer.duplicate();
+        target.position(offset);
+        target.putInt(length);
+        target.put((byte) type);
+        target.put((byte) flags);
+        target.putShort((short) 0);
+        target.putLong(timestampUs);
+        target.put(payload.duplicate());
+
+        if (indexed) {
+            int indexOffset = capacity - (indexCount + 1) * INDEX_ENTRY_SIZE;
+            buffer.putLong(indexOffset, timestampUs);
+            buffer.putInt(indexOffset + 8, offset);
+            buffer.putInt(OFFSET_INDEX_COUNT, indexCount + 1);
+        }
+        if (getFirstTimestampUs() < 0) {
+            buffer.putLong(OFFSET_FIRST_TIMESTAMP, timestampUs);
+        }
+        buffer.putLong(OFFSET_LAST_TIMESTAMP, timestampUs);
+        // commit
+        buffer.putInt(OFFSET_DATA_END, offset + ENTRY_HEADER_SIZE + length);
+        return true;
+    }
+
+    /**
+     * Whether a payload of this size could ever fit an empty segment of this size
+     */
+    static boolean fits(int segmentSize, int payloadLength) {
+        return HEADER_SIZE + ENTRY_HEADER_SIZE + payloadLength + INDEX_ENTRY_SIZE <= segmentSize;
+    }
+
+    /**
+     * Offset of the indexed entry at or before the timestamp, or of the first entry
+     */
+    int seek(long timestampUs) {
+        int count = getIndexCount();
+        int low = 0;
+        int high = count - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexTimestamp(mid) <= timestampUs) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found >= 0 ? indexOffset(found) : HEADER_SIZE;
+    }
+
+    private long indexTimestamp(int i) {
+        return buffer.getLong(capacity - (i + 1) * INDEX_ENTRY_SIZE);
+    }
+
+    private int indexOffset(int i) {
+        return buffer.getInt(capacity - (i + 1) * INDEX_ENTRY_SIZE + 8);
+    }
+
+    /**
+     * Read the entry at an offset into the holder
+     * @return offset of the next entry, or -1 past the committed end
+     */
+    int read(int offset, Entry entry) {
+        if (offset + ENTRY_HEADER_SIZE > getDataEnd()) {
+            return -1;
+        }
+        int length = buffer.getInt(offset);
+        entry.type = buffer.get(offset + 4);
+        entry.flags = buffer.get(offset + 5);
+        entry.timestampUs = buffer.getLong(offset + 8);
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(offset + ENTRY_HEADER_SIZE);
+        payload.limit(offset + ENTRY_HEADER_SIZE + length);
+        entry.payload = payload.slice().asReadOnlyBuffer();
+        return offset + ENTRY_HEADER_SIZE + length;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getCreatedWallMs() {
+        return buffer.getLong(OFFSET_CREATED);
+    }
+
+    long getFirstTimestampUs() {
+        return buffer.getLong(OFFSET_FIRST_TIMESTAMP);
+    }
+
+    long getLastTimestampUs() {
+        return buffer.getLong(OFFSET_LAST_TIMESTAMP);
+    }
+
+    int getDataEnd() {
+        return buffer.getInt(OFFSET_DATA_END);
+    }
+
+    int getIndexCount() {
+        return buffer.getInt(OFFSET_INDEX_COUNT);
+    }
+
+    /**
+     * One recorded entry; the payload is a read-only view of the mapping
+     */
+    static final class Entry {
+        int type;
+        int flags;
+        long timestampUs;
+        ByteBuffer payload;
+
+        boolean isFrame() {
+            return type == TYPE_FRAME;
+        }
+
+        boolean isKeyframe() {
+            return (flags & FLAG_KEYFRAME) != 0;
+        }
+    }
+}
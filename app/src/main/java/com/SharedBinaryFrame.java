@@ -0,0 +1,107 @@
+package com.yourname.edgedetection;
+
+import org.java_websocket.framing.BinaryFrame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary WebSocket frame whose wire encoding (frame header + payload) is built
+ * once per broadcast and shared by every connection it is sent to.
+ * Server frames are unmasked, so the bytes are identical for all clients;
+ * SharedFrameDraft hands each connection a read-only view instead of re-framing.
+ */
+public final class SharedBinaryFrame extends BinaryFrame {
+    
+    private static final int OPCODE_BINARY_FIN = 0x82;
+    
+    /** Reference sequence of frames that decode on their own */
+    public static final int NO_REFERENCE = -1;
+    
+    private final ByteBuffer wireBytes;
+    private final int payloadLength;
+    private final int sequence;
+    private final int referenceSequence;
+    
+    private SharedBinaryFrame(ByteBuffer wireBytes, int payloadLength, int sequence, int referenceSequence) {
+        this.wireBytes = wireBytes;
+        this.payloadLength = payloadLength;
+        this.sequence = sequence;
+        this.referenceSequence = referenceSequence;
+        // payload view for logging/inspection, no copy
+        ByteBuffer payload = wireBytes.duplicate();
+        payload.position(wireBytes.limit() - payloadLength);
+        setPayload(payload.slice());
+    }
+    
+    /**
+     * Allocate a wire buffer for a message of the given length with the
+     * WebSocket frame header already written; the caller fills in the payload
+     */
+    public static ByteBuffer allocate(int payloadLength) {
+        int headerLength = payloadLength < 126 ? 2 : payloadLength <= 0xFFFF ? 4 : 10;
+        ByteBuffer buffer = ByteBuffer.allocate(headerLength + payloadLength);
+        buffer.put((byte) OPCODE_BINARY_FIN);
+        if (payloadLength < 126) {
+            buffer.put((byte) payloadLength);
+        } else if (payloadLength <= 0xFFFF) {
+            buffer.put((byte) 126);
+            buffer.putShort((short) payloadLength);
+        } else {
+            buffer.put((byte) 127);
+            buffer.putLong(payloadLength);
+        }
+        return buffer;
+    }
+    
+    /**
+     * Seal a buffer from allocate() once its payload has been written
+     * @param sequence frame sequence number
+     * @param referenceSequence sequence of the frame this one is a delta of, or NO_REFERENCE
+     */
+    public static SharedBinaryFrame seal(ByteBuffer buffer, int sequence, int referenceSequence) {
+        if (buffer.hasRemaining()) {
+            throw new IllegalStateException("Payload incomplete: " + buffer.remaining() + " bytes missing");
+        }
+        buffer.flip();
+        int headerLength = (buffer.get(1) & 0x7F) < 126 ? 2 : (buffer.get(1) & 0x7F) == 126 ? 4 : 10;
+        return new SharedBinaryFrame(buffer.asReadOnlyBuffer(), buffer.limit() - headerLength,
+            sequence, referenceSequence);
+    }
+    
+    /**
+     * Fresh read-only view of the complete frame for one connection's write queue
+     */
+    public ByteBuffer wireBytes() {
+        return wireBytes.duplicate();
+    }
+    
+    /**
+     * Fresh read-only view of the payload (protocol header + encoded image)
+     */
+    public ByteBuffer payloadBytes() {
+        return getPayloadData().duplicate();
+    }
+    
+    public int getSequence() {
+        return sequence;
+    }
+    
+    public int getReferenceSequence() {
+        return referenceSequence;
+    }
+    
+    /**
+     * Whether the frame decodes without a previously delivered frame
+     */
+    public boolean isKeyframe() {
+        return referenceSequence == NO_REFERENCE;
+    }
+    
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+    
+    public int getWireLength() {
+        return wireBytes.limit();
+    }
+}
@@ -0,0 +1,29 @@
+package com.yourname.edgedetection;
+
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.framing.Framedata;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RFC 6455 draft that writes SharedBinaryFrames verbatim instead of framing
+ * their payload again for every connection. Registered without extensions:
+ * per-message extensions would need to transform each frame per connection.
+ */
+public class SharedFrameDraft extends Draft_6455 {
+    
+    @Override
+    public ByteBuffer createBinaryFrame(Framedata framedata) {
+        if (framedata instanceof SharedBinaryFrame) {
+            return ((SharedBinaryFrame) framedata).wireBytes();
+        }
+        return super.createBinaryFrame(framedata);
+    }
+    
+    @Override
+    public Draft copyInstance() {
+        // one instance per connection
+        return new SharedFrameDraft();
+    }
+}
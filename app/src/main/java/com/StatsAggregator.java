@@ -0,0 +1,199 @@
+package com.yourname.edgedetection;
+
+import java.util.Arrays;
+
+/**
+ * Interval statistics for the stats channel. The frame path only records
+ * durations and counters into preallocated arrays; the server's timer thread
+ * closes an interval every STATS_INTERVAL_MS and writes min/mean/p95/max per
+ * pipeline stage into a reused StringBuilder.
+ *
+ * Stage values are wall-clock milliseconds, written as [min, mean, p95, max, count].
+ */
+public class StatsAggregator {
+
+    public static final int STAGE_CONVERT = 0;
+    public static final int STAGE_PROCESS = 1;
+    public static final int STAGE_ENCODE = 2;
+    public static final int STAGE_SEND = 3;
+    private static final String[] STAGE_NAMES = {"convert", "process", "encode", "send"};
+
+    // p95 comes from the first samples of an interval past this; min/mean/max stay exact
+    private static final int MAX_SAMPLES = 256;
+
+    private final Stage[] stages = new Stage[STAGE_NAMES.length];
+    // Sorted copy of one stage's samples, only used by the timer thread
+    private final long[] scratch = new long[MAX_SAMPLES];
+
+    // Frame counters, guarded by this
+    private int frames = 0;
+    private long totalFrames = 0;
+    private int width = 0;
+    private int height = 0;
+    private int encodedOutputs = 0;
+    private long encodedBytes = 0;
+
+    private FrameEncoder encoder;
+    private long lastEncoderDrops = 0;
+    private long intervalStartNanos = System.nanoTime();
+
+    public StatsAggregator() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new Stage();
+        }
+    }
+
+    /**
+     * Source of the encoder's dropped frame count
+     */
+    public void setEncoder(FrameEncoder encoder) {
+        this.encoder = encoder;
+    }
+
+    /**
+     * Count a frame leaving the capture stage
+     */
+    public synchronized void recordFrame(int width, int height) {
+        frames++;
+        totalFrames++;
+        this.width = width;
+        this.height = height;
+    }
+
+    public void recordStage(int stage, long nanos) {
+        stages[stage].record(nanos);
+    }
+
+    /**
+     * Count one encoded output (one profile group's frame)
+     */
+    public synchronized void recordEncoded(int bytes) {
+        encodedOutputs++;
+        encodedBytes += bytes;
+    }
+
+    /**
+     * Close the current interval and append its fields (no braces) to a JSON object.
+     * Timer thread only.
+     */
+    public void appendInterval(StringBuilder out, long nowNanos) {
+        double seconds = Math.max(1e-3, (nowNanos - intervalStartNanos) / 1e9);
+        intervalStartNanos = nowNanos;
+
+        int intervalFrames;
+        int outputs;
+        long bytes;
+        synchronized (this) {
+            intervalFrames = frames;
+            outputs = encodedOutputs;
+            bytes = encodedBytes;
+            out.append("\"fps\":");
+            appendFixed(out, frames / seconds);
+            out.append(",\"width\":").append(width);
+            out.append(",\"height\":").append(height);
+            out.append(",\"frameCount\":").append(totalFrames);
+            frames = 0;
+            encodedOutputs = 0;
+            encodedBytes = 0;
+        }
+        out.append(",\"intervalMs\":").append(Math.round(seconds * 1000));
+        out.append(",\"frames\":").append(intervalFrames);
+        out.append(",\"bytesPerFrame\":").append(outputs > 0 ? bytes / outputs : 0);
+
+        long encoderDrops = 0;
+        FrameEncoder source = encoder;
+        if (source != null) {
+            long total = source.getDroppedFrames();
+            encoderDrops = total - lastEncoderDrops;
+            lastEncoderDrops = total;
+        }
+        out.append(",\"encoderDropped\":").append(encoderDrops);
+
+        out.append(",\"stages\":{");
+        for (int i = 0; i < stages.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append('"').append(STAGE_NAMES[i]).append("\":");
+            stages[i].drainTo(out, scratch);
+        }
+        out.append('}');
+    }
+
+    /**
+     * Round to two decimals without String.format
+     */
+    static void appendFixed(StringBuilder out, double value) {
+        long hundredths = Math.round(value * 100);
+        if (hundredths < 0) {
+            out.append('-');
+            hundredths = -hundredths;
+        }
+        out.append(hundredths / 100).append('.');
+        long fraction = hundredths % 100;
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+
+    /**
+     * Samples of one stage for the current interval
+     */
+    private static final class Stage {
+        private final long[] samples = new long[MAX_SAMPLES];
+        private int count = 0;
+        private long sum = 0;
+        private long min = Long.MAX_VALUE;
+        private long max = 0;
+
+        synchronized void record(long nanos) {
+            if (count < MAX_SAMPLES) {
+                samples[count] = nanos;
+            }
+            count++;
+            sum += nanos;
+            min = Math.min(min, nanos);
+            max = Math.max(max, nanos);
+        }
+
+        /**
+         * Append [min, mean, p95, max, count] in milliseconds and reset
+         */
+        void drainTo(StringBuilder out, long[] scratch) {
+            int n;
+            int sampled;
+            long total;
+            long low;
+            long high;
+            synchronized (this) {
+                n = count;
+                sampled = Math.min(count, MAX_SAMPLES);
+                System.arraycopy(samples, 0, scratch, 0, sampled);
+                total = sum;
+                low = min;
+                high = max;
+                count = 0;
+                sum = 0;
+                min = Long.MAX_VALUE;
+                max = 0;
+            }
+            if (n == 0) {
+                out.append("[0,0,0,0,0]");
+                return;
+            }
+            Arrays.sort(scratch, 0, sampled);
+            long p95 = scratch[Math.min(sampled - 1, (int) Math.ceil(0.95 * sampled) - 1)];
+
+            out.append('[');
+            appendFixed(out, low / 1e6);
+            out.append(',');
+            appendFixed(out, total / 1e6 / n);
+            out.append(',');
+            appendFixed(out, p95 / 1e6);
+            out.append(',');
+            appendFixed(out, high / 1e6);
+            out.append(',').append(n).append(']');
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.yourname.edgedetection;
+
+/**
+ * Where frame consumers other than WebSocket viewers (e.g. MJPEG over HTTP)
+ * join the profile groups of EdgeDetectionWebSocketServer
+ */
+public interface SubscriberRegistry {
+
+    /**
+     * Join the group for a profile; the cached keyframe is offered right away
+     */
+    void addSubscriber(OutputProfile profile, FrameSubscriber subscriber);
+
+    void removeSubscriber(FrameSubscriber subscriber);
+}
@@ -39,6 +39,12 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
     private int mState = STOPPED;
     private Bitmap mCacheBitmap;
+    // reused for every canvas draw
+    private final Rect mSrcRect = new Rect();
+    private final Rect mDstRect = new Rect();
+    private int mDrawMode = DRAW_CANVAS;
+    private int mActiveDrawMode = DRAW_CANVAS;
+    private GLFramePresenter mGlPresenter;
     private CvCameraViewListener2 mListener;
     private boolean mSurfaceExist;
     private final Object mSyncObject = new Object();
@@ -59,6 +65,8 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     public static final int CAMERA_ID_FRONT = 98;
     public static final int RGBA = 1;
     public static final int GRAY = 2;
+    public static final int DRAW_CANVAS = 0;
+    public static final int DRAW_GL = 1;
 
     public CameraBridgeViewBase(Context context, int cameraId) {
         super(context);
@@ -388,6 +396,20 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         mMaxHeight = maxHeight;
     }
 
+    /**
+     * Selects how processed frames are drawn: DRAW_CANVAS converts them to a
+     * bitmap drawn on the surface's canvas, DRAW_GL uploads them into a GL
+     * texture and lets the GPU scale them, presenting in step with vsync.
+     * DRAW_GL needs the app's JNI library with Mat.buffer() loaded, and frames
+     * of type CV_8UC1, CV_8UC3 or CV_8UC4; the FPS meter is not drawn on the
+     * frame then, only logged. Takes effect when the view is next started.
+     */
+    public void setDrawMode(int mode) {
+        if (mode != DRAW_CANVAS && mode != DRAW_GL)
+            throw new IllegalArgumentException("Unknown draw mode " + mode);
+        mDrawMode = mode;
+    }
+
     public void SetCaptureFormat(int format)
     {
         mPreviewFormat = format;
@@ -460,6 +482,7 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     // Bitmap must be constructed before surface
     private void onEnterStartedState() {
         Log.d(TAG, "call onEnterStartedState");
+        mActiveDrawMode = mDrawMode;
         /* Connect camera */
         if (!connectCamera(getWidth(), getHeight())) {
             AlertDialog ad = new AlertDialog.Builder(getContext()).create();
@@ -481,6 +504,10 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         if (mCacheBitmap != null) {
             mCacheBitmap.recycle();
         }
+        if (mGlPresenter != null) {
+            mGlPresenter.release();
+            mGlPresenter = null;
+        }
     }
 
     /**
@@ -492,11 +519,18 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
         Mat modified;
 
+        long start = System.nanoTime();
         if (mListener != null) {
             modified = mListener.onCameraFrame(frame);
         } else {
             modified = frame.rgba();
         }
+        long processed = System.nanoTime();
+
+        if (mActiveDrawMode == DRAW_GL) {
+            drawFrameGL(modified, start, processed);
+            return;
+        }
 
         boolean bmpValid = true;
         if (modified != null) {
@@ -509,6 +543,7 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
                 bmpValid = false;
             }
         }
+        long uploaded = System.nanoTime();
 
         if (bmpValid && mCacheBitmap != null) {
             Canvas canvas = getHolder().lockCanvas();
@@ -517,29 +552,59 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
                 if (BuildConfig.DEBUG)
                     Log.d(TAG, "mStretch value: " + mScale);
 
+                int bitmapWidth = mCacheBitmap.getWidth();
+                int bitmapHeight = mCacheBitmap.getHeight();
+                mSrcRect.set(0, 0, bitmapWidth, bitmapHeight);
                 if (mScale != 0) {
-                    canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2),
-                         (int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2 + mScale*mCacheBitmap.getWidth()),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight())), null);
+                    mDstRect.set((int)((canvas.getWidth() - mScale*bitmapWidth) / 2),
+                         (int)((canvas.getHeight() - mScale*bitmapHeight) / 2),
+                         (int)((canvas.getWidth() - mScale*bitmapWidth) / 2 + mScale*bitmapWidth),
+                         (int)((canvas.getHeight() - mScale*bitmapHeight) / 2 + mScale*bitmapHeight));
                 } else {
-                     canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((canvas.getWidth() - mCacheBitmap.getWidth()) / 2,
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2,
-                         (canvas.getWidth() - mCacheBitmap.getWidth()) / 2 + mCacheBitmap.getWidth(),
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2 + mCacheBitmap.getHeight()), null);
+                    mDstRect.set((canvas.getWidth() - bitmapWidth) / 2,
+                         (canvas.getHeight() - bitmapHeight) / 2,
+                         (canvas.getWidth() - bitmapWidth) / 2 + bitmapWidth,
+                         (canvas.getHeight() - bitmapHeight) / 2 + bitmapHeight);
                 }
-
-                if (mFpsMeter != null) {
-                    mFpsMeter.measure();
-                    mFpsMeter.draw(canvas, 20, 30);
+                canvas.drawBitmap(mCacheBitmap, mSrcRect, mDstRect, null);
+
+                FpsMeter fpsMeter = mFpsMeter;
+                if (fpsMeter != null) {
+                    // the present stage of this frame is only known after posting,
+                    // it is counted with the next measurement
+                    fpsMeter.addStageTime(FpsMeter.STAGE_PROCESS, processed - start);
+                    fpsMeter.addStageTime(FpsMeter.STAGE_UPLOAD, uploaded - processed);
+                    fpsMeter.measure();
+                    fpsMeter.draw(canvas, 20, 30);
                 }
                 getHolder().unlockCanvasAndPost(canvas);
+                if (fpsMeter != null)
+                    fpsMeter.addStageTime(FpsMeter.STAGE_PRESENT, System.nanoTime() - uploaded);
             }
         }
     }
 
+    private void drawFrameGL(Mat modified, long start, long processed) {
+        if (modified == null)
+            return;
+        if (mGlPresenter == null)
+            mGlPresenter = new GLFramePresenter(getHolder().getSurface());
+        if (!mGlPresenter.upload(modified)) {
+            Log.e(TAG, "Frame can't be drawn with GL, Mat type: " + modified);
+            return;
+        }
+        long uploaded = System.nanoTime();
+        mGlPresenter.present(mScale);
+
+        FpsMeter fpsMeter = mFpsMeter;
+        if (fpsMeter != null) {
+            fpsMeter.addStageTime(FpsMeter.STAGE_PROCESS, processed - start);
+            fpsMeter.addStageTime(FpsMeter.STAGE_UPLOAD, uploaded - processed);
+            fpsMeter.addStageTime(FpsMeter.STAGE_PRESENT, System.nanoTime() - uploaded);
+            fpsMeter.measure();
+        }
+    }
+
     /**
      * This method is invoked shall perform concrete operation to initialize the camera.
      * CONTRACT: as a result of this method variables mFrameWidth and mFrameHeight MUST be
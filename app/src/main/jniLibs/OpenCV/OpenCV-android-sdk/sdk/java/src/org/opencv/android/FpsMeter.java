@@ -13,6 +13,13 @@ public class FpsMeter {
     private static final String TAG               = "FpsMeter";
     private static final int    STEP              = 20;
     private static final DecimalFormat FPS_FORMAT = new DecimalFormat("0.00");
+    private static final DecimalFormat MS_FORMAT  = new DecimalFormat("0.0");
+
+    // Stages of delivering a frame, timed by CameraBridgeViewBase
+    public static final int STAGE_PROCESS = 0; // the listener's onCameraFrame()
+    public static final int STAGE_UPLOAD  = 1; // Mat to bitmap or texture
+    public static final int STAGE_PRESENT = 2; // draw and post, waiting for vsync with GL
+    private static final String[] STAGE_NAMES = { "process", "upload", "present" };
 
     private int                 mFramesCounter;
     private double              mFrequency;
@@ -22,12 +29,17 @@ public class FpsMeter {
     boolean                     mIsInitialized = false;
     int                         mWidth = 0;
     int                         mHeight = 0;
+    long                        mDroppedFrames = -1;
+    private final long[]        mStageNanos = new long[STAGE_NAMES.length];
+    private final double[]      mStageMillis = new double[STAGE_NAMES.length];
 
     public void init() {
         mFramesCounter = 0;
         mFrequency = Core.getTickFrequency();
         mprevFrameTime = Core.getTickCount();
         mStrfps = "";
+        for (int i = 0; i < mStageNanos.length; i++)
+            mStageNanos[i] = 0;
 
         mPaint = new Paint();
         mPaint.setColor(Color.BLUE);
@@ -48,6 +60,13 @@ public class FpsMeter {
                     mStrfps = FPS_FORMAT.format(fps) + " FPS@" + Integer.valueOf(mWidth) + "x" + Integer.valueOf(mHeight);
                 else
                     mStrfps = FPS_FORMAT.format(fps) + " FPS";
+                if (mDroppedFrames >= 0)
+                    mStrfps += ", " + mDroppedFrames + " dropped";
+                for (int i = 0; i < mStageNanos.length; i++) {
+                    mStageMillis[i] = mStageNanos[i] / 1e6 / STEP;
+                    mStageNanos[i] = 0;
+                    mStrfps += (i == 0 ? ", ms " : " ") + STAGE_NAMES[i] + " " + MS_FORMAT.format(mStageMillis[i]);
+                }
                 Log.i(TAG, mStrfps);
             }
         }
@@ -59,6 +78,29 @@ public class FpsMeter {
         mHeight = height;
     }
 
+    /**
+     * Frames the camera source dropped so far, shown with the rate; sources that
+     * don't drop frames leave this unset
+     */
+    public void setDroppedFrames(long dropped) {
+        mDroppedFrames = dropped;
+    }
+
+    /**
+     * Time a stage of the current frame took; averaged over the frames of
+     * each FPS measurement
+     */
+    public void addStageTime(int stage, long nanos) {
+        mStageNanos[stage] += nanos;
+    }
+
+    /**
+     * Mean time of a stage per frame over the last FPS measurement, in ms
+     */
+    public double getStageMillis(int stage) {
+        return mStageMillis[stage];
+    }
+
     public void draw(Canvas canvas, float offsetx, float offsety) {
         Log.d(TAG, mStrfps);
         canvas.drawText(mStrfps, offsetx, offsety, mPaint);
@@ -0,0 +1,301 @@
+package org.opencv.android;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatBuffer;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.util.Log;
+import android.view.Surface;
+
+/**
+ * GL delivery path of CameraBridgeViewBase: uploads the processed Mat into a
+ * texture straight from its native data (Mat.buffer(), no Bitmap in between)
+ * and lets the GPU scale it into the view. Swaps use a swap interval of 1, so
+ * presenting a frame waits for vsync once the display queue is full.
+ *
+ * Called from the thread delivering frames; the context is made current for
+ * each frame and released after the swap, so the delivering thread may change
+ * between camera connections and release() may be called from any thread
+ * once frames stopped.
+ */
+final class GLFramePresenter {
+
+    private static final String TAG = "GLFramePresenter";
+
+    private static final String VSS = ""
+            + "attribute vec2 vPosition;\n"
+            + "attribute vec2 vTexCoord;\n" + "varying vec2 texCoord;\n"
+            + "void main() {\n" + "  texCoord = vTexCoord;\n"
+            + "  gl_Position = vec4 ( vPosition.x, vPosition.y, 0.0, 1.0 );\n"
+            + "}";
+
+    private static final String FSS = ""
+            + "precision mediump float;\n"
+            + "uniform sampler2D sTexture;\n"
+            + "varying vec2 texCoord;\n"
+            + "void main() {\n"
+            + "  gl_FragColor = texture2D(sTexture,texCoord);\n" + "}";
+
+    private static final float VERTICES[] = {
+           -1, -1,
+           -1,  1,
+            1, -1,
+            1,  1 };
+    // Mat rows are top-down, row 0 is at the top of the view
+    private static final float TEX_COORDS[] = {
+            0,  1,
+            0,  0,
+            1,  1,
+            1,  0 };
+
+    private final Surface mSurface;
+    private EGLDisplay mDisplay = EGL14.EGL_NO_DISPLAY;
+    private EGLContext mContext = EGL14.EGL_NO_CONTEXT;
+    private EGLSurface mEglSurface = EGL14.EGL_NO_SURFACE;
+    private final int[] mSurfaceSize = new int[2];
+
+    private int mProgram;
+    private int mPosition;
+    private int mTexCoord;
+    private final int[] mTexture = {0};
+    private FloatBuffer mVertices;
+    private FloatBuffer mTexCoords;
+
+    // size and format the texture was allocated with
+    private int mTexWidth;
+    private int mTexHeight;
+    private int mTexFormat;
+
+    // Direct views of the last Mats uploaded; delivery usually alternates
+    // between the same couple of Mats, so the views are reused
+    private final MatBuffer[] mViews = new MatBuffer[2];
+    private int mNextView;
+    // copy of a Mat that is not continuous, which can't be viewed as a buffer
+    private final Mat mContinuous = new Mat();
+
+    GLFramePresenter(Surface surface) {
+        mSurface = surface;
+    }
+
+    /**
+     * Upload the frame into the texture; false if the Mat's type can't be drawn
+     */
+    boolean upload(Mat frame) {
+        int type = frame.type();
+        int format;
+        if (type == CvType.CV_8UC1)
+            format = GLES20.GL_LUMINANCE;
+        else if (type == CvType.CV_8UC3)
+            format = GLES20.GL_RGB;
+        else if (type == CvType.CV_8UC4)
+            format = GLES20.GL_RGBA;
+        else
+            return false;
+        if (!makeCurrent())
+            return false;
+
+        if (!frame.isContinuous()) {
+            frame.copyTo(mContinuous);
+            frame = mContinuous;
+        }
+        ByteBuffer data = view(frame).bytes();
+
+        int width = frame.cols();
+        int height = frame.rows();
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTexture[0]);
+        if (width != mTexWidth || height != mTexHeight || format != mTexFormat) {
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height, 0, format, GLES20.GL_UNSIGNED_BYTE, data);
+            mTexWidth = width;
+            mTexHeight = height;
+            mTexFormat = format;
+        } else {
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width, height, format, GLES20.GL_UNSIGNED_BYTE, data);
+        }
+        return true;
+    }
+
+    /**
+     * Draw the uploaded frame centred in the view, scaled by scale (0 for
+     * unscaled, as CameraBridgeViewBase.mScale), and swap
+     */
+    void present(float scale) {
+        EGL14.eglQuerySurface(mDisplay, mEglSurface, EGL14.EGL_WIDTH, mSurfaceSize, 0);
+        EGL14.eglQuerySurface(mDisplay, mEglSurface, EGL14.EGL_HEIGHT, mSurfaceSize, 1);
+        int surfaceWidth = mSurfaceSize[0];
+        int surfaceHeight = mSurfaceSize[1];
+        float s = scale != 0 ? scale : 1;
+        int width = (int)(s * mTexWidth);
+        int height = (int)(s * mTexHeight);
+
+        GLES20.glViewport(0, 0, surfaceWidth, surfaceHeight);
+        GLES20.glClearColor(0, 0, 0, 0);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        // the viewport does the scaling, GL's origin is bottom-left
+        GLES20.glViewport((surfaceWidth - width) / 2, (surfaceHeight - height) / 2, width, height);
+
+        GLES20.glUseProgram(mProgram);
+        GLES20.glVertexAttribPointer(mPosition, 2, GLES20.GL_FLOAT, false, 4*2, mVertices);
+        GLES20.glVertexAttribPointer(mTexCoord, 2, GLES20.GL_FLOAT, false, 4*2, mTexCoords);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTexture[0]);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        if (!EGL14.eglSwapBuffers(mDisplay, mEglSurface))
+            Log.e(TAG, "eglSwapBuffers failed: " + EGL14.eglGetError());
+        EGL14.eglMakeCurrent(mDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+    }
+
+    /**
+     * Free the GL objects and disconnect from the surface, so it can be drawn
+     * with a canvas again; frames must have stopped
+     */
+    void release() {
+        if (mDisplay != EGL14.EGL_NO_DISPLAY) {
+            if (EGL14.eglMakeCurrent(mDisplay, mEglSurface, mEglSurface, mContext)) {
+                GLES20.glDeleteTextures(1, mTexture, 0);
+                GLES20.glDeleteProgram(mProgram);
+                EGL14.eglMakeCurrent(mDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            }
+            EGL14.eglDestroySurface(mDisplay, mEglSurface);
+            EGL14.eglDestroyContext(mDisplay, mContext);
+        }
+        mDisplay = EGL14.EGL_NO_DISPLAY;
+        mContext = EGL14.EGL_NO_CONTEXT;
+        mEglSurface = EGL14.EGL_NO_SURFACE;
+        mViews[0] = null;
+        mViews[1] = null;
+        mContinuous.release();
+    }
+
+    private MatBuffer view(Mat frame) {
+        for (MatBuffer view : mViews) {
+            if (view != null && view.mat() == frame && view.isValid())
+                return view;
+        }
+        MatBuffer view = frame.buffer();
+        mViews[mNextView] = view;
+        mNextView = (mNextView + 1) % mViews.length;
+        return view;
+    }
+
+    private boolean makeCurrent() {
+        if (mDisplay == EGL14.EGL_NO_DISPLAY && !init())
+            return false;
+        if (!EGL14.eglMakeCurrent(mDisplay, mEglSurface, mEglSurface, mContext)) {
+            Log.e(TAG, "eglMakeCurrent failed: " + EGL14.eglGetError());
+            return false;
+        }
+        return true;
+    }
+
+    private boolean init() {
+        EGLDisplay display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        if (!EGL14.eglInitialize(display, version, 0, version, 1)) {
+            Log.e(TAG, "eglInitialize failed: " + EGL14.eglGetError());
+            return false;
+        }
+
+        int[] configAttribs = {
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL14.EGL_SURFACE_TYPE, EGL14.EGL_WINDOW_BIT,
+                EGL14.EGL_NONE };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        if (!EGL14.eglChooseConfig(display, configAttribs, 0, configs, 0, 1, numConfigs, 0) || numConfigs[0] == 0) {
+            Log.e(TAG, "No suitable EGL config");
+            return false;
+        }
+
+        int[] contextAttribs = { EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE };
+        EGLContext context = EGL14.eglCreateContext(display, configs[0], EGL14.EGL_NO_CONTEXT, contextAttribs, 0);
+        if (context == EGL14.EGL_NO_CONTEXT) {
+            Log.e(TAG, "eglCreateContext failed: " + EGL14.eglGetError());
+            return false;
+        }
+        EGLSurface surface = EGL14.eglCreateWindowSurface(display, configs[0], mSurface, new int[] { EGL14.EGL_NONE }, 0);
+        if (surface == EGL14.EGL_NO_SURFACE) {
+            Log.e(TAG, "eglCreateWindowSurface failed: " + EGL14.eglGetError());
+            EGL14.eglDestroyContext(display, context);
+            return false;
+        }
+        if (!EGL14.eglMakeCurrent(display, surface, surface, context)) {
+            Log.e(TAG, "eglMakeCurrent failed: " + EGL14.eglGetError());
+            EGL14.eglDestroySurface(display, surface);
+            EGL14.eglDestroyContext(display, context);
+            return false;
+        }
+        // pace presentation to the display
+        EGL14.eglSwapInterval(display, 1);
+
+        mDisplay = display;
+        mContext = context;
+        mEglSurface = surface;
+
+        mProgram = loadShader(VSS, FSS);
+        mPosition = GLES20.glGetAttribLocation(mProgram, "vPosition");
+        mTexCoord = GLES20.glGetAttribLocation(mProgram, "vTexCoord");
+        GLES20.glEnableVertexAttribArray(mPosition);
+        GLES20.glEnableVertexAttribArray(mTexCoord);
+
+        int bytes = VERTICES.length * Float.SIZE / Byte.SIZE;
+        mVertices = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mTexCoords = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mVertices.put(VERTICES).position(0);
+        mTexCoords.put(TEX_COORDS).position(0);
+
+        GLES20.glGenTextures(1, mTexture, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTexture[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        // Mat rows of 1 and 3 channel images are not 4-byte aligned
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+        mTexWidth = 0;
+        mTexHeight = 0;
+        mTexFormat = 0;
+        return true;
+    }
+
+    private static int loadShader(String vss, String fss) {
+        int vshader = compileShader(GLES20.GL_VERTEX_SHADER, vss);
+        int fshader = compileShader(GLES20.GL_FRAGMENT_SHADER, fss);
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vshader);
+        GLES20.glAttachShader(program, fshader);
+        GLES20.glLinkProgram(program);
+        GLES20.glDeleteShader(vshader);
+        GLES20.glDeleteShader(fshader);
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0)
+            Log.e(TAG, "Could not link shader program: " + GLES20.glGetProgramInfoLog(program));
+        return program;
+    }
+
+    private static int compileShader(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0)
+            Log.e(TAG, "Could not compile shader: " + GLES20.glGetShaderInfoLog(shader));
+        return shader;
+    }
+}
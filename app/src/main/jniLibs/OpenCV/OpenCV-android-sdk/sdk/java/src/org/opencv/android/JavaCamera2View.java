@@ -48,6 +48,11 @@ public class JavaCamera2View extends CameraBridgeViewBase {
     protected int mRequestTemplate = CameraDevice.TEMPLATE_PREVIEW;
     private int mFrameRotation;
 
+    // Images the reader holds at once, and the frame objects reused for them
+    private static final int MAX_IMAGES = 2;
+    private RotatedCameraFrame[] mFramePool;
+    private int mFrameIndex;
+
     protected CameraDevice mCameraDevice;
     protected CameraCaptureSession mCaptureSession;
     protected CaptureRequest.Builder mPreviewRequestBuilder;
@@ -200,7 +205,8 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 return;
             }
 
-            mImageReader = ImageReader.newInstance(w, h, mPreviewFormat, 2);
+            mImageReader = ImageReader.newInstance(w, h, mPreviewFormat, MAX_IMAGES);
+            allocateFramePool();
             mImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
                 @Override
                 public void onImageAvailable(ImageReader reader) {
@@ -214,11 +220,21 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     assert (planes.length == 3);
                     assert (image.getFormat() == mPreviewFormat);
 
-                    RotatedCameraFrame tempFrame = new RotatedCameraFrame(new JavaCamera2Frame(image), mFrameRotation);
-                    deliverAndDrawFrame(tempFrame);
-                    tempFrame.mFrame.release();
-                    tempFrame.release();
-                    image.close();
+                    // frames are delivered one at a time on this thread; taking the
+                    // next pool slot leaves the previous frame's rgba() (and rotated
+                    // copies) intact for listeners that hold on to it for a frame.
+                    // An unrotated gray() is a view of the image plane and is released
+                    // with the image below, so it is only valid during delivery.
+                    RotatedCameraFrame frame = mFramePool[mFrameIndex];
+                    mFrameIndex = (mFrameIndex + 1) % mFramePool.length;
+                    JavaCamera2Frame source = (JavaCamera2Frame) frame.mFrame;
+                    source.setImage(image);
+                    try {
+                        deliverAndDrawFrame(frame);
+                    } finally {
+                        source.unwrap();
+                        image.close();
+                    }
                 }
             }, mBackgroundHandler);
             Surface surface = mImageReader.getSurface();
@@ -252,10 +268,29 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 mImageReader.close();
                 mImageReader = null;
             }
+            releaseFramePool();
         }
         Log.i(LOGTAG, "camera closed!");
     }
 
+    private void allocateFramePool() {
+        releaseFramePool();
+        mFramePool = new RotatedCameraFrame[MAX_IMAGES];
+        for (int i = 0; i < mFramePool.length; i++)
+            mFramePool[i] = new RotatedCameraFrame(new JavaCamera2Frame(), mFrameRotation);
+        mFrameIndex = 0;
+    }
+
+    private void releaseFramePool() {
+        if (mFramePool == null)
+            return;
+        for (RotatedCameraFrame frame : mFramePool) {
+            frame.mFrame.release();
+            frame.release();
+        }
+        mFramePool = null;
+    }
+
     public static class JavaCameraSizeAccessor implements ListItemAccessor {
         @Override
         public int getWidth(Object obj) {
@@ -351,50 +386,52 @@ public class JavaCamera2View extends CameraBridgeViewBase {
         return true;
     }
 
+    /**
+     * A pooled frame: the planes of each Image are wrapped by Mats re-pointed
+     * every frame, and RGBA is converted into a Mat kept across frames, so
+     * delivering a frame allocates nothing once the pool is set up.
+     */
     private class JavaCamera2Frame implements CvCameraViewFrame {
         @Override
         public Mat gray() {
-            Image.Plane[] planes = mImage.getPlanes();
-            int w = mImage.getWidth();
-            int h = mImage.getHeight();
-            assert(planes[0].getPixelStride() == 1);
-            ByteBuffer y_plane = planes[0].getBuffer();
-            int y_plane_step = planes[0].getRowStride();
-            mGray = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
+            if (!mGrayValid) {
+                assert(mPlanes[0].getPixelStride() == 1);
+                mGray.wrap(mHeight, mWidth, CvType.CV_8UC1, mPlanes[0].getBuffer(), mPlanes[0].getRowStride());
+                mGrayValid = true;
+            }
             return mGray;
         }
 
         @Override
         public Mat rgba() {
-            Image.Plane[] planes = mImage.getPlanes();
-            int w = mImage.getWidth();
-            int h = mImage.getHeight();
+            if (mRgbaValid)
+                return mRgba;
+            Image.Plane[] planes = mPlanes;
+            int w = mWidth;
+            int h = mHeight;
             int chromaPixelStride = planes[1].getPixelStride();
 
 
             if (chromaPixelStride == 2) { // Chroma channels are interleaved
                 assert(planes[0].getPixelStride() == 1);
                 assert(planes[2].getPixelStride() == 2);
-                ByteBuffer y_plane = planes[0].getBuffer();
-                int y_plane_step = planes[0].getRowStride();
-                ByteBuffer uv_plane1 = planes[1].getBuffer();
-                int uv_plane1_step = planes[1].getRowStride();
-                ByteBuffer uv_plane2 = planes[2].getBuffer();
-                int uv_plane2_step = planes[2].getRowStride();
-                Mat y_mat = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
-                Mat uv_mat1 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane1, uv_plane1_step);
-                Mat uv_mat2 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane2, uv_plane2_step);
-                long addr_diff = uv_mat2.dataAddr() - uv_mat1.dataAddr();
+                mYMat.wrap(h, w, CvType.CV_8UC1, planes[0].getBuffer(), planes[0].getRowStride());
+                mUvMat1.wrap(h / 2, w / 2, CvType.CV_8UC2, planes[1].getBuffer(), planes[1].getRowStride());
+                mUvMat2.wrap(h / 2, w / 2, CvType.CV_8UC2, planes[2].getBuffer(), planes[2].getRowStride());
+                long addr_diff = mUvMat2.dataAddr() - mUvMat1.dataAddr();
                 if (addr_diff > 0) {
                     assert(addr_diff == 1);
-                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat1, mRgba, Imgproc.COLOR_YUV2RGBA_NV12);
+                    Imgproc.cvtColorTwoPlane(mYMat, mUvMat1, mRgba, Imgproc.COLOR_YUV2RGBA_NV12);
                 } else {
                     assert(addr_diff == -1);
-                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat2, mRgba, Imgproc.COLOR_YUV2RGBA_NV21);
+                    Imgproc.cvtColorTwoPlane(mYMat, mUvMat2, mRgba, Imgproc.COLOR_YUV2RGBA_NV21);
                 }
-                return mRgba;
             } else { // Chroma channels are not interleaved
-                byte[] yuv_bytes = new byte[w*(h+h/2)];
+                if (mYuvBytes == null || mYuvBytes.length != w*(h+h/2)) {
+                    mYuvBytes = new byte[w*(h+h/2)];
+                    mYuvMat.create(h+h/2, w, CvType.CV_8UC1);
+                }
+                byte[] yuv_bytes = mYuvBytes;
                 ByteBuffer y_plane = planes[0].getBuffer();
                 ByteBuffer u_plane = planes[1].getBuffer();
                 ByteBuffer v_plane = planes[2].getBuffer();
@@ -444,29 +481,68 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     }
                 }
 
-                Mat yuv_mat = new Mat(h+h/2, w, CvType.CV_8UC1);
-                yuv_mat.put(0, 0, yuv_bytes);
-                Imgproc.cvtColor(yuv_mat, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
-                return mRgba;
+                mYuvMat.put(0, 0, yuv_bytes);
+                Imgproc.cvtColor(mYuvMat, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
             }
+            mRgbaValid = true;
+            return mRgba;
         }
 
-
-        public JavaCamera2Frame(Image image) {
+        public JavaCamera2Frame() {
             super();
-            mImage = image;
             mRgba = new Mat();
             mGray = new Mat();
+            mYMat = new Mat();
+            mUvMat1 = new Mat();
+            mUvMat2 = new Mat();
+            mYuvMat = new Mat();
+        }
+
+        /**
+         * Point the frame at the next image; the Mats converted for the
+         * previous one are reused as output buffers
+         */
+        void setImage(Image image) {
+            mPlanes = image.getPlanes();
+            mWidth = image.getWidth();
+            mHeight = image.getHeight();
+            mRgbaValid = false;
+            mGrayValid = false;
+        }
+
+        /**
+         * The image is about to be closed: drop the views of its planes,
+         * including the Mat returned by gray()
+         */
+        void unwrap() {
+            mPlanes = null;
+            mGray.release();
+            mYMat.release();
+            mUvMat1.release();
+            mUvMat2.release();
         }
 
         @Override
         public void release() {
+            unwrap();
             mRgba.release();
-            mGray.release();
+            mYuvMat.release();
+            mYuvBytes = null;
         }
 
-        private Image mImage;
+        private Image.Plane[] mPlanes;
+        private int mWidth;
+        private int mHeight;
+        private boolean mRgbaValid;
+        private boolean mGrayValid;
         private Mat mRgba;
+        // views of the current image's planes
         private Mat mGray;
+        private Mat mYMat;
+        private Mat mUvMat1;
+        private Mat mUvMat2;
+        // non-interleaved chroma: the planes copied into one I420 buffer
+        private Mat mYuvMat;
+        private byte[] mYuvBytes;
     };
 }
@@ -1,6 +1,9 @@
 package org.opencv.android;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import android.content.Context;
 import android.graphics.ImageFormat;
@@ -35,11 +38,25 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
     private static final int MAGIC_TEXTURE_ID = 10;
     private static final String TAG = "JavaCameraView";
 
-    private byte mBuffer[];
+    private static final int DEFAULT_CALLBACK_BUFFERS = 3;
+    private static final int NO_BUFFER = -1;
+
+    // Ring of preview callback buffers. Each buffer is either queued in the
+    // camera, the latest frame waiting in mLatestBuffer, being copied by the
+    // worker, or copied and waiting in mFreeBuffers (a bit per slot). Camera is
+    // not thread-safe, so only onPreviewFrame() hands buffers back to it: the
+    // ones the worker is done with, and a frame replaced in mLatestBuffer
+    // before the worker took it, which is dropped.
+    private int mCallbackBufferCount = DEFAULT_CALLBACK_BUFFERS;
+    private byte[][] mBuffers;
+    private final AtomicInteger mLatestBuffer = new AtomicInteger(NO_BUFFER);
+    private final AtomicInteger mFreeBuffers = new AtomicInteger();
+    private final AtomicLong mDroppedFrames = new AtomicLong();
+    // Frames delivered by the worker, alternating so the previous one stays intact
     private Mat[] mFrameChain;
     private int mChainIdx = 0;
-    private Thread mThread;
-    private boolean mStopThread;
+    private volatile Thread mThread;
+    private volatile boolean mStopThread;
 
     protected Camera mCamera;
     protected RotatedCameraFrame[] mCameraFrame;
@@ -69,6 +86,27 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         super(context, attrs);
     }
 
+    /**
+     * Number of preview buffers the camera fills in turn, 3 to 32; takes
+     * effect on the next connect. More buffers let the camera keep capturing
+     * while a frame is processed, at the cost of memory.
+     */
+    public void setCallbackBufferCount(int count) {
+        // one buffer may wait for the camera to call back while another is
+        // being copied; with only two the camera could run dry
+        if (count < 3 || count > Integer.SIZE)
+            throw new IllegalArgumentException("3 to " + Integer.SIZE + " callback buffers are supported, got " + count);
+        mCallbackBufferCount = count;
+    }
+
+    /**
+     * Preview frames replaced by a newer one before they could be processed,
+     * since the camera was connected
+     */
+    public long getDroppedFrameCount() {
+        return mDroppedFrames.get();
+    }
+
     protected boolean initializeCamera(int width, int height) {
         Log.d(TAG, "Initialize java camera");
         boolean result = true;
@@ -199,9 +237,14 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
                     int size = mFrameWidth * mFrameHeight;
                     size  = size * ImageFormat.getBitsPerPixel(params.getPreviewFormat()) / 8;
-                    mBuffer = new byte[size];
-
-                    mCamera.addCallbackBuffer(mBuffer);
+                    mLatestBuffer.set(NO_BUFFER);
+                    mFreeBuffers.set(0);
+                    mDroppedFrames.set(0);
+                    mBuffers = new byte[mCallbackBufferCount][];
+                    for (int i = 0; i < mBuffers.length; i++) {
+                        mBuffers[i] = new byte[size];
+                        mCamera.addCallbackBuffer(mBuffers[i]);
+                    }
                     mCamera.setPreviewCallbackWithBuffer(this);
 
                     mFrameChain = new Mat[2];
@@ -254,11 +297,12 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
                 mCameraFrame[1].mFrame.release();
                 mCameraFrame[1].release();
             }
+            mLatestBuffer.set(NO_BUFFER);
+            mFreeBuffers.set(0);
+            mBuffers = null;
         }
     }
 
-    private boolean mCameraFrameReady = false;
-
     @Override
     protected boolean connectCamera(int width, int height) {
 
@@ -270,8 +314,6 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         if (!initializeCamera(width, height))
             return false;
 
-        mCameraFrameReady = false;
-
         /* now we can start update thread */
         Log.d(TAG, "Starting processing thread");
         mStopThread = false;
@@ -290,9 +332,7 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         try {
             mStopThread = true;
             Log.d(TAG, "Notify thread");
-            synchronized (this) {
-                this.notify();
-            }
+            LockSupport.unpark(mThread);
             Log.d(TAG, "Waiting for thread");
             if (mThread != null)
                 mThread.join();
@@ -304,21 +344,58 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
         /* Now release camera */
         releaseCamera();
-
-        mCameraFrameReady = false;
     }
 
     @Override
     public void onPreviewFrame(byte[] frame, Camera arg1) {
         if (BuildConfig.DEBUG)
             Log.d(TAG, "Preview Frame received. Frame size: " + frame.length);
-        synchronized (this) {
-            mFrameChain[mChainIdx].put(0, 0, frame);
-            mCameraFrameReady = true;
-            this.notify();
+        int slot = bufferSlot(frame);
+        if (slot == NO_BUFFER)
+            return; // a buffer of a previous configuration
+
+        // buffers the worker has copied go back from this thread only
+        int free = mFreeBuffers.getAndSet(0);
+        while (free != 0) {
+            returnBuffer(Integer.numberOfTrailingZeros(free));
+            free &= free - 1;
+        }
+
+        // latest wins: a frame the worker has not taken yet is dropped
+        int replaced = mLatestBuffer.getAndSet(slot);
+        if (replaced != NO_BUFFER) {
+            mDroppedFrames.incrementAndGet();
+            returnBuffer(replaced);
+        }
+        LockSupport.unpark(mThread);
+    }
+
+    private int bufferSlot(byte[] frame) {
+        byte[][] buffers = mBuffers;
+        if (buffers != null) {
+            for (int i = 0; i < buffers.length; i++) {
+                if (buffers[i] == frame)
+                    return i;
+            }
         }
-        if (mCamera != null)
-            mCamera.addCallbackBuffer(mBuffer);
+        return NO_BUFFER;
+    }
+
+    private void returnBuffer(int slot) {
+        Camera camera = mCamera;
+        byte[][] buffers = mBuffers;
+        if (camera != null && buffers != null)
+            camera.addCallbackBuffer(buffers[slot]);
+    }
+
+    /**
+     * Hand a copied buffer to onPreviewFrame() to be queued in the camera again
+     */
+    private void releaseBuffer(int slot) {
+        int free;
+        do {
+            free = mFreeBuffers.get();
+        } while (!mFreeBuffers.compareAndSet(free, free | (1 << slot)));
     }
 
     private class JavaCameraFrame implements CvCameraViewFrame {
@@ -362,29 +439,27 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
         @Override
         public void run() {
-            do {
-                boolean hasFrame = false;
-                synchronized (JavaCameraView.this) {
-                    try {
-                        while (!mCameraFrameReady && !mStopThread) {
-                            JavaCameraView.this.wait();
-                        }
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    if (mCameraFrameReady)
-                    {
-                        mChainIdx = 1 - mChainIdx;
-                        mCameraFrameReady = false;
-                        hasFrame = true;
-                    }
+            while (!mStopThread) {
+                int slot = mLatestBuffer.getAndSet(NO_BUFFER);
+                if (slot == NO_BUFFER) {
+                    // woken by the next frame or by disconnectCamera()
+                    LockSupport.park(this);
+                    continue;
                 }
 
-                if (!mStopThread && hasFrame) {
-                    if (!mFrameChain[1 - mChainIdx].empty())
-                        deliverAndDrawFrame(mCameraFrame[1 - mChainIdx]);
+                // the copy is the only way into a Mat for a Java byte[]; it is
+                // done here rather than in the callback, and only for frames
+                // that are delivered
+                mFrameChain[mChainIdx].put(0, 0, mBuffers[slot]);
+                releaseBuffer(slot);
+
+                if (!mStopThread) {
+                    if (mFpsMeter != null)
+                        mFpsMeter.setDroppedFrames(mDroppedFrames.get());
+                    deliverAndDrawFrame(mCameraFrame[mChainIdx]);
                 }
-            } while (!mStopThread);
+                mChainIdx = 1 - mChainIdx;
+            }
             Log.d(TAG, "Finish processing thread");
         }
     }
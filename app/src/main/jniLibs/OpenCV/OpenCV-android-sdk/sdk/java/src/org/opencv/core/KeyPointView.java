@@ -0,0 +1,101 @@
+package org.opencv.core;
+
+/**
+ * Read-only view of the elements of a MatOfKeyPoint (CV_32FC7), filled with one
+ * bulk copy of the native data into a reusable float array. Fields are read by
+ * index, so iterating or filtering creates no KeyPoint objects. Reusing one view
+ * across frames is allocation-free once its array has grown to the largest
+ * size seen. The view is a snapshot: load() again after the Mat changes.
+ */
+public class KeyPointView {
+    private static final int _depth = CvType.CV_32F;
+    private static final int _channels = 7;
+
+    private float[] buff = new float[0];
+    private int size;
+
+    public KeyPointView() {
+    }
+
+    public KeyPointView(Mat m) {
+        load(m);
+    }
+
+    /**
+     * Copy the elements of m, a CV_32FC7 vector such as a MatOfKeyPoint
+     */
+    public KeyPointView load(Mat m) {
+        int num = m.empty() ? 0 : m.checkVector(_channels, _depth);
+        if (num < 0)
+            throw new IllegalArgumentException("Incompatible Mat\n" + m);
+        if (buff.length < num * _channels)
+            buff = new float[num * _channels];
+        if (num > 0)
+            m.get(0, 0, buff, num * _channels);
+        size = num;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float x(int i) {
+        return buff[offset(i)];
+    }
+
+    public float y(int i) {
+        return buff[offset(i) + 1];
+    }
+
+    /**
+     * KeyPoint.size, the diameter of the keypoint neighbourhood
+     */
+    public float diameter(int i) {
+        return buff[offset(i) + 2];
+    }
+
+    public float angle(int i) {
+        return buff[offset(i) + 3];
+    }
+
+    public float response(int i) {
+        return buff[offset(i) + 4];
+    }
+
+    public int octave(int i) {
+        return (int) buff[offset(i) + 5];
+    }
+
+    public int classId(int i) {
+        return (int) buff[offset(i) + 6];
+    }
+
+    /**
+     * Copy element i into an existing KeyPoint
+     */
+    public KeyPoint get(int i, KeyPoint out) {
+        int o = offset(i);
+        out.pt.x = buff[o];
+        out.pt.y = buff[o + 1];
+        out.size = buff[o + 2];
+        out.angle = buff[o + 3];
+        out.response = buff[o + 4];
+        out.octave = (int) buff[o + 5];
+        out.class_id = (int) buff[o + 6];
+        return out;
+    }
+
+    /**
+     * The packed data, 7 values per element; valid up to size() * 7
+     */
+    public float[] data() {
+        return buff;
+    }
+
+    private int offset(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+        return i * _channels;
+    }
+}
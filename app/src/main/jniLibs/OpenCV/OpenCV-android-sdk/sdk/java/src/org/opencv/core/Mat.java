@@ -12,6 +12,7 @@ public class Mat {
         if (addr == 0)
             throw new UnsupportedOperationException("Native object address is NULL");
         nativeObj = addr;
+        MatCleaner.register(this, nativeObj);
     }
 
     //
@@ -21,6 +22,7 @@ public class Mat {
     // javadoc: Mat::Mat()
     public Mat() {
         nativeObj = n_Mat();
+        MatCleaner.register(this, nativeObj);
     }
 
     //
@@ -30,6 +32,7 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type)
     public Mat(int rows, int cols, int type) {
         nativeObj = n_Mat(rows, cols, type);
+        MatCleaner.register(this, nativeObj);
     }
 
     //
@@ -39,6 +42,7 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type, data)
     public Mat(int rows, int cols, int type, ByteBuffer data) {
         nativeObj = n_Mat(rows, cols, type, data);
+        MatCleaner.register(this, nativeObj);
     }
 
     //
@@ -48,6 +52,7 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type, data, step)
     public Mat(int rows, int cols, int type, ByteBuffer data, long step) {
         nativeObj = n_Mat(rows, cols, type, data, step);
+        MatCleaner.register(this, nativeObj);
     }
 
     //
@@ -57,6 +62,7 @@ public class Mat {
     // javadoc: Mat::Mat(size, type)
     public Mat(Size size, int type) {
         nativeObj = n_Mat(size.width, size.height, type);
+        MatCleaner.register(this, nativeObj);
     }
 
     //
@@ -66,6 +72,7 @@ public class Mat {
     // javadoc: Mat::Mat(sizes, type)
     public Mat(int[] sizes, int type) {
         nativeObj = n_Mat(sizes.length, sizes, type);
+        MatCleaner.register(this, nativeObj);
     }
 
     //
@@ -75,6 +82,7 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type, s)
     public Mat(int rows, int cols, int type, Scalar s) {
         nativeObj = n_Mat(rows, cols, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        MatCleaner.register(this, nativeObj);
     }
 
     //
@@ -84,6 +92,7 @@ public class Mat {
     // javadoc: Mat::Mat(size, type, s)
     public Mat(Size size, int type, Scalar s) {
         nativeObj = n_Mat(size.width, size.height, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        MatCleaner.register(this, nativeObj);
     }
 
     //
@@ -93,6 +102,7 @@ public class Mat {
     // javadoc: Mat::Mat(sizes, type, s)
     public Mat(int[] sizes, int type, Scalar s) {
         nativeObj = n_Mat(sizes.length, sizes, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        MatCleaner.register(this, nativeObj);
     }
 
     //
@@ -102,11 +112,13 @@ public class Mat {
     // javadoc: Mat::Mat(m, rowRange, colRange)
     public Mat(Mat m, Range rowRange, Range colRange) {
         nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end, colRange.start, colRange.end);
+        MatCleaner.register(this, nativeObj);
     }
 
     // javadoc: Mat::Mat(m, rowRange)
     public Mat(Mat m, Range rowRange) {
         nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end);
+        MatCleaner.register(this, nativeObj);
     }
 
     //
@@ -116,6 +128,7 @@ public class Mat {
     // javadoc: Mat::Mat(m, ranges)
     public Mat(Mat m, Range[] ranges) {
         nativeObj = n_Mat(m.nativeObj, ranges);
+        MatCleaner.register(this, nativeObj);
     }
 
     //
@@ -125,6 +138,7 @@ public class Mat {
     // javadoc: Mat::Mat(m, roi)
     public Mat(Mat m, Rect roi) {
         nativeObj = n_Mat(m.nativeObj, roi.y, roi.y + roi.height, roi.x, roi.x + roi.width);
+        MatCleaner.register(this, nativeObj);
     }
 
     //
@@ -434,6 +448,38 @@ public class Mat {
         return n_isContinuous(nativeObj);
     }
 
+    // javadoc: Mat::buffer()
+    /**
+     * Direct view of the data, without copying; see MatBuffer for how long it
+     * stays valid. The native side is in the app's JNI library
+     * (jni/mat-buffer.cpp), which has to be loaded first.
+     */
+    public MatBuffer buffer() {
+        if (empty() || !isContinuous())
+            throw new UnsupportedOperationException("Only non-empty continuous Mats can be viewed as a buffer\n" + this);
+        ByteBuffer data = nDataBuffer(nativeObj);
+        if (data == null)
+            throw new UnsupportedOperationException("Mat data can't be viewed as a buffer\n" + this);
+        return new MatBuffer(this, data);
+    }
+
+    // javadoc: Mat::wrap(rows, cols, type, data, step)
+    /**
+     * Points this Mat at external data, as the Mat(rows, cols, type, data,
+     * step) constructor does, but reusing this Mat's native object; for
+     * wrapping a new camera buffer every frame without allocating. Data the
+     * Mat held before is released. The Mat must not be used after the buffer
+     * is invalidated, release() it then. As with the constructor the buffer
+     * capacity is not checked. The native side is in the app's JNI
+     * library (jni/mat-buffer.cpp).
+     */
+    public void wrap(int rows, int cols, int type, ByteBuffer data, long step) {
+        if (data == null || !data.isDirect())
+            throw new IllegalArgumentException("Only direct buffers can be wrapped");
+        if (!nWrap(nativeObj, rows, cols, type, data, step))
+            throw new IllegalArgumentException("Invalid layout to wrap: " + rows + "x" + cols + " " + CvType.typeToString(type) + ", step " + step);
+    }
+
     //
     // C++: bool Mat::isSubmatrix()
     //
@@ -754,10 +800,15 @@ public class Mat {
         return new Mat(n_zeros(sizes.length, sizes, type));
     }
 
-    @Override
-    protected void finalize() throws Throwable {
+    // The native object is freed by MatCleaner once this Mat is unreachable;
+    // release() or a MatArena frees the data deterministically.
+
+    static void deleteNative(long nativeObj) {
         n_delete(nativeObj);
-        super.finalize();
+    }
+
+    static long nativeDataBytes(long nativeObj) {
+        return n_total(nativeObj) * n_elemSize(nativeObj);
     }
 
     // javadoc:Mat::toString()
@@ -965,6 +1016,48 @@ public class Mat {
         throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
     }
 
+    // javadoc:Mat::put(row,col,data,length)
+    public int put(int row, int col, int[] data, int length) {
+        int t = type();
+        if (data == null || length < 0 || length > data.length || length % CvType.channels(t) != 0)
+            throw new UnsupportedOperationException(
+                    "Provided data element number (" + length +
+                            ") should be multiple of the Mat channels count (" +
+                            CvType.channels(t) + ") and within the array");
+        if (CvType.depth(t) == CvType.CV_32S) {
+            return nPutI(nativeObj, row, col, length, data);
+        }
+        throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
+    // javadoc:Mat::put(row,col,data,length)
+    public int put(int row, int col, float[] data, int length) {
+        int t = type();
+        if (data == null || length < 0 || length > data.length || length % CvType.channels(t) != 0)
+            throw new UnsupportedOperationException(
+                    "Provided data element number (" + length +
+                            ") should be multiple of the Mat channels count (" +
+                            CvType.channels(t) + ") and within the array");
+        if (CvType.depth(t) == CvType.CV_32F) {
+            return nPutF(nativeObj, row, col, length, data);
+        }
+        throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
+    // javadoc:Mat::put(row,col,data,length)
+    public int put(int row, int col, double[] data, int length) {
+        int t = type();
+        if (data == null || length < 0 || length > data.length || length % CvType.channels(t) != 0)
+            throw new UnsupportedOperationException(
+                    "Provided data element number (" + length +
+                            ") should be multiple of the Mat channels count (" +
+                            CvType.channels(t) + ") and within the array");
+        if (CvType.depth(t) == CvType.CV_64F) {
+            return nPutD(nativeObj, row, col, length, data);
+        }
+        throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
     // javadoc:Mat::get(row,col,data)
     public int get(int row, int col, byte[] data) {
         int t = type();
@@ -1125,6 +1218,48 @@ public class Mat {
         throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
     }
 
+    // javadoc:Mat::get(row,col,data,length)
+    public int get(int row, int col, int[] data, int length) {
+        int t = type();
+        if (data == null || length < 0 || length > data.length || length % CvType.channels(t) != 0)
+            throw new UnsupportedOperationException(
+                    "Requested data element number (" + length +
+                            ") should be multiple of the Mat channels count (" +
+                            CvType.channels(t) + ") and within the array");
+        if (CvType.depth(t) == CvType.CV_32S) {
+            return nGetI(nativeObj, row, col, length, data);
+        }
+        throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
+    // javadoc:Mat::get(row,col,data,length)
+    public int get(int row, int col, float[] data, int length) {
+        int t = type();
+        if (data == null || length < 0 || length > data.length || length % CvType.channels(t) != 0)
+            throw new UnsupportedOperationException(
+                    "Requested data element number (" + length +
+                            ") should be multiple of the Mat channels count (" +
+                            CvType.channels(t) + ") and within the array");
+        if (CvType.depth(t) == CvType.CV_32F) {
+            return nGetF(nativeObj, row, col, length, data);
+        }
+        throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
+    // javadoc:Mat::get(row,col,data,length)
+    public int get(int row, int col, double[] data, int length) {
+        int t = type();
+        if (data == null || length < 0 || length > data.length || length % CvType.channels(t) != 0)
+            throw new UnsupportedOperationException(
+                    "Requested data element number (" + length +
+                            ") should be multiple of the Mat channels count (" +
+                            CvType.channels(t) + ") and within the array");
+        if (CvType.depth(t) == CvType.CV_64F) {
+            return nGetD(nativeObj, row, col, length, data);
+        }
+        throw new UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
     // javadoc:Mat::get(row,col)
     public double[] get(int row, int col) {
         return nGet(nativeObj, row, col);
@@ -1740,6 +1875,12 @@ public class Mat {
     // C++: bool Mat::isContinuous()
     private static native boolean n_isContinuous(long nativeObj);
 
+    // direct ByteBuffer over the data, implemented in jni/mat-buffer.cpp
+    private static native ByteBuffer nDataBuffer(long nativeObj);
+
+    // re-point at a direct buffer, implemented in jni/mat-buffer.cpp
+    private static native boolean nWrap(long nativeObj, int rows, int cols, int type, ByteBuffer data, long step);
+
     // C++: bool Mat::isSubmatrix()
     private static native boolean n_isSubmatrix(long nativeObj);
 
@@ -1834,7 +1975,7 @@ public class Mat {
     // C++: static Mat Mat::zeros(int ndims, const int* sizes, int type)
     private static native long n_zeros(int ndims, int[] sizes, int type);
 
-    // native support for java finalize()
+    // native support for MatCleaner
     private static native void n_delete(long nativeObj);
 
     private static native int nPutD(long self, int row, int col, int count, double[] data);
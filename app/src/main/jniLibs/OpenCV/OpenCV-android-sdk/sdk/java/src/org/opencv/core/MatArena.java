@@ -0,0 +1,103 @@
+package org.opencv.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scope that releases every Mat created in it on the same thread when it is
+ * closed, for per-frame temporaries that would otherwise wait for the garbage
+ * collector:
+ *
+ * <pre>
+ * try (MatArena arena = MatArena.open()) {
+ *     Mat gray = new Mat();
+ *     Imgproc.cvtColor(rgba, gray, Imgproc.COLOR_RGBA2GRAY);
+ *     ...
+ *     return arena.keep(result);
+ * }
+ * </pre>
+ *
+ * close() calls release() on each Mat, which frees its data; the small native
+ * header is freed by MatCleaner once the Mat is unreachable. Arenas nest, a Mat
+ * belongs to the innermost open arena of the thread creating it. keep() moves a
+ * Mat to the enclosing arena, or out of arenas altogether.
+ *
+ * An arena belongs to the thread that opened it and is closed in reverse order
+ * of opening, as try-with-resources does.
+ */
+public final class MatArena implements AutoCloseable {
+
+    private static final ThreadLocal<MatArena> current = new ThreadLocal<>();
+
+    private final MatArena parent;
+    private final Thread owner;
+    private final List<Mat> mats = new ArrayList<>();
+    private boolean closed;
+
+    private MatArena(MatArena parent) {
+        this.parent = parent;
+        this.owner = Thread.currentThread();
+    }
+
+    /**
+     * Opens an arena on the current thread, nested in the arena already open
+     */
+    public static MatArena open() {
+        MatArena arena = new MatArena(current.get());
+        current.set(arena);
+        return arena;
+    }
+
+    static void track(Mat mat) {
+        MatArena arena = current.get();
+        if (arena != null)
+            arena.mats.add(mat);
+    }
+
+    /**
+     * Takes the Mat out of this arena so close() does not release it; it
+     * belongs to the enclosing arena, if there is one
+     */
+    public <T extends Mat> T keep(T mat) {
+        checkOpen();
+        for (int i = mats.size() - 1; i >= 0; i--) {
+            if (mats.get(i) == mat) {
+                mats.remove(i);
+                if (parent != null)
+                    parent.mats.add(mat);
+                break;
+            }
+        }
+        return mat;
+    }
+
+    /**
+     * Number of Mats the arena will release
+     */
+    public int size() {
+        return mats.size();
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        if (Thread.currentThread() != owner)
+            throw new IllegalStateException("MatArena closed on another thread than it was opened on");
+        if (current.get() != this)
+            throw new IllegalStateException("MatArena closed while a nested arena is open");
+        closed = true;
+        if (parent != null)
+            current.set(parent);
+        else
+            current.remove();
+        for (Mat mat : mats)
+            mat.release();
+        mats.clear();
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("MatArena is closed");
+    }
+}
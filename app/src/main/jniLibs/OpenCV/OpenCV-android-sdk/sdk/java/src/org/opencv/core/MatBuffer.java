@@ -0,0 +1,79 @@
+package org.opencv.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Direct view of the data of a continuous Mat, without copying, in native
+ * byte order; see Mat.buffer(). The view holds a reference to its Mat, so the
+ * Mat is not freed while the view is reachable.
+ *
+ * The view is valid while the Mat keeps the same data. release(), create()
+ * with another size or type, or an OpenCV function reallocating the Mat as an
+ * output invalidate it. Every accessor checks this and throws
+ * IllegalStateException once the view is invalid. Buffers returned by the
+ * accessors are only checked when they are returned: don't keep them across
+ * operations that may reallocate the Mat, get them from the view again.
+ */
+public final class MatBuffer {
+
+    private final Mat mat;
+    private final ByteBuffer data;
+    private final long address;
+
+    MatBuffer(Mat mat, ByteBuffer data) {
+        this.mat = mat;
+        this.data = data.order(ByteOrder.nativeOrder());
+        this.address = mat.dataAddr();
+    }
+
+    public Mat mat() {
+        return mat;
+    }
+
+    /**
+     * Whether the Mat still has the data this view was created over
+     */
+    public boolean isValid() {
+        return address != 0
+                && mat.dataAddr() == address
+                && mat.total() * mat.elemSize() == data.capacity();
+    }
+
+    /**
+     * The data as bytes; a new buffer object each call, so position and limit are the caller's
+     */
+    public ByteBuffer bytes() {
+        checkValid();
+        return data.duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    public ShortBuffer asShortBuffer() {
+        checkValid();
+        return data.asShortBuffer();
+    }
+
+    public IntBuffer asIntBuffer() {
+        checkValid();
+        return data.asIntBuffer();
+    }
+
+    public FloatBuffer asFloatBuffer() {
+        checkValid();
+        return data.asFloatBuffer();
+    }
+
+    public DoubleBuffer asDoubleBuffer() {
+        checkValid();
+        return data.asDoubleBuffer();
+    }
+
+    private void checkValid() {
+        if (!isValid())
+            throw new IllegalStateException("Mat was released or reallocated since the buffer was created\n" + mat);
+    }
+}
@@ -0,0 +1,93 @@
+package org.opencv.core;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Frees the native object of a Mat once the Mat is unreachable, in place of
+ * finalize(). Every Mat registers itself when it is constructed; a daemon
+ * thread deletes the native object when the garbage collector enqueues the
+ * phantom reference. java.lang.ref.Cleaner would do the same but needs API 33.
+ *
+ * Unreachable Mats can still hold large buffers until the next collection:
+ * release() or a MatArena frees the data of Mats that are done with right
+ * away. liveMats() and liveBytes() show what is not yet freed.
+ */
+public final class MatCleaner {
+
+    private static final ReferenceQueue<Mat> queue = new ReferenceQueue<>();
+    // keeps the references reachable until they are cleaned
+    private static final Set<Cleanable> live = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    static {
+        Thread thread = new Thread(MatCleaner::drain, "OpenCV-MatCleaner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private MatCleaner() {
+    }
+
+    static final class Cleanable extends PhantomReference<Mat> {
+        private final long nativeObj;
+        private boolean cleaned;
+
+        Cleanable(Mat mat, long nativeObj) {
+            super(mat, queue);
+            this.nativeObj = nativeObj;
+        }
+
+        synchronized void clean() {
+            if (cleaned)
+                return;
+            cleaned = true;
+            live.remove(this);
+            Mat.deleteNative(nativeObj);
+        }
+
+        synchronized long dataBytes() {
+            return cleaned ? 0 : Mat.nativeDataBytes(nativeObj);
+        }
+    }
+
+    static Cleanable register(Mat mat, long nativeObj) {
+        Cleanable cleanable = new Cleanable(mat, nativeObj);
+        live.add(cleanable);
+        MatArena.track(mat);
+        return cleanable;
+    }
+
+    /**
+     * Number of Mats whose native object is not freed yet, reachable or not
+     */
+    public static int liveMats() {
+        return live.size();
+    }
+
+    /**
+     * Bytes of data referenced by the Mats counted in liveMats(). Each Mat
+     * counts the data it refers to, so a submat and its parent both count the
+     * submat's area, and released Mats count 0.
+     */
+    public static long liveBytes() {
+        long bytes = 0;
+        for (Cleanable cleanable : live)
+            bytes += cleanable.dataBytes();
+        return bytes;
+    }
+
+    private static void drain() {
+        while (true) {
+            try {
+                Reference<? extends Mat> reference = queue.remove();
+                ((Cleanable) reference).clean();
+            } catch (InterruptedException e) {
+                // daemon thread, keep draining
+            }
+        }
+    }
+}
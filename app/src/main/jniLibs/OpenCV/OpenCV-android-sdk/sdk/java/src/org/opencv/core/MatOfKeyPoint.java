@@ -74,6 +74,14 @@ public class MatOfKeyPoint extends Mat {
         return a;
     }
 
+    /**
+     * Elements by index over one bulk copy, without creating KeyPoint objects;
+     * view is reused if given
+     */
+    public KeyPointView toView(KeyPointView view) {
+        return (view != null ? view : new KeyPointView()).load(this);
+    }
+
     public void fromList(List<KeyPoint> lkp) {
         KeyPoint akp[] = lkp.toArray(new KeyPoint[0]);
         fromArray(akp);
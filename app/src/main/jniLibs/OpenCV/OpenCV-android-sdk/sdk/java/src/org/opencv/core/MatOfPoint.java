@@ -66,6 +66,14 @@ public class MatOfPoint extends Mat {
         return ap;
     }
 
+    /**
+     * Elements by index over one bulk copy, without creating Point objects;
+     * view is reused if given
+     */
+    public PointView toView(PointView view) {
+        return (view != null ? view : new PointView()).load(this);
+    }
+
     public void fromList(List<Point> lp) {
         Point ap[] = lp.toArray(new Point[0]);
         fromArray(ap);
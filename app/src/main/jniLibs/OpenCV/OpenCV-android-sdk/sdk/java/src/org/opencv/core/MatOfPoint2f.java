@@ -66,6 +66,14 @@ public class MatOfPoint2f extends Mat {
         return ap;
     }
 
+    /**
+     * Elements by index over one bulk copy, without creating Point objects;
+     * view is reused if given
+     */
+    public Point2fView toView(Point2fView view) {
+        return (view != null ? view : new Point2fView()).load(this);
+    }
+
     public void fromList(List<Point> lp) {
         Point ap[] = lp.toArray(new Point[0]);
         fromArray(ap);
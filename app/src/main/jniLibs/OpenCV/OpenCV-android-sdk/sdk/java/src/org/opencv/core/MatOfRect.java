@@ -69,6 +69,14 @@ public class MatOfRect extends Mat {
             a[i] = new Rect(buff[i*_channels], buff[i*_channels+1], buff[i*_channels+2], buff[i*_channels+3]);
         return a;
     }
+    /**
+     * Elements by index over one bulk copy, without creating Rect objects;
+     * view is reused if given
+     */
+    public RectView toView(RectView view) {
+        return (view != null ? view : new RectView()).load(this);
+    }
+
     public void fromList(List<Rect> lr) {
         Rect ap[] = lr.toArray(new Rect[0]);
         fromArray(ap);
@@ -0,0 +1,73 @@
+package org.opencv.core;
+
+/**
+ * Read-only view of the elements of a MatOfPoint2f (CV_32FC2), filled with one
+ * bulk copy of the native data into a reusable float array. Fields are read by
+ * index, so iterating or filtering creates no Point objects. Reusing one view
+ * across frames is allocation-free once its array has grown to the largest
+ * size seen. The view is a snapshot: load() again after the Mat changes.
+ */
+public class Point2fView {
+    private static final int _depth = CvType.CV_32F;
+    private static final int _channels = 2;
+
+    private float[] buff = new float[0];
+    private int size;
+
+    public Point2fView() {
+    }
+
+    public Point2fView(Mat m) {
+        load(m);
+    }
+
+    /**
+     * Copy the elements of m, a CV_32FC2 vector such as a MatOfPoint2f
+     */
+    public Point2fView load(Mat m) {
+        int num = m.empty() ? 0 : m.checkVector(_channels, _depth);
+        if (num < 0)
+            throw new IllegalArgumentException("Incompatible Mat\n" + m);
+        if (buff.length < num * _channels)
+            buff = new float[num * _channels];
+        if (num > 0)
+            m.get(0, 0, buff, num * _channels);
+        size = num;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float x(int i) {
+        return buff[offset(i)];
+    }
+
+    public float y(int i) {
+        return buff[offset(i) + 1];
+    }
+
+    /**
+     * Copy element i into an existing Point
+     */
+    public Point get(int i, Point out) {
+        int o = offset(i);
+        out.x = buff[o];
+        out.y = buff[o + 1];
+        return out;
+    }
+
+    /**
+     * The packed data, 2 values per element; valid up to size() * 2
+     */
+    public float[] data() {
+        return buff;
+    }
+
+    private int offset(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+        return i * _channels;
+    }
+}
@@ -0,0 +1,73 @@
+package org.opencv.core;
+
+/**
+ * Read-only view of the elements of a MatOfPoint (CV_32SC2), filled with one
+ * bulk copy of the native data into a reusable int array. Fields are read by
+ * index, so iterating or filtering creates no Point objects. Reusing one view
+ * across frames is allocation-free once its array has grown to the largest
+ * size seen. The view is a snapshot: load() again after the Mat changes.
+ */
+public class PointView {
+    private static final int _depth = CvType.CV_32S;
+    private static final int _channels = 2;
+
+    private int[] buff = new int[0];
+    private int size;
+
+    public PointView() {
+    }
+
+    public PointView(Mat m) {
+        load(m);
+    }
+
+    /**
+     * Copy the elements of m, a CV_32SC2 vector such as a MatOfPoint
+     */
+    public PointView load(Mat m) {
+        int num = m.empty() ? 0 : m.checkVector(_channels, _depth);
+        if (num < 0)
+            throw new IllegalArgumentException("Incompatible Mat\n" + m);
+        if (buff.length < num * _channels)
+            buff = new int[num * _channels];
+        if (num > 0)
+            m.get(0, 0, buff, num * _channels);
+        size = num;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int x(int i) {
+        return buff[offset(i)];
+    }
+
+    public int y(int i) {
+        return buff[offset(i) + 1];
+    }
+
+    /**
+     * Copy element i into an existing Point
+     */
+    public Point get(int i, Point out) {
+        int o = offset(i);
+        out.x = buff[o];
+        out.y = buff[o + 1];
+        return out;
+    }
+
+    /**
+     * The packed data, 2 values per element; valid up to size() * 2
+     */
+    public int[] data() {
+        return buff;
+    }
+
+    private int offset(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+        return i * _channels;
+    }
+}
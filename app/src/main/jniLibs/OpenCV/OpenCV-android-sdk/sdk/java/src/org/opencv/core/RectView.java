@@ -0,0 +1,83 @@
+package org.opencv.core;
+
+/**
+ * Read-only view of the elements of a MatOfRect (CV_32SC4), filled with one
+ * bulk copy of the native data into a reusable int array. Fields are read by
+ * index, so iterating or filtering creates no Rect objects. Reusing one view
+ * across frames is allocation-free once its array has grown to the largest
+ * size seen. The view is a snapshot: load() again after the Mat changes.
+ */
+public class RectView {
+    private static final int _depth = CvType.CV_32S;
+    private static final int _channels = 4;
+
+    private int[] buff = new int[0];
+    private int size;
+
+    public RectView() {
+    }
+
+    public RectView(Mat m) {
+        load(m);
+    }
+
+    /**
+     * Copy the elements of m, a CV_32SC4 vector such as a MatOfRect
+     */
+    public RectView load(Mat m) {
+        int num = m.empty() ? 0 : m.checkVector(_channels, _depth);
+        if (num < 0)
+            throw new IllegalArgumentException("Incompatible Mat\n" + m);
+        if (buff.length < num * _channels)
+            buff = new int[num * _channels];
+        if (num > 0)
+            m.get(0, 0, buff, num * _channels);
+        size = num;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int x(int i) {
+        return buff[offset(i)];
+    }
+
+    public int y(int i) {
+        return buff[offset(i) + 1];
+    }
+
+    public int width(int i) {
+        return buff[offset(i) + 2];
+    }
+
+    public int height(int i) {
+        return buff[offset(i) + 3];
+    }
+
+    /**
+     * Copy element i into an existing Rect
+     */
+    public Rect get(int i, Rect out) {
+        int o = offset(i);
+        out.x = buff[o];
+        out.y = buff[o + 1];
+        out.width = buff[o + 2];
+        out.height = buff[o + 3];
+        return out;
+    }
+
+    /**
+     * The packed data, 4 values per element; valid up to size() * 4
+     */
+    public int[] data() {
+        return buff;
+    }
+
+    private int offset(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+        return i * _channels;
+    }
+}
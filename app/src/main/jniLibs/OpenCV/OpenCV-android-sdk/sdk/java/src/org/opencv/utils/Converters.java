@@ -1,5 +1,6 @@
 package org.opencv.utils;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -803,4 +804,125 @@ public class Converters {
             rs.add(new RotatedRect(new Point(buff[5 * i], buff[5 * i + 1]), new Size(buff[5 * i + 2], buff[5 * i + 3]), buff[5 * i + 4]));
         }
     }
+
+    // Packed primitive arrays, for hot paths such as contours on every frame.
+    // Element i's channels are at data[i * channels], e.g. points interleaved
+    // as x0, y0, x1, y1, ... Layouts are the ones the List converters above use:
+    //
+    //   Point        2 channels: int (CV_32SC2), float (CV_32FC2) or double (CV_64FC2)
+    //   Point3       3 channels, same depths
+    //   Rect         4 ints x, y, width, height (CV_32SC4); Rect2d as doubles (CV_64FC4)
+    //   RotatedRect  5 floats center.x, center.y, width, height, angle (CV_32FC(5))
+    //   KeyPoint     7 doubles x, y, size, angle, response, octave, class_id (CV_64FC(7))
+    //   DMatch       4 doubles queryIdx, trainIdx, imgIdx, distance (CV_64FC4)
+    //
+    // Nothing is boxed or allocated per element. Destination Mats are only
+    // reallocated if their size or type differ, destination arrays only if too small.
+
+    public static Mat packed_to_Mat(int[] data, int count, int channels, Mat dst) {
+        Mat res = packedMat(count, channels, CvType.CV_32S, (data != null) ? data.length : 0, dst);
+        if (count > 0)
+            res.put(0, 0, data, count * channels);
+        return res;
+    }
+
+    public static Mat packed_to_Mat(float[] data, int count, int channels, Mat dst) {
+        Mat res = packedMat(count, channels, CvType.CV_32F, (data != null) ? data.length : 0, dst);
+        if (count > 0)
+            res.put(0, 0, data, count * channels);
+        return res;
+    }
+
+    public static Mat packed_to_Mat(double[] data, int count, int channels, Mat dst) {
+        Mat res = packedMat(count, channels, CvType.CV_64F, (data != null) ? data.length : 0, dst);
+        if (count > 0)
+            res.put(0, 0, data, count * channels);
+        return res;
+    }
+
+    /**
+     * Channels of all m.rows() elements, into dst if it is large enough,
+     * otherwise into a new array
+     */
+    public static int[] Mat_to_packed(Mat m, int[] dst) {
+        int length = packedLength(m, CvType.CV_32S);
+        int[] res = (dst != null && dst.length >= length) ? dst : new int[length];
+        if (length > 0)
+            m.get(0, 0, res, length);
+        return res;
+    }
+
+    public static float[] Mat_to_packed(Mat m, float[] dst) {
+        int length = packedLength(m, CvType.CV_32F);
+        float[] res = (dst != null && dst.length >= length) ? dst : new float[length];
+        if (length > 0)
+            m.get(0, 0, res, length);
+        return res;
+    }
+
+    public static double[] Mat_to_packed(Mat m, double[] dst) {
+        int length = packedLength(m, CvType.CV_64F);
+        double[] res = (dst != null && dst.length >= length) ? dst : new double[length];
+        if (length > 0)
+            m.get(0, 0, res, length);
+        return res;
+    }
+
+    /**
+     * Mat header over count elements of the given type in a direct buffer,
+     * starting at its position, in native byte order. Nothing is copied; the
+     * buffer must stay reachable while the Mat is in use.
+     */
+    public static Mat buffer_to_Mat(ByteBuffer data, int count, int type) {
+        if (data == null || !data.isDirect())
+            throw new IllegalArgumentException("A direct buffer is required");
+        if (count <= 0)
+            return new Mat();
+        long bytes = (long) count * CvType.ELEM_SIZE(type);
+        if (data.remaining() < bytes)
+            throw new IllegalArgumentException(
+                    "Buffer has " + data.remaining() + " bytes remaining, " + bytes + " needed");
+        return new Mat(count, 1, type, data.slice());
+    }
+
+    /**
+     * Copy m into a direct buffer at its position, in native byte order;
+     * returns the number of bytes written. The position is not advanced.
+     */
+    public static int Mat_to_buffer(Mat m, ByteBuffer dst) {
+        if (dst == null || !dst.isDirect())
+            throw new IllegalArgumentException("A direct buffer is required");
+        long bytes = m.total() * m.elemSize();
+        if (dst.remaining() < bytes)
+            throw new IllegalArgumentException(
+                    "Buffer has " + dst.remaining() + " bytes remaining, " + bytes + " needed\n" + m);
+        if (bytes == 0)
+            return 0;
+        // same size and type, so copyTo writes into the buffer instead of reallocating
+        Mat view = new Mat(m.rows(), m.cols(), m.type(), dst.slice());
+        try {
+            m.copyTo(view);
+        } finally {
+            view.release();
+        }
+        return (int) bytes;
+    }
+
+    private static Mat packedMat(int count, int channels, int depth, int length, Mat dst) {
+        if (count < 0 || (long) count * channels > length)
+            throw new IllegalArgumentException(
+                    "Data holds fewer than " + count + " elements of " + channels + " channels");
+        Mat res = (dst != null) ? dst : new Mat();
+        res.create(count, 1, CvType.makeType(depth, channels));
+        return res;
+    }
+
+    private static int packedLength(Mat m, int depth) {
+        if (m.empty())
+            return 0;
+        if (m.cols() != 1 || CvType.depth(m.type()) != depth)
+            throw new IllegalArgumentException(
+                    "Input Mat should have one column of depth " + CvType.typeToString(depth) + "\n" + m);
+        return m.rows() * m.channels();
+    }
 }
@@ -0,0 +1,139 @@
+package com.yourname.edgedetection;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round-trip tests for the edge map wire codec
+ */
+public class EdgeMapCodecTest {
+
+    private static final int EDGE = 0xFFFFFFFF;
+    private static final int BACKGROUND = 0xFF000000;
+
+    @Test
+    public void roundTripsKeyframesAndDeltas() {
+        // width not a multiple of 8 to cover the partial last byte
+        int width = 101;
+        int height = 37;
+        Random random = new Random(42);
+        EdgeMapCodec codec = new EdgeMapCodec(5);
+        EdgeMapCodec.Decoder decoder = new EdgeMapCodec.Decoder();
+
+        int[] frame = randomEdges(width, height, random, 0.1);
+        int keyframes = 0;
+        for (int sequence = 1; sequence <= 20; sequence++) {
+            mutate(frame, random, 50);
+            boolean keyframe = codec.encode(frame, width, height, sequence);
+            if (keyframe) {
+                keyframes++;
+            }
+            assertTrue(decoder.decode(codec.getOutput(), 0, codec.getOutputLength(),
+                keyframe, sequence, width, height));
+            assertDecoded(frame, width, height, decoder);
+        }
+        assertEquals(4, keyframes);
+    }
+
+    @Test
+    public void roundTripsRunsAcrossByteAndRowBoundaries() {
+        int width = 64;
+        int height = 4;
+        int[] frame = new int[width * height];
+        java.util.Arrays.fill(frame, BACKGROUND);
+        // full row, run ending at the row end, runs straddling bytes, single pixels
+        for (int x = 0; x < width; x++) {
+            frame[x] = EDGE;
+        }
+        for (int x = 60; x < width; x++) {
+            frame[width + x] = EDGE;
+        }
+        for (int x = 6; x < 18; x++) {
+            frame[2 * width + x] = EDGE;
+        }
+        frame[3 * width] = EDGE;
+        frame[3 * width + 8] = EDGE;
+        frame[3 * width + 9] = EDGE;
+        frame[3 * width + 63] = EDGE;
+
+        EdgeMapCodec codec = new EdgeMapCodec();
+        EdgeMapCodec.Decoder decoder = new EdgeMapCodec.Decoder();
+        assertTrue(codec.encode(frame, width, height, 1));
+        assertTrue(decoder.decode(codec.getOutput(), 0, codec.getOutputLength(), true, 1, width, height));
+        assertDecoded(frame, width, height, decoder);
+    }
+
+    @Test
+    public void staticSceneDeltaIsOneBytePerRow() {
+        int width = 640;
+        int height = 480;
+        int[] frame = randomEdges(width, height, new Random(7), 0.05);
+        EdgeMapCodec codec = new EdgeMapCodec();
+
+        codec.encode(frame, width, height, 1);
+        int keyframeLength = codec.getOutputLength();
+        assertFalse(codec.encode(frame, width, height, 2));
+        assertEquals(4 + height, codec.getOutputLength());
+        assertTrue(codec.getOutputLength() < keyframeLength);
+    }
+
+    @Test
+    public void deltaWithoutItsReferenceIsRejected() {
+        int width = 32;
+        int height = 8;
+        Random random = new Random(3);
+        int[] frame = randomEdges(width, height, random, 0.2);
+        EdgeMapCodec codec = new EdgeMapCodec();
+        EdgeMapCodec.Decoder decoder = new EdgeMapCodec.Decoder();
+
+        codec.encode(frame, width, height, 1);
+        // frame 1 never reaches the decoder
+        mutate(frame, random, 10);
+        boolean keyframe = codec.encode(frame, width, height, 2);
+        assertFalse(keyframe);
+        assertFalse(decoder.decode(codec.getOutput(), 0, codec.getOutputLength(), false, 2, width, height));
+
+        codec.requestKeyframe();
+        mutate(frame, random, 10);
+        assertTrue(codec.encode(frame, width, height, 3));
+        assertTrue(decoder.decode(codec.getOutput(), 0, codec.getOutputLength(), true, 3, width, height));
+        assertDecoded(frame, width, height, decoder);
+    }
+
+    @Test
+    public void resolutionChangeForcesKeyframe() {
+        Random random = new Random(11);
+        EdgeMapCodec codec = new EdgeMapCodec();
+        codec.encode(randomEdges(16, 16, random, 0.1), 16, 16, 1);
+        assertTrue(codec.encode(randomEdges(24, 16, random, 0.1), 24, 16, 2));
+    }
+
+    private static int[] randomEdges(int width, int height, Random random, double density) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextDouble() < density ? EDGE : BACKGROUND;
+        }
+        return pixels;
+    }
+
+    private static void mutate(int[] pixels, Random random, int flips) {
+        for (int i = 0; i < flips; i++) {
+            int index = random.nextInt(pixels.length);
+            pixels[index] = pixels[index] == EDGE ? BACKGROUND : EDGE;
+        }
+    }
+
+    private static void assertDecoded(int[] expected, int width, int height, EdgeMapCodec.Decoder decoder) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals("pixel " + x + "," + y,
+                    expected[y * width + x] == EDGE, decoder.isSet(x, y));
+            }
+        }
+    }
+}
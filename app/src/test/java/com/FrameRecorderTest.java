@@ -0,0 +1,137 @@
+package com.yourname.edgedetection;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Recording to segment files and reading back with seek
+ */
+public class FrameRecorderTest {
+
+    private static final int SEGMENT_BYTES = 8 * 1024;
+    private static final int KEYFRAME_INTERVAL = 5;
+    private static final long FRAME_INTERVAL_US = 100_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsAcrossSegmentsAndSeeksToKeyframes() throws Exception {
+        File dir = folder.newFolder("recording");
+        FrameRecorder recorder = new FrameRecorder(dir, SEGMENT_BYTES, 60_000, 100);
+        recorder.start();
+        for (int sequence = 1; sequence <= 60; sequence++) {
+            offerAndWait(recorder, frame(sequence));
+            if (sequence % 10 == 0) {
+                recorder.recordStats("{\"type\":\"stats\"}");
+            }
+        }
+        recorder.stop();
+        assertEquals(0, recorder.getDroppedFrames());
+
+        RecordingReader reader = new RecordingReader(dir);
+        assertTrue("expected rotation", reader.getSegmentCount() > 1);
+        assertEquals(timestamp(1), reader.getStartTimestampUs());
+        assertEquals(timestamp(60), reader.getEndTimestampUs());
+
+        // everything comes back in order, stats entries skipped
+        reader.seek(0);
+        for (int sequence = 1; sequence <= 60; sequence++) {
+            ByteBuffer message = reader.nextFrame();
+            assertNotNull("missing frame " + sequence, message);
+            assertFrame(sequence, message);
+        }
+        assertNull(reader.nextFrame());
+
+        // seeking lands on an indexed keyframe at or before the target
+        reader.seek(timestamp(38));
+        ByteBuffer message = reader.nextFrame();
+        int sequence = message.getInt(message.position() + FrameProtocol.OFFSET_SEQUENCE);
+        assertTrue(sequence <= 38);
+        // index entries are at most a second apart
+        assertTrue(38 - sequence <= 1_000_000 / FRAME_INTERVAL_US);
+        assertTrue(isKeyframe(message));
+    }
+
+    @Test
+    public void deletesOldestSegmentsBeyondLimit() throws Exception {
+        File dir = folder.newFolder("recording");
+        FrameRecorder recorder = new FrameRecorder(dir, SEGMENT_BYTES, 60_000, 2);
+        recorder.start();
+        for (int sequence = 1; sequence <= 100; sequence++) {
+            offerAndWait(recorder, frame(sequence));
+        }
+        recorder.stop();
+
+        assertEquals(2, FrameRecorder.listSegments(dir).length);
+        RecordingReader reader = new RecordingReader(dir);
+        // the remaining recording still starts at a keyframe
+        reader.seek(0);
+        assertTrue(isKeyframe(reader.nextFrame()));
+        assertEquals(timestamp(100), reader.getEndTimestampUs());
+    }
+
+    @Test
+    public void refusesDeltasUntilKeyframe() throws Exception {
+        FrameRecorder recorder = new FrameRecorder(folder.newFolder("recording"));
+        recorder.start();
+        assertTrue(recorder.needsKeyframe());
+        assertFalse(recorder.offer(frame(2)));
+        assertTrue(recorder.offer(frame(1)));
+        assertFalse(recorder.needsKeyframe());
+        recorder.stop();
+    }
+
+    private static void offerAndWait(FrameRecorder recorder, SharedBinaryFrame frame) throws InterruptedException {
+        long before = recorder.getRecordedFrames();
+        assertTrue(recorder.offer(frame));
+        for (int i = 0; i < 500 && recorder.getRecordedFrames() == before; i++) {
+            Thread.sleep(2);
+        }
+        assertEquals(before + 1, recorder.getRecordedFrames());
+    }
+
+    private static long timestamp(int sequence) {
+        return 5_000_000L + sequence * FRAME_INTERVAL_US;
+    }
+
+    /**
+     * Edge codec frame: every KEYFRAME_INTERVAL-th from 1 is a keyframe, the rest deltas
+     */
+    private static SharedBinaryFrame frame(int sequence) {
+        boolean keyframe = (sequence - 1) % KEYFRAME_INTERVAL == 0;
+        int length = keyframe ? 900 : 200;
+        ByteBuffer wire = SharedBinaryFrame.allocate(FrameProtocol.HEADER_SIZE + length);
+        FrameProtocol.writeHeader(wire, FrameProtocol.TYPE_FRAME, FrameProtocol.CODEC_EDGE,
+            keyframe ? FrameProtocol.FLAG_KEYFRAME : 0, sequence, timestamp(sequence),
+            timestamp(sequence) + 1000, 320, 240);
+        if (!keyframe) {
+            wire.putInt(sequence - 1);
+            length -= 4;
+        }
+        for (int i = 0; i < length; i++) {
+            wire.put((byte) (sequence + i));
+        }
+        return SharedBinaryFrame.seal(wire, sequence,
+            keyframe ? SharedBinaryFrame.NO_REFERENCE : sequence - 1);
+    }
+
+    private static void assertFrame(int sequence, ByteBuffer message) {
+        ByteBuffer expected = frame(sequence).payloadBytes();
+        assertEquals("frame " + sequence, expected, message);
+    }
+
+    private static boolean isKeyframe(ByteBuffer message) {
+        return (message.get(message.position() + FrameProtocol.OFFSET_FLAGS) & FrameProtocol.FLAG_KEYFRAME) != 0;
+    }
+}
@@ -0,0 +1,180 @@
+package com.yourname.edgedetection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MJPEG endpoint against a loopback HTTP client
+ */
+public class MjpegHttpServerTest {
+
+    private FakeRegistry registry;
+    private MjpegHttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        registry = new FakeRegistry();
+        server = new MjpegHttpServer(registry, 0);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void streamsSharedJpegFrames() throws Exception {
+        HttpURLConnection connection = open("/stream.mjpg?maxWidth=320&maxHeight=240&maxFps=10");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("multipart/x-mixed-replace; boundary=" + MjpegHttpServer.BOUNDARY,
+            connection.getContentType());
+
+        FrameSubscriber subscriber = registry.added.poll(5, TimeUnit.SECONDS);
+        assertNotNull(subscriber);
+        assertEquals(new OutputProfile(320, 240, 10, OutputProfile.CODEC_JPEG), registry.profile);
+
+        InputStream in = new BufferedInputStream(connection.getInputStream());
+        byte[] first = jpegBytes(1, 100);
+        subscriber.offer(frame(1, first));
+        assertArrayEquals(first, readPart(in));
+
+        byte[] second = jpegBytes(2, 70_000);
+        subscriber.offer(frame(2, second));
+        assertArrayEquals(second, readPart(in));
+
+        // a closed consumer is noticed on the next write
+        connection.disconnect();
+        FrameSubscriber removed = null;
+        for (int i = 0; i < 50 && removed == null; i++) {
+            subscriber.offer(frame(3 + i, second));
+            removed = registry.removed.poll(100, TimeUnit.MILLISECONDS);
+        }
+        assertSame(subscriber, removed);
+    }
+
+    @Test
+    public void unknownPathIsNotFound() throws Exception {
+        HttpURLConnection connection = open("/other");
+        assertEquals(404, connection.getResponseCode());
+        assertTrue(registry.added.isEmpty());
+    }
+
+    @Test
+    public void slowClientKeepsOnlyNewestFrame() throws Exception {
+        MjpegHttpServer.Client client = new MjpegHttpServer.Client(SocketChannel.open());
+        SharedBinaryFrame first = frame(1, jpegBytes(1, 10));
+        SharedBinaryFrame second = frame(2, jpegBytes(2, 10));
+        SharedBinaryFrame third = frame(3, jpegBytes(3, 10));
+
+        assertTrue(client.offer(first));
+        // nothing written yet, so later frames replace the waiting one
+        assertFalse(client.offer(second));
+        assertFalse(client.offer(third));
+        assertEquals(2, client.getDroppedFrames());
+        assertSame(third, client.take());
+
+        // while a frame is being written, new frames wait
+        assertFalse(client.offer(first));
+        client.close();
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + server.getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setReadTimeout(5000);
+        return connection;
+    }
+
+    /**
+     * Read one multipart part and return its body
+     */
+    private static byte[] readPart(InputStream in) throws IOException {
+        String line = readLine(in);
+        if (line.isEmpty()) {
+            // CRLF closing the previous part
+            line = readLine(in);
+        }
+        assertEquals("--" + MjpegHttpServer.BOUNDARY, line);
+        int length = -1;
+        while (!(line = readLine(in)).isEmpty()) {
+            if (line.startsWith("Content-Length:")) {
+                length = Integer.parseInt(line.substring("Content-Length:".length()).trim());
+            }
+        }
+        assertTrue(length >= 0);
+        byte[] body = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(body, read, length - read);
+            assertTrue("stream ended", n > 0);
+            read += n;
+        }
+        return body;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            assertTrue("stream ended", b >= 0);
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString("ISO-8859-1");
+    }
+
+    private static byte[] jpegBytes(int seed, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (seed * 31 + i);
+        }
+        return bytes;
+    }
+
+    private static SharedBinaryFrame frame(int sequence, byte[] jpeg) {
+        ByteBuffer wire = SharedBinaryFrame.allocate(FrameProtocol.HEADER_SIZE + jpeg.length);
+        FrameProtocol.writeHeader(wire, FrameProtocol.TYPE_FRAME, FrameProtocol.CODEC_JPEG,
+            FrameProtocol.FLAG_KEYFRAME, sequence, sequence * 1000L, sequence * 1000L + 500, 320, 240);
+        wire.put(jpeg);
+        return SharedBinaryFrame.seal(wire, sequence, SharedBinaryFrame.NO_REFERENCE);
+    }
+
+    private static class FakeRegistry implements SubscriberRegistry {
+        final BlockingQueue<FrameSubscriber> added = new LinkedBlockingQueue<>();
+        final BlockingQueue<FrameSubscriber> removed = new LinkedBlockingQueue<>();
+        volatile OutputProfile profile;
+
+        @Override
+        public void addSubscriber(OutputProfile profile, FrameSubscriber subscriber) {
+            this.profile = profile;
+            added.add(subscriber);
+        }
+
+        @Override
+        public void removeSubscriber(FrameSubscriber subscriber) {
+            removed.add(subscriber);
+        }
+    }
+}
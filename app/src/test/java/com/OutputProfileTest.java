@@ -0,0 +1,30 @@
+package com.yourname.edgedetection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Clamping viewer feedback to the subscribed profile
+ */
+public class OutputProfileTest {
+
+    @Test
+    public void feedbackCanLowerButNotExceedTheSubscription() {
+        OutputProfile subscribed = new OutputProfile(640, 640, 30, OutputProfile.CODEC_JPEG);
+
+        // lower limits are taken, the codec is the viewer's choice
+        assertEquals(new OutputProfile(320, 320, 15, OutputProfile.CODEC_EDGE),
+            new OutputProfile(320, 320, 15, OutputProfile.CODEC_EDGE).within(subscribed));
+        // asking for more, or for unlimited, stops at the subscription
+        assertEquals(new OutputProfile(640, 640, 30, OutputProfile.CODEC_JPEG),
+            new OutputProfile(1280, 0, 60, OutputProfile.CODEC_JPEG).within(subscribed));
+    }
+
+    @Test
+    public void unlimitedSubscriptionKeepsFeedbackLimits() {
+        assertEquals(new OutputProfile(480, 0, 10, OutputProfile.CODEC_EDGE),
+            new OutputProfile(480, 0, 10, OutputProfile.CODEC_EDGE).within(OutputProfile.DEFAULT));
+        assertEquals(OutputProfile.DEFAULT, OutputProfile.DEFAULT.within(OutputProfile.DEFAULT));
+    }
+}
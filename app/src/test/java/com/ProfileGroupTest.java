@@ -0,0 +1,121 @@
+package com.yourname.edgedetection;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Edge map distribution to members of a group that are in sync and lagging
+ */
+public class ProfileGroupTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 16;
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void laggingMemberDoesNotTurnTheGroupIntoKeyframes() {
+        ProfileGroup group = new ProfileGroup(OutputProfile.DEFAULT, new KeyframeCache(1 << 20),
+            new CaptureClock(), new StatsAggregator());
+        FakeSubscriber fast = new FakeSubscriber();
+        FakeSubscriber slow = new FakeSubscriber();
+        group.add(fast);
+        group.add(slow);
+
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0xFF000000);
+        long now = 0;
+        int sequence = 0;
+
+        // both start at the group's first keyframe
+        send(group, pixels, ++sequence, now);
+        assertEquals(1, fast.keyframes);
+        assertEquals(1, slow.keyframes);
+
+        // the slow viewer skips a frame and can't take deltas any more
+        slow.stalled = true;
+        send(group, pixels, ++sequence, now += 33 * MS);
+        assertTrue(slow.needsKeyframe());
+
+        // it gets a keyframe of its own, the fast one stays on deltas
+        slow.stalled = false;
+        send(group, pixels, ++sequence, now += 33 * MS);
+        assertEquals(2, slow.keyframes);
+        assertFalse(slow.needsKeyframe());
+        send(group, pixels, ++sequence, now += 33 * MS);
+        assertEquals(1, slow.deltas);
+
+        // falling behind again right away waits for the rate limit
+        slow.stalled = true;
+        send(group, pixels, ++sequence, now += 33 * MS);
+        slow.stalled = false;
+        send(group, pixels, ++sequence, now += 33 * MS);
+        assertEquals(2, slow.keyframes);
+        assertTrue(slow.needsKeyframe());
+        now += ProfileGroup.RECOVERY_INTERVAL_NANOS;
+        send(group, pixels, ++sequence, now);
+        assertEquals(3, slow.keyframes);
+
+        assertEquals(1, fast.keyframes);
+        assertEquals(sequence - 1, fast.deltas);
+        assertEquals(sequence, fast.decoded);
+    }
+
+    private static void send(ProfileGroup group, int[] pixels, int sequence, long nowNanos) {
+        // a moving edge so every delta carries a change
+        pixels[(sequence - 1) % pixels.length] = 0xFFFFFFFF;
+        SharedBinaryFrame frame = group.encodeEdgeMap(pixels, WIDTH, HEIGHT, sequence, 0, nowNanos);
+        group.offer(frame);
+    }
+
+    /**
+     * Decodes what it is sent; while stalled it skips frames like a backed up session
+     */
+    private static class FakeSubscriber implements FrameSubscriber {
+        final EdgeMapCodec.Decoder decoder = new EdgeMapCodec.Decoder();
+        boolean stalled = false;
+        boolean needsKeyframe = true;
+        int keyframes = 0;
+        int deltas = 0;
+        int decoded = 0;
+
+        @Override
+        public boolean offer(SharedBinaryFrame frame) {
+            if (stalled) {
+                needsKeyframe = true;
+                return false;
+            }
+            ByteBuffer payload = frame.payloadBytes();
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            if (!decoder.decode(bytes, FrameProtocol.HEADER_SIZE, bytes.length - FrameProtocol.HEADER_SIZE,
+                    frame.isKeyframe(), frame.getSequence(), WIDTH, HEIGHT)) {
+                needsKeyframe = true;
+                return false;
+            }
+            needsKeyframe = false;
+            decoded++;
+            if (frame.isKeyframe()) {
+                keyframes++;
+            } else {
+                deltas++;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean offerCachedKeyframe(SharedBinaryFrame frame) {
+            return false;
+        }
+
+        @Override
+        public boolean needsKeyframe() {
+            return needsKeyframe;
+        }
+    }
+}
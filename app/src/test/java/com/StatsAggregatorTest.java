@@ -0,0 +1,73 @@
+package com.yourname.edgedetection;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Interval output of the stats aggregator
+ */
+public class StatsAggregatorTest {
+
+    @Test
+    public void summarisesStagesPerInterval() throws Exception {
+        StatsAggregator stats = new StatsAggregator();
+        for (int i = 1; i <= 100; i++) {
+            stats.recordStage(StatsAggregator.STAGE_PROCESS, i * 1_000_000L);
+        }
+        stats.recordFrame(640, 480);
+        stats.recordEncoded(1000);
+        stats.recordEncoded(3000);
+
+        JSONObject interval = interval(stats);
+        JSONArray process = interval.getJSONObject("stages").getJSONArray("process");
+        assertEquals(1.0, process.getDouble(0), 1e-9);
+        assertEquals(50.5, process.getDouble(1), 1e-9);
+        assertEquals(95.0, process.getDouble(2), 1e-9);
+        assertEquals(100.0, process.getDouble(3), 1e-9);
+        assertEquals(100, process.getInt(4));
+        assertEquals(0, interval.getJSONObject("stages").getJSONArray("encode").getInt(4));
+        assertEquals(2000, interval.getLong("bytesPerFrame"));
+        assertEquals(1, interval.getInt("frames"));
+        assertEquals(640, interval.getInt("width"));
+
+        // the next interval starts empty, totals carry on
+        stats.recordFrame(640, 480);
+        JSONObject next = interval(stats);
+        assertEquals(0, next.getJSONObject("stages").getJSONArray("process").getInt(4));
+        assertEquals(0, next.getLong("bytesPerFrame"));
+        assertEquals(2, next.getLong("frameCount"));
+    }
+
+    @Test
+    public void keepsExactExtremesPastSampleCapacity() throws Exception {
+        StatsAggregator stats = new StatsAggregator();
+        for (int i = 0; i < 1000; i++) {
+            stats.recordStage(StatsAggregator.STAGE_SEND, 1_000_000L);
+        }
+        stats.recordStage(StatsAggregator.STAGE_SEND, 250_000_000L);
+
+        JSONArray send = interval(stats).getJSONObject("stages").getJSONArray("send");
+        assertEquals(250.0, send.getDouble(3), 1e-9);
+        assertEquals(1001, send.getInt(4));
+    }
+
+    @Test
+    public void formatsFixedPoint() {
+        StringBuilder out = new StringBuilder();
+        StatsAggregator.appendFixed(out, 3.14159);
+        out.append(' ');
+        StatsAggregator.appendFixed(out, 0.05);
+        out.append(' ');
+        StatsAggregator.appendFixed(out, -2.5);
+        assertEquals("3.14 0.05 -2.50", out.toString());
+    }
+
+    private static JSONObject interval(StatsAggregator stats) throws Exception {
+        StringBuilder out = new StringBuilder("{");
+        stats.appendInterval(out, System.nanoTime());
+        return new JSONObject(out.append('}').toString());
+    }
+}
@@ -1,11 +1,14 @@
 package gl;
 
+import android.graphics.SurfaceTexture;
+import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.util.Log;
 
@@ -27,15 +30,66 @@ public class GLRenderer implements GLSurfaceView.Renderer {
             1.0f, 0.0f
     };
 
-    private FloatBuffer vertexBuffer, texBuffer;
+    // SurfaceTexture expects GL texture space (origin bottom-left)
+    private final float[] OES_TEX_COORDS = {
+            0.0f, 1.0f,
+            0.0f, 0.0f,
+            1.0f, 0.0f,
+            1.0f, 1.0f
+    };
+
+    private FloatBuffer vertexBuffer, texBuffer, oesTexBuffer;
     private int program;
     private int textureId = -1;
 
+    // camera preview sampled directly as an external texture (raw mode, no CPU copies)
+    private int oesProgram;
+    private int oesTextureId = -1;
+    private SurfaceTexture cameraTexture;
+    private final float[] cameraTexMatrix = new float[16];
+    private volatile boolean cameraFrameAvailable = false;
+    private volatile boolean externalSourceEnabled = false;
+    private CameraTextureListener cameraTextureListener;
+    private volatile int cameraBufferWidth = 0, cameraBufferHeight = 0;
+
+    // GPU compute backend: edges computed from the camera texture in shaders
+    private GpuEdgePipeline edgePipeline;
+    private volatile boolean gpuEdgeEnabled = false;
+    private EdgeFrameListener edgeFrameListener;
+
     private int viewWidth = 0, viewHeight = 0;
     private int frameWidth = 0, frameHeight = 0;
 
     // volatile frame data written from UI thread and consumed in GL thread
     private volatile byte[] latestFrameRGBA = null;
+    // submit time of a frame not drawn yet, 0 once drawn
+    private final AtomicLong latestFrameSubmitNanos = new AtomicLong();
+    private FrameDrawnListener frameDrawnListener;
+
+    public interface CameraTextureListener {
+        // called on the GL thread once the camera SurfaceTexture exists
+        void onCameraTextureCreated(SurfaceTexture surfaceTexture);
+        // called whenever the camera queues a new preview frame
+        void onCameraFrameAvailable();
+    }
+
+    public interface FrameDrawnListener {
+        // called on the GL thread once a frame from updateFrame has been drawn,
+        // with the submit time passed along with it
+        void onFrameDrawn(long submitTimeNanos);
+    }
+
+    public interface EdgeFrameListener {
+        // called on the GL thread for every camera frame the pipeline processed,
+        // with the CPU time its passes took
+        void onEdgeMapProcessed(long processNanos);
+        // whether the next GPU edge map should be read back (e.g. for streaming)
+        boolean wantsEdgeFrame();
+        // called on the GL thread; rgba holds top-down rows and is reused afterwards,
+        // timestampNs is the camera timestamp of the source frame, readNanos the
+        // time the readback took
+        void onEdgeFrame(ByteBuffer rgba, int width, int height, long timestampNs, long readNanos);
+    }
 
     public GLRenderer() {
         vertexBuffer = ByteBuffer.allocateDirect(VERTEX_COORDS.length * 4)
@@ -45,13 +99,60 @@ public class GLRenderer implements GLSurfaceView.Renderer {
         texBuffer = ByteBuffer.allocateDirect(TEX_COORDS.length * 4)
                 .order(ByteOrder.nativeOrder()).asFloatBuffer();
         texBuffer.put(TEX_COORDS).position(0);
+
+        oesTexBuffer = ByteBuffer.allocateDirect(OES_TEX_COORDS.length * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        oesTexBuffer.put(OES_TEX_COORDS).position(0);
     }
 
-    public void updateFrame(byte[] rgbaBytes, int width, int height) {
+    public void setCameraTextureListener(CameraTextureListener listener) {
+        this.cameraTextureListener = listener;
+    }
+
+    /**
+     * Draw the camera SurfaceTexture instead of the uploaded RGBA frame
+     */
+    public void setExternalSourceEnabled(boolean enabled) {
+        this.externalSourceEnabled = enabled;
+    }
+
+    public boolean isExternalSourceEnabled() {
+        return externalSourceEnabled;
+    }
+
+    /**
+     * Size of the buffers the camera produces into the SurfaceTexture
+     */
+    public void setCameraBufferSize(int width, int height) {
+        this.cameraBufferWidth = width;
+        this.cameraBufferHeight = height;
+    }
+
+    /**
+     * Compute edges on the GPU from the camera texture instead of drawing uploaded frames
+     */
+    public void setGpuEdgeEnabled(boolean enabled) {
+        this.gpuEdgeEnabled = enabled;
+    }
+
+    public boolean isGpuEdgeEnabled() {
+        return gpuEdgeEnabled;
+    }
+
+    public void setEdgeFrameListener(EdgeFrameListener listener) {
+        this.edgeFrameListener = listener;
+    }
+
+    public void setFrameDrawnListener(FrameDrawnListener listener) {
+        this.frameDrawnListener = listener;
+    }
+
+    public void updateFrame(byte[] rgbaBytes, int width, int height, long submitTimeNanos) {
         // called from UI thread
         this.latestFrameRGBA = rgbaBytes;
         this.frameWidth = width;
         this.frameHeight = height;
+        this.latestFrameSubmitNanos.set(submitTimeNanos);
     }
 
     @Override
@@ -60,6 +161,30 @@ public class GLRenderer implements GLSurfaceView.Renderer {
         GLES20.glClearColor(0f, 0f, 0f, 1f);
         program = createProgram(VERTEX_SHADER, FRAGMENT_SHADER);
         textureId = createTexture();
+
+        oesProgram = createProgram(OES_VERTEX_SHADER, OES_FRAGMENT_SHADER);
+        oesTextureId = createExternalTexture();
+
+        if (edgePipeline == null) {
+            edgePipeline = new GpuEdgePipeline();
+        }
+        edgePipeline.init();
+        if (cameraTexture != null) {
+            // Only called for a new context (a preserved one skips this), so the
+            // previous context is gone and its texture with it; the listener has
+            // the camera produce into the new one
+            cameraTexture.release();
+        }
+        cameraTexture = new SurfaceTexture(oesTextureId);
+        cameraTexture.setOnFrameAvailableListener(st -> {
+            cameraFrameAvailable = true;
+            if (cameraTextureListener != null) {
+                cameraTextureListener.onCameraFrameAvailable();
+            }
+        });
+        if (cameraTextureListener != null) {
+            cameraTextureListener.onCameraTextureCreated(cameraTexture);
+        }
     }
 
     @Override
@@ -74,6 +199,25 @@ public class GLRenderer implements GLSurfaceView.Renderer {
     public void onDrawFrame(javax.microedition.khronos.opengles.GL10 gl10) {
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
 
+        // Always latch the newest camera buffer so the producer never stalls
+        boolean newCameraFrame = false;
+        if (cameraFrameAvailable && cameraTexture != null) {
+            newCameraFrame = true;
+            cameraFrameAvailable = false;
+            cameraTexture.updateTexImage();
+            cameraTexture.getTransformMatrix(cameraTexMatrix);
+        }
+
+        if (externalSourceEnabled) {
+            drawCameraTexture();
+            return;
+        }
+
+        if (gpuEdgeEnabled) {
+            drawGpuEdges(newCameraFrame);
+            return;
+        }
+
         int positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
         int texCoordHandle = GLES20.glGetAttribLocation(program, "aTexCoord");
         int textureHandle = GLES20.glGetUniformLocation(program, "uTexture");
@@ -89,6 +233,8 @@ public class GLRenderer implements GLSurfaceView.Renderer {
         GLES20.glVertexAttribPointer(texCoordHandle, 2, GLES20.GL_FLOAT, false,
                 2 * 4, texBuffer);
 
+        long submitTimeNanos = latestFrameSubmitNanos.getAndSet(0);
+
         // upload frame if available
         if (latestFrameRGBA != null && frameWidth > 0 && frameHeight > 0) {
             ByteBuffer bb = ByteBuffer.allocateDirect(latestFrameRGBA.length);
@@ -111,6 +257,123 @@ public class GLRenderer implements GLSurfaceView.Renderer {
 
         GLES20.glDisableVertexAttribArray(positionHandle);
         GLES20.glDisableVertexAttribArray(texCoordHandle);
+
+        if (submitTimeNanos != 0 && frameDrawnListener != null) {
+            frameDrawnListener.onFrameDrawn(submitTimeNanos);
+        }
+    }
+
+    private void drawCameraTexture() {
+        int positionHandle = GLES20.glGetAttribLocation(oesProgram, "aPosition");
+        int texCoordHandle = GLES20.glGetAttribLocation(oesProgram, "aTexCoord");
+        int texMatrixHandle = GLES20.glGetUniformLocation(oesProgram, "uTexMatrix");
+        int textureHandle = GLES20.glGetUniformLocation(oesProgram, "uTexture");
+
+        GLES20.glUseProgram(oesProgram);
+
+        GLES20.glEnableVertexAttribArray(positionHandle);
+        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false,
+                3 * 4, vertexBuffer);
+
+        GLES20.glEnableVertexAttribArray(texCoordHandle);
+        GLES20.glVertexAttribPointer(texCoordHandle, 2, GLES20.GL_FLOAT, false,
+                2 * 4, oesTexBuffer);
+
+        GLES20.glUniformMatrix4fv(texMatrixHandle, 1, false, cameraTexMatrix, 0);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, oesTextureId);
+        GLES20.glUniform1i(textureHandle, 0);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_FAN, 0, 4);
+
+        GLES20.glDisableVertexAttribArray(positionHandle);
+        GLES20.glDisableVertexAttribArray(texCoordHandle);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 0);
+    }
+
+    private void drawGpuEdges(boolean newCameraFrame) {
+        int width = cameraBufferWidth;
+        int height = cameraBufferHeight;
+        if (width == 0 || height == 0) {
+            return;
+        }
+
+        edgePipeline.resize(width, height);
+        long processStart = System.nanoTime();
+        int edgeTexture = edgePipeline.process(oesTextureId, true, cameraTexMatrix);
+        long processNanos = System.nanoTime() - processStart;
+
+        // redraws without a new camera frame are neither counted nor streamed
+        EdgeFrameListener listener = edgeFrameListener;
+        if (listener != null && newCameraFrame) {
+            listener.onEdgeMapProcessed(processNanos);
+            if (listener.wantsEdgeFrame()) {
+                // readPixels waits for the passes to finish on the GPU
+                long readStart = System.nanoTime();
+                ByteBuffer rgba = edgePipeline.readPixels();
+                listener.onEdgeFrame(rgba, width, height, cameraTexture.getTimestamp(),
+                        System.nanoTime() - readStart);
+            }
+        }
+
+        // back to the window surface
+        GLES20.glViewport(0, 0, viewWidth, viewHeight);
+        drawTexture(edgeTexture);
+    }
+
+    private void drawTexture(int texture) {
+        int positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
+        int texCoordHandle = GLES20.glGetAttribLocation(program, "aTexCoord");
+        int textureHandle = GLES20.glGetUniformLocation(program, "uTexture");
+
+        GLES20.glUseProgram(program);
+
+        GLES20.glEnableVertexAttribArray(positionHandle);
+        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false,
+                3 * 4, vertexBuffer);
+
+        GLES20.glEnableVertexAttribArray(texCoordHandle);
+        GLES20.glVertexAttribPointer(texCoordHandle, 2, GLES20.GL_FLOAT, false,
+                2 * 4, texBuffer);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        GLES20.glUniform1i(textureHandle, 0);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_FAN, 0, 4);
+
+        GLES20.glDisableVertexAttribArray(positionHandle);
+        GLES20.glDisableVertexAttribArray(texCoordHandle);
+    }
+
+    /**
+     * Release the camera SurfaceTexture
+     */
+    public void release() {
+        if (cameraTexture != null) {
+            cameraTexture.release();
+            cameraTexture = null;
+        }
+    }
+
+    private int createExternalTexture() {
+        int[] tex = new int[1];
+        GLES20.glGenTextures(1, tex, 0);
+        int textureId = tex[0];
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+
+        // external textures only support linear/nearest filtering and clamp-to-edge
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
+                GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
+                GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
+                GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
+                GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+        return textureId;
     }
 
     private int createTexture() {
@@ -131,7 +394,7 @@ public class GLRenderer implements GLSurfaceView.Renderer {
         return textureId;
     }
 
-    private int loadShader(int type, String shaderCode) {
+    static int loadShader(int type, String shaderCode) {
         int shader = GLES20.glCreateShader(type);
         GLES20.glShaderSource(shader, shaderCode);
         GLES20.glCompileShader(shader);
@@ -146,7 +409,7 @@ public class GLRenderer implements GLSurfaceView.Renderer {
         return shader;
     }
 
-    private int createProgram(String vs, String fs) {
+    static int createProgram(String vs, String fs) {
         int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vs);
         int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fs);
 
@@ -183,4 +446,23 @@ public class GLRenderer implements GLSurfaceView.Renderer {
             "  vec4 color = texture2D(uTexture, vTexCoord);\n" +
             "  gl_FragColor = color;\n" +
             "}\n";
+
+    private static final String OES_VERTEX_SHADER =
+            "attribute vec4 aPosition;\n" +
+            "attribute vec4 aTexCoord;\n" +
+            "uniform mat4 uTexMatrix;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "void main() {\n" +
+            "  gl_Position = aPosition;\n" +
+            "  vTexCoord = (uTexMatrix * aTexCoord).xy;\n" +
+            "}\n";
+
+    private static final String OES_FRAGMENT_SHADER =
+            "#extension GL_OES_EGL_image_external : require\n" +
+            "precision mediump float;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "uniform samplerExternalOES uTexture;\n" +
+            "void main() {\n" +
+            "  gl_FragColor = texture2D(uTexture, vTexCoord);\n" +
+            "}\n";
 }
@@ -0,0 +1,361 @@
+package gl;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * GPU edge detector mirroring EdgeProcessor: separable 5-tap Gaussian blur,
+ * Sobel gradient and Canny-style non-maximum suppression with hysteresis
+ * thresholds. Every pass renders into its own framebuffer texture.
+ * All methods must be called on the GL thread.
+ */
+public class GpuEdgePipeline {
+    private static final String TAG = "GpuEdgePipeline";
+
+    private static final int PASS_BLUR_H = 0;
+    private static final int PASS_BLUR_V = 1;
+    private static final int PASS_SOBEL = 2;
+    private static final int PASS_THRESHOLD = 3;
+    private static final int PASS_COUNT = 4;
+
+    // Full-screen quad in GL texture space (origin bottom-left)
+    private static final float[] VERTEX_COORDS = {
+            -1f,  1f, 0.0f,
+            -1f, -1f, 0.0f,
+             1f, -1f, 0.0f,
+             1f,  1f, 0.0f
+    };
+
+    private static final float[] TEX_COORDS = {
+            0.0f, 1.0f,
+            0.0f, 0.0f,
+            1.0f, 0.0f,
+            1.0f, 1.0f
+    };
+
+    private final FloatBuffer vertexBuffer, texBuffer;
+    private final float[] identityMatrix = new float[16];
+    // Final pass flips rows so readback comes out top-down like a Bitmap
+    private final float[] flipMatrix = new float[16];
+
+    private int blurExternalProgram, blur2DProgram, blurProgram;
+    private int sobelProgram, thresholdProgram;
+
+    private final int[] framebuffers = new int[PASS_COUNT];
+    private final int[] textures = new int[PASS_COUNT];
+    private int width = 0, height = 0;
+
+    private float lowThreshold = 50f;
+    private float highThreshold = 150f;
+
+    private ByteBuffer readbackBuffer;
+
+    public GpuEdgePipeline() {
+        vertexBuffer = ByteBuffer.allocateDirect(VERTEX_COORDS.length * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        vertexBuffer.put(VERTEX_COORDS).position(0);
+
+        texBuffer = ByteBuffer.allocateDirect(TEX_COORDS.length * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        texBuffer.put(TEX_COORDS).position(0);
+
+        Matrix.setIdentityM(identityMatrix, 0);
+        Matrix.setIdentityM(flipMatrix, 0);
+        flipMatrix[5] = -1f;
+        flipMatrix[13] = 1f;
+    }
+
+    /**
+     * Compile the pass programs. Call from onSurfaceCreated.
+     */
+    public void init() {
+        blurExternalProgram = GLRenderer.createProgram(VERTEX_SHADER,
+                "#extension GL_OES_EGL_image_external : require\n" +
+                PRECISION + "uniform samplerExternalOES uTexture;\n" + LUMA_BLUR_SHADER);
+        blur2DProgram = GLRenderer.createProgram(VERTEX_SHADER,
+                PRECISION + "uniform sampler2D uTexture;\n" + LUMA_BLUR_SHADER);
+        blurProgram = GLRenderer.createProgram(VERTEX_SHADER, BLUR_SHADER);
+        sobelProgram = GLRenderer.createProgram(VERTEX_SHADER, SOBEL_SHADER);
+        thresholdProgram = GLRenderer.createProgram(VERTEX_SHADER, THRESHOLD_SHADER);
+        // textures from a previous context are gone
+        width = 0;
+        height = 0;
+    }
+
+    /**
+     * Set hysteresis thresholds in 8-bit gradient units, same scale as cv::Canny
+     */
+    public void setThresholds(float low, float high) {
+        this.lowThreshold = low;
+        this.highThreshold = high;
+    }
+
+    /**
+     * (Re)allocate the pass framebuffers for the given frame size
+     */
+    public void resize(int newWidth, int newHeight) {
+        if (newWidth == width && newHeight == height) {
+            return;
+        }
+        deleteFramebuffers();
+        width = newWidth;
+        height = newHeight;
+
+        GLES20.glGenFramebuffers(PASS_COUNT, framebuffers, 0);
+        GLES20.glGenTextures(PASS_COUNT, textures, 0);
+        for (int i = 0; i < PASS_COUNT; i++) {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[i]);
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA,
+                    width, height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+            // exact texel reads between passes
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+                    GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+                    GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+                    GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+                    GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[i]);
+            GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                    GLES20.GL_TEXTURE_2D, textures[i], 0);
+            int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+            if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+                Log.e(TAG, "Framebuffer " + i + " incomplete: 0x" + Integer.toHexString(status));
+            }
+        }
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        readbackBuffer = ByteBuffer.allocateDirect(width * height * 4)
+                .order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Run all passes on the source texture.
+     * @param sourceTexture camera (external OES) or RGBA 2D texture
+     * @param external true if sourceTexture is GL_TEXTURE_EXTERNAL_OES
+     * @param texMatrix SurfaceTexture transform, or null for identity
+     * @return the edge map texture, white edges on black, rows top-down
+     */
+    public int process(int sourceTexture, boolean external, float[] texMatrix) {
+        if (width == 0 || height == 0) {
+            return 0;
+        }
+        float[] sourceMatrix = texMatrix != null ? texMatrix : identityMatrix;
+        float dx = 1f / width;
+        float dy = 1f / height;
+
+        GLES20.glViewport(0, 0, width, height);
+
+        // horizontal step expressed in source texture space
+        runPass(PASS_BLUR_H, external ? blurExternalProgram : blur2DProgram,
+                external ? GLES11Ext.GL_TEXTURE_EXTERNAL_OES : GLES20.GL_TEXTURE_2D,
+                sourceTexture, sourceMatrix, sourceMatrix[0] * dx, sourceMatrix[1] * dx);
+        runPass(PASS_BLUR_V, blurProgram, GLES20.GL_TEXTURE_2D,
+                textures[PASS_BLUR_H], identityMatrix, 0f, dy);
+        runPass(PASS_SOBEL, sobelProgram, GLES20.GL_TEXTURE_2D,
+                textures[PASS_BLUR_V], identityMatrix, dx, dy);
+
+        GLES20.glUseProgram(thresholdProgram);
+        GLES20.glUniform1f(GLES20.glGetUniformLocation(thresholdProgram, "uLow"), lowThreshold);
+        GLES20.glUniform1f(GLES20.glGetUniformLocation(thresholdProgram, "uHigh"), highThreshold);
+        runPass(PASS_THRESHOLD, thresholdProgram, GLES20.GL_TEXTURE_2D,
+                textures[PASS_SOBEL], flipMatrix, dx, dy);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        return textures[PASS_THRESHOLD];
+    }
+
+    /**
+     * Read the last edge map back as top-down RGBA rows.
+     * The returned buffer is reused by the next call.
+     */
+    public ByteBuffer readPixels() {
+        readbackBuffer.clear();
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[PASS_THRESHOLD]);
+        GLES20.glPixelStorei(GLES20.GL_PACK_ALIGNMENT, 1);
+        GLES20.glReadPixels(0, 0, width, height,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, readbackBuffer);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        readbackBuffer.position(0);
+        return readbackBuffer;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void release() {
+        deleteFramebuffers();
+        width = 0;
+        height = 0;
+    }
+
+    private void runPass(int pass, int program, int sourceTarget, int sourceTexture,
+                         float[] texMatrix, float stepX, float stepY) {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[pass]);
+        GLES20.glUseProgram(program);
+
+        int positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
+        int texCoordHandle = GLES20.glGetAttribLocation(program, "aTexCoord");
+
+        GLES20.glEnableVertexAttribArray(positionHandle);
+        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false,
+                3 * 4, vertexBuffer);
+        GLES20.glEnableVertexAttribArray(texCoordHandle);
+        GLES20.glVertexAttribPointer(texCoordHandle, 2, GLES20.GL_FLOAT, false,
+                2 * 4, texBuffer);
+
+        GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(program, "uTexMatrix"),
+                1, false, texMatrix, 0);
+        GLES20.glUniform2f(GLES20.glGetUniformLocation(program, "uTexelStep"), stepX, stepY);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(sourceTarget, sourceTexture);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "uTexture"), 0);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_FAN, 0, 4);
+
+        GLES20.glDisableVertexAttribArray(positionHandle);
+        GLES20.glDisableVertexAttribArray(texCoordHandle);
+        GLES20.glBindTexture(sourceTarget, 0);
+    }
+
+    private void deleteFramebuffers() {
+        if (width == 0 && height == 0) {
+            return;
+        }
+        GLES20.glDeleteFramebuffers(PASS_COUNT, framebuffers, 0);
+        GLES20.glDeleteTextures(PASS_COUNT, textures, 0);
+    }
+
+    // Shaders
+
+    private static final String PRECISION =
+            "#ifdef GL_FRAGMENT_PRECISION_HIGH\n" +
+            "precision highp float;\n" +
+            "#else\n" +
+            "precision mediump float;\n" +
+            "#endif\n";
+
+    private static final String VERTEX_SHADER =
+            "attribute vec4 aPosition;\n" +
+            "attribute vec4 aTexCoord;\n" +
+            "uniform mat4 uTexMatrix;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "void main() {\n" +
+            "  gl_Position = aPosition;\n" +
+            "  vTexCoord = (uTexMatrix * aTexCoord).xy;\n" +
+            "}\n";
+
+    // 5-tap Gaussian, sigma 1.5 (cv::getGaussianKernel(5, 1.5))
+    private static final String GAUSSIAN_WEIGHTS =
+            "const float W0 = 0.2920;\n" +
+            "const float W1 = 0.2339;\n" +
+            "const float W2 = 0.1201;\n";
+
+    // pass 1: RGB -> luma (BT.601, as cv::COLOR_RGBA2GRAY) and horizontal blur
+    private static final String LUMA_BLUR_SHADER =
+            "uniform vec2 uTexelStep;\n" +
+            "varying vec2 vTexCoord;\n" +
+            GAUSSIAN_WEIGHTS +
+            "float luma(vec2 uv) {\n" +
+            "  return dot(texture2D(uTexture, uv).rgb, vec3(0.299, 0.587, 0.114));\n" +
+            "}\n" +
+            "void main() {\n" +
+            "  float sum = luma(vTexCoord) * W0\n" +
+            "      + (luma(vTexCoord + uTexelStep) + luma(vTexCoord - uTexelStep)) * W1\n" +
+            "      + (luma(vTexCoord + 2.0 * uTexelStep) + luma(vTexCoord - 2.0 * uTexelStep)) * W2;\n" +
+            "  gl_FragColor = vec4(sum, sum, sum, 1.0);\n" +
+            "}\n";
+
+    // pass 2: vertical blur of the luma plane
+    private static final String BLUR_SHADER =
+            PRECISION +
+            "uniform sampler2D uTexture;\n" +
+            "uniform vec2 uTexelStep;\n" +
+            "varying vec2 vTexCoord;\n" +
+            GAUSSIAN_WEIGHTS +
+            "float luma(vec2 uv) {\n" +
+            "  return texture2D(uTexture, uv).r;\n" +
+            "}\n" +
+            "void main() {\n" +
+            "  float sum = luma(vTexCoord) * W0\n" +
+            "      + (luma(vTexCoord + uTexelStep) + luma(vTexCoord - uTexelStep)) * W1\n" +
+            "      + (luma(vTexCoord + 2.0 * uTexelStep) + luma(vTexCoord - 2.0 * uTexelStep)) * W2;\n" +
+            "  gl_FragColor = vec4(sum, sum, sum, 1.0);\n" +
+            "}\n";
+
+    // pass 3: 3x3 Sobel, L1 magnitude in 8-bit units (max 2040) packed as
+    // 16-bit fixed point in r/g, gradient direction bin (0/45/90/135 deg) in b
+    private static final String SOBEL_SHADER =
+            PRECISION +
+            "uniform sampler2D uTexture;\n" +
+            "uniform vec2 uTexelStep;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "float p(float x, float y) {\n" +
+            "  return texture2D(uTexture, vTexCoord + vec2(x, y) * uTexelStep).r * 255.0;\n" +
+            "}\n" +
+            "void main() {\n" +
+            "  float gx = p(1.0, -1.0) + 2.0 * p(1.0, 0.0) + p(1.0, 1.0)\n" +
+            "           - p(-1.0, -1.0) - 2.0 * p(-1.0, 0.0) - p(-1.0, 1.0);\n" +
+            "  float gy = p(-1.0, 1.0) + 2.0 * p(0.0, 1.0) + p(1.0, 1.0)\n" +
+            "           - p(-1.0, -1.0) - 2.0 * p(0.0, -1.0) - p(1.0, -1.0);\n" +
+            "  float m = clamp((abs(gx) + abs(gy)) / 2040.0, 0.0, 1.0) * 255.0;\n" +
+            "  float hi = floor(m);\n" +
+            "  float lo = floor(fract(m) * 255.0 + 0.5);\n" +
+            "  float angle = degrees(atan(gy, gx));\n" +
+            "  if (angle < 0.0) angle += 180.0;\n" +
+            "  float bin = mod(floor((angle + 22.5) / 45.0), 4.0);\n" +
+            "  gl_FragColor = vec4(hi / 255.0, lo / 255.0, bin / 3.0, 1.0);\n" +
+            "}\n";
+
+    // pass 4: non-maximum suppression along the gradient, then double threshold;
+    // weak edges survive when an 8-neighbour is strong (one hysteresis step)
+    private static final String THRESHOLD_SHADER =
+            PRECISION +
+            "uniform sampler2D uTexture;\n" +
+            "uniform vec2 uTexelStep;\n" +
+            "uniform float uLow;\n" +
+            "uniform float uHigh;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "float mag(vec4 t) {\n" +
+            "  return (floor(t.r * 255.0 + 0.5) + floor(t.g * 255.0 + 0.5) / 255.0) * 8.0;\n" +
+            "}\n" +
+            "float magAt(float x, float y) {\n" +
+            "  return mag(texture2D(uTexture, vTexCoord + vec2(x, y) * uTexelStep));\n" +
+            "}\n" +
+            "void main() {\n" +
+            "  vec4 c = texture2D(uTexture, vTexCoord);\n" +
+            "  float m = mag(c);\n" +
+            "  float bin = floor(c.b * 3.0 + 0.5);\n" +
+            "  vec2 d = bin < 0.5 ? vec2(1.0, 0.0)\n" +
+            "         : bin < 1.5 ? vec2(1.0, 1.0)\n" +
+            "         : bin < 2.5 ? vec2(0.0, 1.0) : vec2(-1.0, 1.0);\n" +
+            "  float edge = 0.0;\n" +
+            "  if (m >= uLow && m >= magAt(d.x, d.y) && m > magAt(-d.x, -d.y)) {\n" +
+            "    if (m >= uHigh) {\n" +
+            "      edge = 1.0;\n" +
+            "    } else {\n" +
+            "      float strongest = max(max(max(magAt(-1.0, -1.0), magAt(0.0, -1.0)),\n" +
+            "                                max(magAt(1.0, -1.0), magAt(-1.0, 0.0))),\n" +
+            "                            max(max(magAt(1.0, 0.0), magAt(-1.0, 1.0)),\n" +
+            "                                max(magAt(0.0, 1.0), magAt(1.0, 1.0))));\n" +
+            "      edge = strongest >= uHigh ? 1.0 : 0.0;\n" +
+            "    }\n" +
+            "  }\n" +
+            "  gl_FragColor = vec4(edge, edge, edge, 1.0);\n" +
+            "}\n";
+}
@@ -0,0 +1,68 @@
+#include <jni.h>
+#include <opencv2/core.hpp>
+
+/**
+ * Native side of org.opencv.core.Mat.buffer() and Mat.wrap(). The prebuilt
+ * OpenCV Java library has no entry points for these, so they live here; the JVM resolves
+ * Mat's native methods against every library loaded by the app's class
+ * loader, so it is found once libedgedetection is loaded.
+ */
+
+// ============================================================================
+// JNI METHOD IMPLEMENTATIONS
+// ============================================================================
+
+/**
+ * Direct ByteBuffer over the data of a continuous Mat, or null if the Mat is
+ * empty or not continuous. Nothing is copied; the buffer is only valid while
+ * the Mat keeps this data (see MatBuffer).
+ */
+extern "C" JNIEXPORT jobject JNICALL
+Java_org_opencv_core_Mat_nDataBuffer(
+        JNIEnv* env,
+        jclass /* clazz */,
+        jlong self) {
+    
+    auto* mat = reinterpret_cast<cv::Mat*>(self);
+    if (mat == nullptr || mat->empty() || !mat->isContinuous()) {
+        return nullptr;
+    }
+    return env->NewDirectByteBuffer(mat->data, static_cast<jlong>(mat->total() * mat->elemSize()));
+}
+
+/**
+ * Re-point an existing Mat at a direct buffer, as Mat(rows, cols, type, data,
+ * step) but without a new native object. Returns false if the buffer is not
+ * direct or the layout is invalid; the Mat is unchanged then.
+ *
+ * Like the constructor this does not check the buffer's capacity: camera
+ * chroma planes end one byte short of their last interleaved row, the byte
+ * belongs to the other plane of the same allocation.
+ */
+extern "C" JNIEXPORT jboolean JNICALL
+Java_org_opencv_core_Mat_nWrap(
+        JNIEnv* env,
+        jclass /* clazz */,
+        jlong self,
+        jint rows,
+        jint cols,
+        jint type,
+        jobject data,
+        jlong step) {
+    
+    auto* mat = reinterpret_cast<cv::Mat*>(self);
+    void* address = env->GetDirectBufferAddress(data);
+    if (mat == nullptr || address == nullptr || rows <= 0 || cols <= 0) {
+        return JNI_FALSE;
+    }
+    
+    jlong rowBytes = static_cast<jlong>(cols) * static_cast<jlong>(CV_ELEM_SIZE(type));
+    jlong rowStep = step > 0 ? step : rowBytes;
+    if (rowStep < rowBytes) {
+        return JNI_FALSE;
+    }
+    
+    // Assigning a header over external data allocates nothing
+    *mat = cv::Mat(rows, cols, type, address, static_cast<size_t>(rowStep));
+    return JNI_TRUE;
+}
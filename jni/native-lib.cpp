@@ -158,8 +158,8 @@ Java_com_yourname_edgedetection_NativeProcessor_processFrame(
         if (applyEdgeDetection) {
             outputMat = g_processor->processFrame(inputMat);
         } else {
-            // Just copy input to output (raw camera feed)
-            outputMat = inputMat.clone();
+            // Raw camera feed: share the locked input pixels, matToBitmap does the only copy
+            outputMat = inputMat;
         }
         
         // Check if processing was successful
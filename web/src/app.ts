@@ -1,22 +1,114 @@
-// Frame Statistics Interface
+import { decodeFrame, MessageType } from './protocol';
+import { ClockSync, FrameTimingTracker, Histogram } from './latency';
+import { DisplayedFrame, FrameRenderer, FrameSink, RenderEvent, RenderRequest } from './renderer';
+import { AdaptiveController, StreamProfile } from './feedback';
+
+// [min, mean, p95, max, count] of one pipeline stage over the interval, milliseconds
+type StageStats = [number, number, number, number, number];
+
+// Frame Statistics Interface, one message per server stats interval (500 ms)
 interface FrameStats {
     fps: number;
     width: number;
     height: number;
-    processingTime: number;
     frameCount: number;
+    intervalMs: number;
+    frames: number;
+    bytesPerFrame: number;
+    encoderDropped: number;
+    clientDropped: number;
+    stages: {
+        convert: StageStats;
+        process: StageStats;
+        encode: StageStats;
+        send: StageStats;
+    };
+    broadcast?: BroadcastStats;
+    clients?: ClientStats[];
+}
+
+// Profiles being encoded; each is encoded once and shared by its clients
+interface BroadcastStats {
+    clients: number;
+    keyframeCacheBytes: number;
+    profiles?: (StreamProfile & {
+        clients: number;
+        encodeCpuMs: number;
+        sendCpuMs: number;
+        frameBytes: number;
+    })[];
+}
+
+// Per-client flow control, frames are skipped while a client's send queue is full
+interface ClientStats {
+    id: number;
+    fps: number;
+    sent: number;
+    dropped: number;
+    queuedBytes: number;
 }
 
-// WebSocket Message Interface
+// WebSocket control/stats message (frames arrive as binary messages)
 interface WebSocketMessage {
-    type: 'frame' | 'stats';
-    data?: string; // base64 image
+    type: 'welcome' | 'stats' | 'subscribed' | 'adapted' | 'clockSync';
+    message?: string;
+    clientId?: number;
     stats?: FrameStats;
+    profile?: StreamProfile;
+    clientTimeMs?: number;
+    serverTimeUs?: number;
+}
+
+// A burst of clock sync round trips on connect, then one every few seconds
+const CLOCK_SYNC_BURST = 5;
+const CLOCK_SYNC_BURST_INTERVAL_MS = 200;
+const CLOCK_SYNC_INTERVAL_MS = 10_000;
+const TIMING_REFRESH_MS = 500;
+// How often the viewer reviews its own load and may ask for another profile
+const FEEDBACK_INTERVAL_MS = 2000;
+
+/**
+ * FrameRenderer running in a worker on the canvas transferred to it; frame
+ * buffers are transferred too, so nothing is copied on the way
+ */
+class WorkerFrameSink implements FrameSink {
+    private worker: Worker;
+
+    constructor(canvas: HTMLCanvasElement, onDisplayed: (frame: DisplayedFrame) => void, onError: (message: string) => void) {
+        this.worker = new Worker(new URL('./renderworker.ts', import.meta.url), { type: 'module' });
+        this.worker.onmessage = (event: MessageEvent<RenderEvent>) => {
+            const message = event.data;
+            if (message.type === 'displayed') {
+                onDisplayed(message.frame);
+            } else {
+                onError(message.message);
+            }
+        };
+        this.worker.onerror = (event) => onError(`Render worker failed: ${event.message}`);
+        const offscreen = canvas.transferControlToOffscreen();
+        this.post({ type: 'init', canvas: offscreen }, [offscreen]);
+    }
+
+    pushFrame(buffer: ArrayBuffer): void {
+        this.post({ type: 'frame', buffer }, [buffer]);
+    }
+
+    pushImage(blob: Blob): void {
+        this.post({ type: 'image', blob });
+    }
+
+    reset(): void {
+        this.post({ type: 'reset' });
+    }
+
+    private post(request: RenderRequest, transfer: Transferable[] = []): void {
+        this.worker.postMessage(request, transfer);
+    }
 }
 
 class EdgeDetectionViewer {
     private canvas: HTMLCanvasElement;
-    private ctx: CanvasRenderingContext2D;
+    private renderer: FrameSink;
     private placeholder: HTMLElement;
     
     // WebSocket connection
@@ -31,6 +123,10 @@ class EdgeDetectionViewer {
     private statusText: HTMLElement;
     private serverInput: HTMLInputElement;
     private updateServerBtn: HTMLButtonElement;
+    private resolutionSelect: HTMLSelectElement;
+    private fpsSelect: HTMLSelectElement;
+    private codecSelect: HTMLSelectElement;
+    private adaptSelect: HTMLSelectElement;
     
     // Stats Elements
     private fpsElement: HTMLElement;
@@ -38,6 +134,13 @@ class EdgeDetectionViewer {
     private processingTimeElement: HTMLElement;
     private frameCountElement: HTMLElement;
     private connectionTypeElement: HTMLElement;
+    private broadcastCpuElement: HTMLElement;
+    private deliveryElement: HTMLElement;
+    private latencyElement: HTMLElement;
+    private lossElement: HTMLElement;
+    private latencyHistogramElement: HTMLElement;
+    private networkHistogramElement: HTMLElement;
+    private gapHistogramElement: HTMLElement;
     
     // Log Container
     private logContainer: HTMLElement;
@@ -46,11 +149,25 @@ class EdgeDetectionViewer {
     private frameCount: number = 0;
     private lastFrameTime: number = 0;
     private fps: number = 0;
+    private clientId: number | null = null;
+    
+    // Frames the renderer dropped because decoding fell behind
+    private renderDropped: number = 0;
+    
+    // Steps the stream down when this viewer can't keep up, back up with headroom
+    private adaptive = new AdaptiveController();
+    private feedbackTimer: number | null = null;
+    
+    // Capture -> display latency and sequence gaps, on the phone's clock
+    private clockSync = new ClockSync();
+    private timing = new FrameTimingTracker(this.clockSync);
+    private clockSyncTimer: number | null = null;
+    private lastTimingRefresh: number = 0;
     
     constructor() {
-        // Get canvas and context
+        // Get canvas, frames are decoded and drawn off the main thread where possible
         this.canvas = document.getElementById('frameCanvas') as HTMLCanvasElement;
-        this.ctx = this.canvas.getContext('2d')!;
+        this.renderer = this.createRenderer();
         this.placeholder = document.getElementById('placeholder')!;
         
         // Get UI elements
@@ -61,6 +178,10 @@ class EdgeDetectionViewer {
         this.statusText = document.getElementById('statusText')!;
         this.serverInput = document.getElementById('serverInput') as HTMLInputElement;
         this.updateServerBtn = document.getElementById('updateServer') as HTMLButtonElement;
+        this.resolutionSelect = document.getElementById('resolutionSelect') as HTMLSelectElement;
+        this.fpsSelect = document.getElementById('fpsSelect') as HTMLSelectElement;
+        this.codecSelect = document.getElementById('codecSelect') as HTMLSelectElement;
+        this.adaptSelect = document.getElementById('adaptSelect') as HTMLSelectElement;
         
         // Get stats elements
         this.fpsElement = document.getElementById('fps')!;
@@ -68,6 +189,13 @@ class EdgeDetectionViewer {
         this.processingTimeElement = document.getElementById('processingTime')!;
         this.frameCountElement = document.getElementById('frameCount')!;
         this.connectionTypeElement = document.getElementById('connectionType')!;
+        this.broadcastCpuElement = document.getElementById('broadcastCpu')!;
+        this.deliveryElement = document.getElementById('delivery')!;
+        this.latencyElement = document.getElementById('latency')!;
+        this.lossElement = document.getElementById('loss')!;
+        this.latencyHistogramElement = document.getElementById('latencyHistogram')!;
+        this.networkHistogramElement = document.getElementById('networkHistogram')!;
+        this.gapHistogramElement = document.getElementById('gapHistogram')!;
         
         // Get log container
         this.logContainer = document.getElementById('logContainer')!;
@@ -76,6 +204,19 @@ class EdgeDetectionViewer {
         this.log('Viewer initialized', 'success');
     }
     
+    private createRenderer(): FrameSink {
+        const onDisplayed = (frame: DisplayedFrame) => this.onFrameDisplayed(frame);
+        const onError = (message: string) => this.log(message, 'error');
+        if (typeof this.canvas.transferControlToOffscreen === 'function' && typeof Worker !== 'undefined') {
+            try {
+                return new WorkerFrameSink(this.canvas, onDisplayed, onError);
+            } catch (error) {
+                this.log(`Render worker unavailable, drawing on the main thread: ${error}`, 'error');
+            }
+        }
+        return new FrameRenderer(this.canvas, onDisplayed, onError);
+    }
+    
     private initializeEventListeners(): void {
         // Connect button
         this.connectBtn.addEventListener('click', () => this.connectToAndroid());
@@ -88,6 +229,11 @@ class EdgeDetectionViewer {
         
         // Update server address
         this.updateServerBtn.addEventListener('click', () => this.updateServerAddress());
+        
+        // Stream settings apply immediately while connected
+        for (const select of [this.resolutionSelect, this.fpsSelect, this.codecSelect, this.adaptSelect]) {
+            select.addEventListener('change', () => this.subscribe());
+        }
     }
     
     private connectToAndroid(): void {
@@ -100,6 +246,7 @@ class EdgeDetectionViewer {
         
         try {
             this.ws = new WebSocket(this.wsUrl);
+            this.ws.binaryType = 'arraybuffer';
             
             this.ws.onopen = () => this.onWebSocketOpen();
             this.ws.onmessage = (event) => this.onWebSocketMessage(event);
@@ -118,30 +265,212 @@ class EdgeDetectionViewer {
         this.connectBtn.disabled = true;
         this.disconnectBtn.disabled = false;
         this.connectionTypeElement.textContent = 'WebSocket (Live)';
+        // a new connection starts with a keyframe
+        this.renderer.reset();
+        this.renderDropped = 0;
+        this.adaptive.reset(performance.now());
+        this.clockSync.reset();
+        this.timing.reset();
+        this.subscribe();
+        this.startClockSync();
+        this.startFeedback();
+    }
+    
+    private startFeedback(): void {
+        this.stopFeedback();
+        this.feedbackTimer = window.setInterval(() => this.sendFeedback(), FEEDBACK_INTERVAL_MS);
+    }
+    
+    private stopFeedback(): void {
+        if (this.feedbackTimer !== null) {
+            window.clearInterval(this.feedbackTimer);
+            this.feedbackTimer = null;
+        }
+    }
+    
+    private sendFeedback(): void {
+        // switching this off resubscribes, which puts the stream back at the top
+        if (this.adaptSelect.value !== 'auto') {
+            return;
+        }
+        const message = this.adaptive.evaluate(performance.now());
+        if (message && this.ws && this.ws.readyState === WebSocket.OPEN) {
+            this.log(`Viewer ${message.renderMs.toFixed(1)} ms/frame, ${message.dropped} not drawn, ` +
+                `asking for level ${this.adaptive.getLevel()}`);
+            this.ws.send(JSON.stringify(message));
+        }
+    }
+    
+    private startClockSync(): void {
+        this.stopClockSync();
+        let sent = 0;
+        const tick = () => {
+            this.sendClockSync();
+            sent++;
+            const delay = sent < CLOCK_SYNC_BURST ? CLOCK_SYNC_BURST_INTERVAL_MS : CLOCK_SYNC_INTERVAL_MS;
+            this.clockSyncTimer = window.setTimeout(tick, delay);
+        };
+        tick();
+    }
+    
+    private stopClockSync(): void {
+        if (this.clockSyncTimer !== null) {
+            window.clearTimeout(this.clockSyncTimer);
+            this.clockSyncTimer = null;
+        }
+    }
+    
+    private sendClockSync(): void {
+        if (this.ws && this.ws.readyState === WebSocket.OPEN) {
+            this.ws.send(JSON.stringify({ type: 'clockSync', clientTimeMs: performance.now() }));
+        }
+    }
+    
+    private subscribe(): void {
+        if (!this.ws || this.ws.readyState !== WebSocket.OPEN) {
+            return;
+        }
+        
+        const maxSize = parseInt(this.resolutionSelect.value, 10);
+        const profile: StreamProfile = {
+            maxWidth: maxSize,
+            maxHeight: maxSize,
+            maxFps: parseInt(this.fpsSelect.value, 10),
+            codec: this.codecSelect.value as StreamProfile['codec'],
+        };
+        this.ws.send(JSON.stringify({ type: 'subscribe', ...profile, stats: true }));
+        // the subscription is the top of the adaptive ladder
+        this.adaptive.subscribe(profile, performance.now());
     }
     
     private onWebSocketMessage(event: MessageEvent): void {
+        // Frames are binary, JSON is only used for control and stats
+        if (event.data instanceof ArrayBuffer) {
+            this.handleBinaryFrame(event.data);
+            return;
+        }
+        
         try {
             const message: WebSocketMessage = JSON.parse(event.data);
             
-            if (message.type === 'frame' && message.data) {
-                this.displayFrame(message.data);
-                this.updateFPS();
+            if (message.type === 'clockSync'
+                    && message.clientTimeMs !== undefined && message.serverTimeUs !== undefined) {
+                this.clockSync.addSample({
+                    clientTimeMs: message.clientTimeMs,
+                    serverTimeUs: message.serverTimeUs,
+                }, performance.now());
+                return;
             }
             
             if (message.type === 'stats' && message.stats) {
                 this.updateStats(message.stats);
             }
             
+            if ((message.type === 'subscribed' || message.type === 'adapted') && message.profile) {
+                const p = message.profile;
+                const size = p.maxWidth > 0 ? `${p.maxWidth}px` : 'full';
+                const fps = p.maxFps > 0 ? `${p.maxFps} fps` : 'max fps';
+                this.log(`${message.type === 'subscribed' ? 'Subscribed' : 'Adapted'}: ${size}, ${fps}, ${p.codec}`);
+                // a new profile is a new stream with its own sequence numbers
+                this.timing.reset();
+            }
+            
+            if (message.type === 'welcome' && message.message) {
+                this.clientId = message.clientId ?? null;
+                this.log(message.message, 'success');
+            }
+            
         } catch (error) {
-            // If it's a direct base64 string (not JSON)
-            if (typeof event.data === 'string') {
-                this.displayFrame(event.data);
-                this.updateFPS();
+            this.log(`Invalid message: ${error}`, 'error');
+        }
+    }
+    
+    private handleBinaryFrame(buffer: ArrayBuffer): void {
+        const arrivedAt = performance.now();
+        try {
+            const frame = decodeFrame(buffer);
+            if (frame.header.type !== MessageType.FRAME) {
+                return;
             }
+            this.timing.onArrival(frame.header, arrivedAt);
+            this.adaptive.onArrival();
+            // the buffer is handed over to the renderer, don't touch the frame after this
+            this.renderer.pushFrame(buffer);
+            
+        } catch (error) {
+            this.log(`Invalid frame: ${error}`, 'error');
         }
     }
     
+    /**
+     * Drawn into the canvas; the browser composites it within the next vsync
+     */
+    private onFrameDisplayed(frame: DisplayedFrame): void {
+        this.placeholder.style.display = 'none';
+        this.frameCount++;
+        this.frameCountElement.textContent = this.frameCount.toString();
+        this.resolutionElement.textContent = `${frame.width} x ${frame.height}`;
+        this.renderDropped = frame.dropped;
+        if (!frame.header) {
+            return;
+        }
+        
+        this.updateFPS();
+        this.adaptive.onDisplayed(frame);
+        const now = frame.displayedAtEpochMs - performance.timeOrigin;
+        this.timing.onDisplay(frame.header, now);
+        if (now - this.lastTimingRefresh >= TIMING_REFRESH_MS) {
+            this.lastTimingRefresh = now;
+            this.updateTiming();
+        }
+    }
+    
+    private updateTiming(): void {
+        const t = this.timing;
+        if (this.clockSync.isSynced() && t.latency.getTotal() > 0) {
+            this.latencyElement.textContent =
+                `${t.getLastLatencyMs().toFixed(0)} ms ` +
+                `(p50 ${this.formatBound(t.latency.percentile(0.5))}, ` +
+                `p95 ${this.formatBound(t.latency.percentile(0.95))}, ` +
+                `rtt ${this.clockSync.getRoundTripMs().toFixed(1)} ms)`;
+        }
+        this.lossElement.textContent =
+            `${t.getSkipped()} skipped (${(t.getLossRate() * 100).toFixed(1)}%), ` +
+            `${t.getOutOfOrder()} out of order, ${this.renderDropped} not drawn`;
+        this.renderHistogram(this.latencyHistogramElement, t.latency, 'ms');
+        this.renderHistogram(this.networkHistogramElement, t.network, 'ms');
+        this.renderHistogram(this.gapHistogramElement, t.gaps, '');
+    }
+    
+    private formatBound(bound: number): string {
+        return bound === Infinity ? 'over range' : `≤${bound} ms`;
+    }
+    
+    private renderHistogram(container: HTMLElement, histogram: Histogram, unit: string): void {
+        const max = Math.max(1, ...histogram.counts);
+        container.replaceChildren();
+        histogram.counts.forEach((count, bucket) => {
+            const row = document.createElement('div');
+            row.className = 'histogram-row';
+            
+            const label = document.createElement('span');
+            label.className = 'histogram-label';
+            label.textContent = `${histogram.label(bucket)}${unit}`;
+            
+            const bar = document.createElement('span');
+            bar.className = 'histogram-bar';
+            // leave room for the label and count on the same row
+            bar.style.width = `${(count / max) * 70}%`;
+            
+            const value = document.createElement('span');
+            value.className = 'histogram-count';
+            value.textContent = count.toString();
+            
+            row.append(label, bar, value);
+            container.appendChild(row);
+        });
+    }
+    
     private onWebSocketError(error: Event): void {
         this.log('WebSocket error occurred', 'error');
     }
@@ -152,9 +481,13 @@ class EdgeDetectionViewer {
         this.connectBtn.disabled = false;
         this.disconnectBtn.disabled = true;
         this.ws = null;
+        this.stopClockSync();
+        this.stopFeedback();
     }
     
     private disconnect(): void {
+        this.stopClockSync();
+        this.stopFeedback();
         if (this.ws) {
             this.ws.close();
             this.ws = null;
@@ -173,43 +506,8 @@ class EdgeDetectionViewer {
         
         this.log(`Loading file: ${file.name}`);
         
-        const reader = new FileReader();
-        reader.onload = (e) => {
-            const base64 = e.target?.result as string;
-            this.displayFrame(base64);
-            this.connectionTypeElement.textContent = 'Static Image';
-            this.log('Static image loaded successfully', 'success');
-        };
-        reader.readAsDataURL(file);
-    }
-    
-    private displayFrame(imageData: string): void {
-        const img = new Image();
-        
-        img.onload = () => {
-            // Hide placeholder
-            this.placeholder.style.display = 'none';
-            
-            // Update canvas size to match image
-            this.canvas.width = img.width;
-            this.canvas.height = img.height;
-            
-            // Draw image
-            this.ctx.clearRect(0, 0, this.canvas.width, this.canvas.height);
-            this.ctx.drawImage(img, 0, 0);
-            
-            // Update stats
-            this.frameCount++;
-            this.frameCountElement.textContent = this.frameCount.toString();
-            this.resolutionElement.textContent = `${img.width} x ${img.height}`;
-        };
-        
-        // Handle base64 with or without data URI prefix
-        if (imageData.startsWith('data:')) {
-            img.src = imageData;
-        } else {
-            img.src = `data:image/jpeg;base64,${imageData}`;
-        }
+        this.renderer.pushImage(file);
+        this.connectionTypeElement.textContent = 'Static Image';
     }
     
     private updateFPS(): void {
@@ -226,18 +524,35 @@ class EdgeDetectionViewer {
     
     private updateStats(stats: FrameStats): void {
         if (stats.fps !== undefined) {
-            this.fpsElement.textContent = stats.fps.toString();
+            this.fpsElement.textContent = stats.fps.toFixed(1);
+            this.adaptive.setSourceFps(stats.fps);
         }
         if (stats.width !== undefined && stats.height !== undefined) {
             this.resolutionElement.textContent = `${stats.width} x ${stats.height}`;
         }
-        if (stats.processingTime !== undefined) {
-            this.processingTimeElement.textContent = `${stats.processingTime.toFixed(2)} ms`;
+        if (stats.stages) {
+            const process = stats.stages.process;
+            this.processingTimeElement.textContent = process[4] > 0
+                ? `${process[1].toFixed(2)} ms (p95 ${process[2].toFixed(2)}, max ${process[3].toFixed(2)})`
+                : '-';
+            const encode = stats.stages.encode;
+            const send = stats.stages.send;
+            this.broadcastCpuElement.textContent =
+                `${encode[1].toFixed(2)} + ${send[1].toFixed(2)} ms ` +
+                `(p95 ${encode[2].toFixed(2)} + ${send[2].toFixed(2)}), ` +
+                `${(stats.bytesPerFrame / 1024).toFixed(1)} KB ` +
+                `(${stats.broadcast?.clients ?? 0} clients, ${stats.broadcast?.profiles?.length ?? 1} profiles)`;
         }
         if (stats.frameCount !== undefined) {
             this.frameCount = stats.frameCount;
             this.frameCountElement.textContent = stats.frameCount.toString();
         }
+        const self = stats.clients?.find((c) => c.id === this.clientId);
+        if (self) {
+            this.deliveryElement.textContent =
+                `${self.fps.toFixed(1)} fps, ${self.dropped} skipped ` +
+                `(encoder ${stats.encoderDropped}, all clients ${stats.clientDropped} / ${stats.intervalMs} ms)`;
+        }
     }
     
     private updateConnectionStatus(connected: boolean): void {
@@ -0,0 +1,153 @@
+// Edge map decoder, mirrors EdgeMapCodec.java on the Android side.
+// 1 bit per pixel (MSB first), each row coded as runs of set bits:
+//
+//   keyframe payload:  rows
+//   delta payload:     u32 reference sequence, rows of (current XOR reference)
+//   row:               varint runCount, then runCount x (varint gap, varint length)
+
+import { FrameHeader, Flags } from './protocol';
+
+export class EdgeMapDecoder {
+    private width = 0;
+    private height = 0;
+    private stride = 0;
+    private bits = new Uint8Array(0);
+    private sequence = 0;
+    private hasFrame = false;
+    private image: ImageData | null = null;
+
+    /**
+     * Apply a frame. Returns the decoded map as ImageData (white edges on black),
+     * or null if it is a delta that does not apply to the frame held here;
+     * the decoder then waits for the next keyframe.
+     */
+    decode(header: FrameHeader, payload: Uint8Array): ImageData | null {
+        return this.apply(header, payload) ? this.render() : null;
+    }
+
+    /**
+     * Apply a frame to the map without rendering it; every delta has to be
+     * applied, but only the latest map needs to be drawn. Returns false if
+     * it is a delta that does not apply to the frame held here.
+     */
+    apply(header: FrameHeader, payload: Uint8Array): boolean {
+        if (!this.accept(header, payload)) {
+            return false;
+        }
+        const keyframe = (header.flags & Flags.KEYFRAME) !== 0;
+        if (keyframe) {
+            this.bits.fill(0);
+        }
+        // XOR works for both: keyframes start from a cleared map
+        this.decodeRows(payload, keyframe ? 0 : 4, this.bits);
+        this.sequence = header.sequence;
+        return true;
+    }
+
+    /**
+     * Decode a frame into its own packed rows (stride bytes each) without
+     * applying it: the map itself for a keyframe, the XOR mask for a delta.
+     * For callers that hold the map elsewhere (the WebGL renderer keeps it in
+     * a texture); don't mix with apply(). Returns null, like apply() returns
+     * false, for a delta that does not apply. The array is reused.
+     */
+    unpack(header: FrameHeader, payload: Uint8Array): Uint8Array | null {
+        if (!this.accept(header, payload)) {
+            return null;
+        }
+        const keyframe = (header.flags & Flags.KEYFRAME) !== 0;
+        this.bits.fill(0);
+        this.decodeRows(payload, keyframe ? 0 : 4, this.bits);
+        this.sequence = header.sequence;
+        return this.bits;
+    }
+
+    getStride(): number {
+        return this.stride;
+    }
+
+    /**
+     * Resize for the frame and check that a delta references the frame held here
+     */
+    private accept(header: FrameHeader, payload: Uint8Array): boolean {
+        if (header.width !== this.width || header.height !== this.height) {
+            this.width = header.width;
+            this.height = header.height;
+            this.stride = (header.width + 7) >> 3;
+            this.bits = new Uint8Array(this.stride * header.height);
+            this.image = null;
+            this.hasFrame = false;
+        }
+
+        if ((header.flags & Flags.KEYFRAME) === 0) {
+            const reference = ((payload[0] << 24) | (payload[1] << 16) | (payload[2] << 8) | payload[3]) >>> 0;
+            if (!this.hasFrame || reference !== this.sequence) {
+                return false;
+            }
+        }
+        this.hasFrame = true;
+        return true;
+    }
+
+    /**
+     * XOR the runs of every row into target
+     */
+    private decodeRows(payload: Uint8Array, start: number, target: Uint8Array): void {
+        let pos = start;
+        const readVarint = (): number => {
+            let value = 0;
+            let shift = 0;
+            let b: number;
+            do {
+                b = payload[pos++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b & 0x80);
+            return value >>> 0;
+        };
+
+        for (let y = 0; y < this.height; y++) {
+            const rowOffset = y * this.stride;
+            const runCount = readVarint();
+            let x = 0;
+            for (let r = 0; r < runCount; r++) {
+                x += readVarint();
+                const runEnd = x + readVarint();
+                for (; x < runEnd; x++) {
+                    target[rowOffset + (x >> 3)] ^= 0x80 >> (x & 7);
+                }
+            }
+        }
+        if (pos > payload.length) {
+            // the map is undefined now, wait for a keyframe
+            this.hasFrame = false;
+            throw new Error('Truncated edge map payload');
+        }
+    }
+
+    reset(): void {
+        this.hasFrame = false;
+    }
+
+    /**
+     * The current map as ImageData; the same object is reused for every frame
+     */
+    render(): ImageData {
+        if (!this.image) {
+            this.image = new ImageData(this.width, this.height);
+        }
+        const image = this.image;
+        // one 32-bit write per pixel, ImageData is RGBA in memory order
+        const pixels = new Uint32Array(image.data.buffer);
+        const on = 0xffffffff;
+        const off = 0xff000000; // opaque black on little-endian
+        let i = 0;
+        for (let y = 0; y < this.height; y++) {
+            const rowOffset = y * this.stride;
+            for (let x = 0; x < this.width; x++) {
+                pixels[i++] = (this.bits[rowOffset + (x >> 3)] & (0x80 >> (x & 7))) ? on : off;
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,177 @@
+// Viewer load feedback. The viewer measures how long frames take from arrival
+// to screen and how many it could not draw, steps its stream down a ladder of
+// cheaper profiles when it falls behind and back up when it has headroom.
+// The server applies the request within the viewer's subscription, which
+// stays the ceiling.
+
+import { DisplayedFrame } from './renderer';
+
+// What this viewer asks the server for; viewers with equal profiles share an encode
+export interface StreamProfile {
+    maxWidth: number;
+    maxHeight: number;
+    maxFps: number;
+    codec: 'edge' | 'jpeg';
+}
+
+export interface FeedbackMessage extends StreamProfile {
+    type: 'feedback';
+    // mean arrival -> screen time and frames not drawn over the last interval
+    renderMs: number;
+    dropped: number;
+}
+
+// Size and frame rate factors relative to the subscription, cheapest last.
+// Size first, it cuts decode and upload cost by its square.
+const LADDER = [
+    { size: 1, fps: 1 },
+    { size: 0.75, fps: 1 },
+    { size: 0.5, fps: 1 },
+    { size: 0.5, fps: 0.5 },
+    { size: 0.25, fps: 0.5 },
+];
+
+const MIN_SIZE = 160;
+const MIN_FPS = 5;
+// Rate assumed for an uncapped subscription until the server reports one
+const DEFAULT_FPS = 30;
+
+// Behind: frames take most of the interval between arrivals, or many are not drawn
+const BEHIND_RENDER_SHARE = 0.8;
+const BEHIND_DROP_RATE = 0.1;
+// Headroom: this much idle time, with nothing dropped, for several intervals in a row
+const HEADROOM_RENDER_SHARE = 0.3;
+const HEADROOM_INTERVALS = 3;
+
+export class AdaptiveController {
+    private subscription: StreamProfile | null = null;
+    private level = 0;
+    // largest frame dimension seen at the top level, the base of an unlimited subscription
+    private sourceSize = 0;
+    private sourceFps = 0;
+
+    // current interval
+    private arrived = 0;
+    private displayed = 0;
+    private renderMsTotal = 0;
+    private dropped = 0;
+    private lastDroppedTotal = 0;
+    private intervalStart = 0;
+    private calmIntervals = 0;
+    // the interval after a change restarts the stream, it says little about load
+    private settling = false;
+
+    /**
+     * The viewer chose a profile; start at the top of the ladder
+     */
+    subscribe(profile: StreamProfile, now: number): void {
+        this.subscription = profile;
+        this.level = 0;
+        this.calmIntervals = 0;
+        this.settling = true;
+        this.startInterval(now);
+    }
+
+    /**
+     * The renderer's drop count restarts with the stream
+     */
+    reset(now: number): void {
+        this.lastDroppedTotal = 0;
+        this.sourceSize = 0;
+        this.startInterval(now);
+    }
+
+    onArrival(): void {
+        this.arrived++;
+    }
+
+    onDisplayed(frame: DisplayedFrame): void {
+        this.displayed++;
+        this.renderMsTotal += frame.renderMs;
+        this.dropped += Math.max(0, frame.dropped - this.lastDroppedTotal);
+        this.lastDroppedTotal = frame.dropped;
+        if (this.level === 0) {
+            this.sourceSize = Math.max(this.sourceSize, frame.width, frame.height);
+        }
+    }
+
+    /**
+     * Frame rate the phone produces, from the server's stats
+     */
+    setSourceFps(fps: number): void {
+        this.sourceFps = fps;
+    }
+
+    getLevel(): number {
+        return this.level;
+    }
+
+    /**
+     * Look at the interval that just ended; returns a message for the server
+     * if the viewer should move on the ladder
+     */
+    evaluate(now: number): FeedbackMessage | null {
+        const elapsed = now - this.intervalStart;
+        const arrived = this.arrived;
+        const renderMs = this.displayed > 0 ? this.renderMsTotal / this.displayed : 0;
+        const dropped = this.dropped;
+        const settling = this.settling;
+        this.settling = false;
+        this.startInterval(now);
+        if (!this.subscription || settling || arrived === 0 || elapsed <= 0) {
+            return null;
+        }
+
+        const frameIntervalMs = elapsed / arrived;
+        let next = this.level;
+        if (renderMs > frameIntervalMs * BEHIND_RENDER_SHARE || dropped > arrived * BEHIND_DROP_RATE) {
+            this.calmIntervals = 0;
+            next = Math.min(this.level + 1, LADDER.length - 1);
+        } else if (renderMs < frameIntervalMs * HEADROOM_RENDER_SHARE && dropped === 0) {
+            if (++this.calmIntervals >= HEADROOM_INTERVALS) {
+                this.calmIntervals = 0;
+                next = Math.max(this.level - 1, 0);
+            }
+        } else {
+            this.calmIntervals = 0;
+        }
+        if (next === this.level) {
+            return null;
+        }
+
+        this.level = next;
+        this.settling = true;
+        return { type: 'feedback', ...this.profileFor(next), renderMs, dropped };
+    }
+
+    private profileFor(level: number): StreamProfile {
+        const subscription = this.subscription!;
+        if (level === 0) {
+            return { ...subscription };
+        }
+        const step = LADDER[level];
+
+        let maxSize = subscription.maxWidth;
+        const baseSize = maxSize > 0 ? maxSize : this.sourceSize;
+        if (step.size < 1 && baseSize > 0) {
+            maxSize = Math.max(MIN_SIZE, Math.round(baseSize * step.size));
+        }
+
+        let maxFps = subscription.maxFps;
+        if (step.fps < 1) {
+            const baseFps = maxFps > 0 ? maxFps : (this.sourceFps > 0 ? this.sourceFps : DEFAULT_FPS);
+            maxFps = Math.max(MIN_FPS, Math.round(baseFps * step.fps));
+        }
+
+        // below the top the edge codec: packed maps with deltas applied on the GPU
+        return { maxWidth: maxSize, maxHeight: maxSize, maxFps, codec: 'edge' };
+    }
+
+    private startInterval(now: number): void {
+        this.intervalStart = now;
+        this.arrived = 0;
+        this.displayed = 0;
+        this.renderMsTotal = 0;
+        this.dropped = 0;
+    }
+}
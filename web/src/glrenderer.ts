@@ -0,0 +1,237 @@
+// WebGL2 drawing for FrameRenderer. Edge maps stay packed (1 bit per pixel,
+// as decoded by EdgeMapDecoder.unpack) in an R8UI texture on the GPU:
+//
+//   keyframe:  uploaded straight into the state texture
+//   delta:     uploaded as an XOR mask, state' = state ^ mask in a render pass
+//              into the other state texture (ping-pong, a texture can't be
+//              read and written in the same pass)
+//   draw:      a fragment shader unpacks the bit of each pixel and colourises it
+//
+// so the CPU only decodes runs, and uploads an eighth of the pixel count
+// instead of filling and uploading RGBA ImageData. JPEG frames are uploaded
+// as ImageBitmaps and drawn as a textured quad.
+
+const VERTEX_SHADER = `#version 300 es
+out vec2 uv;
+void main() {
+    // one triangle covering the viewport, no vertex buffer needed
+    vec2 p = vec2(float((gl_VertexID << 1) & 2), float(gl_VertexID & 2));
+    uv = p;
+    gl_Position = vec4(p * 2.0 - 1.0, 0.0, 1.0);
+}`;
+
+// Fragment coordinates map 1:1 onto texels of the packed map
+const XOR_SHADER = `#version 300 es
+precision highp float;
+precision highp usampler2D;
+uniform usampler2D state;
+uniform usampler2D mask;
+out uvec4 result;
+void main() {
+    ivec2 p = ivec2(gl_FragCoord.xy);
+    result = uvec4(texelFetch(state, p, 0).r ^ texelFetch(mask, p, 0).r, 0u, 0u, 0u);
+}`;
+
+const EDGE_SHADER = `#version 300 es
+precision highp float;
+precision highp usampler2D;
+uniform usampler2D state;
+uniform int height;
+out vec4 color;
+void main() {
+    ivec2 p = ivec2(gl_FragCoord.xy);
+    // map rows are top-down, the framebuffer is bottom-up
+    uint bits = texelFetch(state, ivec2(p.x >> 3, height - 1 - p.y), 0).r;
+    uint on = (bits >> uint(7 - (p.x & 7))) & 1u;
+    // white edges on black, as EdgeMapDecoder.render
+    color = on == 1u ? vec4(1.0) : vec4(0.0, 0.0, 0.0, 1.0);
+}`;
+
+const IMAGE_SHADER = `#version 300 es
+precision mediump float;
+uniform sampler2D image;
+in vec2 uv;
+out vec4 color;
+void main() {
+    color = texture(image, vec2(uv.x, 1.0 - uv.y));
+}`;
+
+export class GLRenderer {
+    private readonly xorProgram: WebGLProgram;
+    private readonly edgeProgram: WebGLProgram;
+    private readonly imageProgram: WebGLProgram;
+    private readonly edgeHeightLocation: WebGLUniformLocation | null;
+    private readonly vertexArray: WebGLVertexArrayObject;
+    private readonly imageTexture: WebGLTexture;
+
+    // Packed map: two state textures with framebuffers, and the upload texture for masks
+    private states: WebGLTexture[] = [];
+    private framebuffers: WebGLFramebuffer[] = [];
+    private maskTexture: WebGLTexture | null = null;
+    private current = 0;
+    private stride = 0;
+    private width = 0;
+    private height = 0;
+
+    /**
+     * Null if the canvas can't get a WebGL2 context; the caller falls back to 2D
+     */
+    static create(canvas: HTMLCanvasElement | OffscreenCanvas): GLRenderer | null {
+        const options = { alpha: false, antialias: false, depth: false, stencil: false };
+        const gl = (canvas as OffscreenCanvas).getContext('webgl2', options) as WebGL2RenderingContext | null;
+        return gl ? new GLRenderer(gl) : null;
+    }
+
+    private constructor(private readonly gl: WebGL2RenderingContext) {
+        this.xorProgram = this.link(XOR_SHADER);
+        this.edgeProgram = this.link(EDGE_SHADER);
+        this.imageProgram = this.link(IMAGE_SHADER);
+        this.edgeHeightLocation = gl.getUniformLocation(this.edgeProgram, 'height');
+
+        // texture units are fixed per program: state 0, mask 1, image 0
+        gl.useProgram(this.xorProgram);
+        gl.uniform1i(gl.getUniformLocation(this.xorProgram, 'state'), 0);
+        gl.uniform1i(gl.getUniformLocation(this.xorProgram, 'mask'), 1);
+        gl.useProgram(this.edgeProgram);
+        gl.uniform1i(gl.getUniformLocation(this.edgeProgram, 'state'), 0);
+        gl.useProgram(this.imageProgram);
+        gl.uniform1i(gl.getUniformLocation(this.imageProgram, 'image'), 0);
+
+        // drawing without attributes still needs a vertex array bound
+        this.vertexArray = gl.createVertexArray()!;
+        gl.bindVertexArray(this.vertexArray);
+
+        // packed rows are not 4-byte aligned
+        gl.pixelStorei(gl.UNPACK_ALIGNMENT, 1);
+
+        this.imageTexture = this.createTexture(gl.LINEAR);
+    }
+
+    /**
+     * Apply an unpacked edge frame: the map itself for a keyframe, the XOR mask for a delta
+     */
+    applyEdgeMap(packed: Uint8Array, stride: number, width: number, height: number, keyframe: boolean): void {
+        const gl = this.gl;
+        if (stride !== this.stride || height !== this.height) {
+            this.allocateMap(stride, height);
+        }
+        this.width = width;
+
+        if (keyframe) {
+            gl.bindTexture(gl.TEXTURE_2D, this.states[this.current]);
+            gl.texSubImage2D(gl.TEXTURE_2D, 0, 0, 0, stride, height, gl.RED_INTEGER, gl.UNSIGNED_BYTE, packed);
+            return;
+        }
+
+        gl.bindTexture(gl.TEXTURE_2D, this.maskTexture);
+        gl.texSubImage2D(gl.TEXTURE_2D, 0, 0, 0, stride, height, gl.RED_INTEGER, gl.UNSIGNED_BYTE, packed);
+
+        const next = 1 - this.current;
+        gl.bindFramebuffer(gl.FRAMEBUFFER, this.framebuffers[next]);
+        gl.viewport(0, 0, stride, height);
+        gl.useProgram(this.xorProgram);
+        gl.activeTexture(gl.TEXTURE1);
+        gl.bindTexture(gl.TEXTURE_2D, this.maskTexture);
+        gl.activeTexture(gl.TEXTURE0);
+        gl.bindTexture(gl.TEXTURE_2D, this.states[this.current]);
+        gl.drawArrays(gl.TRIANGLES, 0, 3);
+        gl.bindFramebuffer(gl.FRAMEBUFFER, null);
+        this.current = next;
+    }
+
+    /**
+     * Draw the current edge map; the canvas has to be width x height of the map
+     */
+    drawEdgeMap(): void {
+        const gl = this.gl;
+        gl.viewport(0, 0, this.width, this.height);
+        gl.useProgram(this.edgeProgram);
+        gl.uniform1i(this.edgeHeightLocation, this.height);
+        gl.activeTexture(gl.TEXTURE0);
+        gl.bindTexture(gl.TEXTURE_2D, this.states[this.current]);
+        gl.drawArrays(gl.TRIANGLES, 0, 3);
+    }
+
+    /**
+     * Draw a decoded image over the whole canvas
+     */
+    drawImage(image: ImageBitmap): void {
+        const gl = this.gl;
+        gl.activeTexture(gl.TEXTURE0);
+        gl.bindTexture(gl.TEXTURE_2D, this.imageTexture);
+        gl.texImage2D(gl.TEXTURE_2D, 0, gl.RGBA, gl.RGBA, gl.UNSIGNED_BYTE, image);
+        gl.viewport(0, 0, image.width, image.height);
+        gl.useProgram(this.imageProgram);
+        gl.drawArrays(gl.TRIANGLES, 0, 3);
+    }
+
+    private allocateMap(stride: number, height: number): void {
+        const gl = this.gl;
+        for (const texture of this.states) {
+            gl.deleteTexture(texture);
+        }
+        for (const framebuffer of this.framebuffers) {
+            gl.deleteFramebuffer(framebuffer);
+        }
+        if (this.maskTexture) {
+            gl.deleteTexture(this.maskTexture);
+        }
+
+        this.states = [];
+        this.framebuffers = [];
+        for (let i = 0; i < 2; i++) {
+            const texture = this.createTexture(gl.NEAREST);
+            gl.texStorage2D(gl.TEXTURE_2D, 1, gl.R8UI, stride, height);
+            const framebuffer = gl.createFramebuffer()!;
+            gl.bindFramebuffer(gl.FRAMEBUFFER, framebuffer);
+            gl.framebufferTexture2D(gl.FRAMEBUFFER, gl.COLOR_ATTACHMENT0, gl.TEXTURE_2D, texture, 0);
+            this.states.push(texture);
+            this.framebuffers.push(framebuffer);
+        }
+        gl.bindFramebuffer(gl.FRAMEBUFFER, null);
+        this.maskTexture = this.createTexture(gl.NEAREST);
+        gl.texStorage2D(gl.TEXTURE_2D, 1, gl.R8UI, stride, height);
+
+        this.current = 0;
+        this.stride = stride;
+        this.height = height;
+    }
+
+    /**
+     * A texture bound to TEXTURE_2D on unit 0; integer textures must use NEAREST
+     */
+    private createTexture(filter: number): WebGLTexture {
+        const gl = this.gl;
+        const texture = gl.createTexture()!;
+        gl.activeTexture(gl.TEXTURE0);
+        gl.bindTexture(gl.TEXTURE_2D, texture);
+        gl.texParameteri(gl.TEXTURE_2D, gl.TEXTURE_MIN_FILTER, filter);
+        gl.texParameteri(gl.TEXTURE_2D, gl.TEXTURE_MAG_FILTER, filter);
+        gl.texParameteri(gl.TEXTURE_2D, gl.TEXTURE_WRAP_S, gl.CLAMP_TO_EDGE);
+        gl.texParameteri(gl.TEXTURE_2D, gl.TEXTURE_WRAP_T, gl.CLAMP_TO_EDGE);
+        return texture;
+    }
+
+    private link(fragmentSource: string): WebGLProgram {
+        const gl = this.gl;
+        const program = gl.createProgram()!;
+        gl.attachShader(program, this.compile(gl.VERTEX_SHADER, VERTEX_SHADER));
+        gl.attachShader(program, this.compile(gl.FRAGMENT_SHADER, fragmentSource));
+        gl.linkProgram(program);
+        if (!gl.getProgramParameter(program, gl.LINK_STATUS)) {
+            throw new Error(`Shader link failed: ${gl.getProgramInfoLog(program)}`);
+        }
+        return program;
+    }
+
+    private compile(type: number, source: string): WebGLShader {
+        const gl = this.gl;
+        const shader = gl.createShader(type)!;
+        gl.shaderSource(shader, source);
+        gl.compileShader(shader);
+        if (!gl.getShaderParameter(shader, gl.COMPILE_STATUS)) {
+            throw new Error(`Shader compile failed: ${gl.getShaderInfoLog(shader)}`);
+        }
+        return shader;
+    }
+}
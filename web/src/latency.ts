@@ -0,0 +1,191 @@
+// Frame timing in the viewer: maps the phone's capture and send timestamps onto
+// performance.now() and keeps histograms of latency, sequence gaps and
+// out-of-order arrivals.
+
+import { FrameHeader } from './protocol';
+
+// Reply to {"type":"clockSync","clientTimeMs":t0}
+export interface ClockSyncReply {
+    clientTimeMs: number;
+    serverTimeUs: number;
+}
+
+/**
+ * NTP-style offset estimate. Each round trip gives offset = server - midpoint;
+ * the sample with the shortest round trip has the least queueing in it and wins.
+ */
+export class ClockSync {
+    private offsetMs = 0;
+    private bestRttMs = Infinity;
+    private samples = 0;
+
+    // Fresh samples replace the best one after this long, the clocks drift
+    private static readonly MAX_AGE_MS = 60_000;
+    private bestAtMs = 0;
+
+    addSample(reply: ClockSyncReply, receivedAtMs: number): void {
+        const rttMs = receivedAtMs - reply.clientTimeMs;
+        if (rttMs < 0) {
+            return;
+        }
+        this.samples++;
+        const stale = receivedAtMs - this.bestAtMs > ClockSync.MAX_AGE_MS;
+        if (rttMs <= this.bestRttMs || stale) {
+            this.bestRttMs = rttMs;
+            this.bestAtMs = receivedAtMs;
+            this.offsetMs = reply.serverTimeUs / 1000 - (reply.clientTimeMs + rttMs / 2);
+        }
+    }
+
+    isSynced(): boolean {
+        return this.samples > 0;
+    }
+
+    /**
+     * Server timestamp (microseconds) as performance.now() time
+     */
+    toLocalMs(serverTimeUs: number): number {
+        return serverTimeUs / 1000 - this.offsetMs;
+    }
+
+    getRoundTripMs(): number {
+        return this.bestRttMs;
+    }
+
+    reset(): void {
+        this.offsetMs = 0;
+        this.bestRttMs = Infinity;
+        this.bestAtMs = 0;
+        this.samples = 0;
+    }
+}
+
+/**
+ * Fixed-bucket histogram; the last bucket collects everything above the last bound
+ */
+export class Histogram {
+    readonly counts: Uint32Array;
+    private total = 0;
+
+    constructor(readonly bounds: number[]) {
+        this.counts = new Uint32Array(bounds.length + 1);
+    }
+
+    add(value: number): void {
+        let i = 0;
+        while (i < this.bounds.length && value > this.bounds[i]) {
+            i++;
+        }
+        this.counts[i]++;
+        this.total++;
+    }
+
+    getTotal(): number {
+        return this.total;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given fraction, Infinity for the overflow bucket
+     */
+    percentile(fraction: number): number {
+        const target = Math.ceil(fraction * this.total);
+        let seen = 0;
+        for (let i = 0; i < this.counts.length; i++) {
+            seen += this.counts[i];
+            if (seen >= target && seen > 0) {
+                return i < this.bounds.length ? this.bounds[i] : Infinity;
+            }
+        }
+        return 0;
+    }
+
+    label(bucket: number): string {
+        if (bucket >= this.bounds.length) {
+            return `>${this.bounds[this.bounds.length - 1]}`;
+        }
+        return `≤${this.bounds[bucket]}`;
+    }
+
+    reset(): void {
+        this.counts.fill(0);
+        this.total = 0;
+    }
+}
+
+/**
+ * Per-stream timing: call onArrival for every frame message and onDisplay once
+ * it is on screen. Sequence numbers restart with every subscription, so reset then.
+ */
+export class FrameTimingTracker {
+    // capture -> display, milliseconds
+    readonly latency = new Histogram([16, 33, 50, 66, 100, 150, 200, 300, 500]);
+    // server send -> arrival, milliseconds
+    readonly network = new Histogram([2, 5, 10, 20, 50, 100, 200]);
+    // frames missing before an arrival
+    readonly gaps = new Histogram([1, 2, 4, 8, 16]);
+
+    private lastSequence = -1;
+    private arrived = 0;
+    private skipped = 0;
+    private outOfOrder = 0;
+    private lastLatencyMs = 0;
+
+    constructor(private readonly clock: ClockSync) {}
+
+    onArrival(header: FrameHeader, arrivedAtMs: number): void {
+        this.arrived++;
+        if (this.lastSequence >= 0) {
+            if (header.sequence <= this.lastSequence) {
+                this.outOfOrder++;
+            } else if (header.sequence > this.lastSequence + 1) {
+                const gap = header.sequence - this.lastSequence - 1;
+                this.skipped += gap;
+                this.gaps.add(gap);
+            }
+        }
+        this.lastSequence = Math.max(this.lastSequence, header.sequence);
+
+        if (this.clock.isSynced()) {
+            this.network.add(arrivedAtMs - this.clock.toLocalMs(header.sendTimeUs));
+        }
+    }
+
+    onDisplay(header: FrameHeader, displayedAtMs: number): void {
+        if (!this.clock.isSynced()) {
+            return;
+        }
+        this.lastLatencyMs = displayedAtMs - this.clock.toLocalMs(header.captureTimeUs);
+        this.latency.add(this.lastLatencyMs);
+    }
+
+    getLastLatencyMs(): number {
+        return this.lastLatencyMs;
+    }
+
+    getSkipped(): number {
+        return this.skipped;
+    }
+
+    getOutOfOrder(): number {
+        return this.outOfOrder;
+    }
+
+    /**
+     * Fraction of the stream's frames that never arrived
+     */
+    getLossRate(): number {
+        const expected = this.arrived + this.skipped;
+        return expected > 0 ? this.skipped / expected : 0;
+    }
+
+    reset(): void {
+        this.latency.reset();
+        this.network.reset();
+        this.gaps.reset();
+        this.lastSequence = -1;
+        this.arrived = 0;
+        this.skipped = 0;
+        this.outOfOrder = 0;
+        this.lastLatencyMs = 0;
+    }
+}
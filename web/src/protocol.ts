@@ -0,0 +1,92 @@
+// Binary frame protocol, mirrors FrameProtocol.java on the Android side.
+// Fixed big-endian header followed by the encoded image payload:
+//
+//   offset  size  field
+//        0     1  protocol version
+//        1     1  message type
+//        2     1  codec
+//        3     1  flags
+//        4     4  sequence number
+//        8     8  capture timestamp (microseconds)
+//       16     8  send timestamp (microseconds)
+//       24     2  width
+//       26     2  height
+//       28     -  payload
+//
+// Sequence numbers increase by one per frame of a subscription. Both timestamps
+// are on the phone's camera clock; the clockSync handshake maps them onto
+// performance.now() (see latency.ts).
+//
+// Frames with Flags.KEYFRAME decode on their own; Codec.EDGE deltas need the
+// frame they reference (see edgecodec.ts).
+
+export const PROTOCOL_VERSION = 2;
+export const HEADER_SIZE = 28;
+
+export const MessageType = {
+    FRAME: 1,
+} as const;
+
+export const Codec = {
+    JPEG: 1,
+    EDGE: 2,
+} as const;
+
+export const Flags = {
+    KEYFRAME: 0x01,
+} as const;
+
+export interface FrameHeader {
+    version: number;
+    type: number;
+    codec: number;
+    flags: number;
+    sequence: number;
+    captureTimeUs: number;
+    sendTimeUs: number;
+    width: number;
+    height: number;
+}
+
+export interface BinaryFrame {
+    header: FrameHeader;
+    payload: Uint8Array;
+}
+
+export function decodeFrame(buffer: ArrayBuffer): BinaryFrame {
+    if (buffer.byteLength < HEADER_SIZE) {
+        throw new Error(`Frame too short: ${buffer.byteLength} bytes`);
+    }
+
+    const view = new DataView(buffer);
+    const header: FrameHeader = {
+        version: view.getUint8(0),
+        type: view.getUint8(1),
+        codec: view.getUint8(2),
+        flags: view.getUint8(3),
+        sequence: view.getUint32(4),
+        captureTimeUs: Number(view.getBigInt64(8)),
+        sendTimeUs: Number(view.getBigInt64(16)),
+        width: view.getUint16(24),
+        height: view.getUint16(26),
+    };
+
+    if (header.version !== PROTOCOL_VERSION) {
+        throw new Error(`Unsupported protocol version ${header.version}`);
+    }
+
+    return {
+        header,
+        // view into the message, no copy
+        payload: new Uint8Array(buffer, HEADER_SIZE),
+    };
+}
+
+export function codecMimeType(codec: number): string {
+    switch (codec) {
+        case Codec.JPEG:
+            return 'image/jpeg';
+        default:
+            throw new Error(`Unknown codec ${codec}`);
+    }
+}
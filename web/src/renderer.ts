@@ -0,0 +1,209 @@
+// Frame decoding and drawing, run in a Web Worker (renderworker.ts) on an
+// OffscreenCanvas transferred from the page, or on the main thread where
+// OffscreenCanvas is not available.
+//
+// At most one frame waits to be drawn: a frame arriving while the previous one
+// is still decoding replaces the waiting one, so a slow decode drops frames
+// instead of building up latency. Edge map deltas are still applied in order,
+// only drawing is skipped.
+//
+// Drawing uses WebGL2 where available (glrenderer.ts), edge maps then stay
+// packed and deltas are applied on the GPU; otherwise a 2D context.
+
+import { decodeFrame, codecMimeType, MessageType, Codec, Flags, FrameHeader } from './protocol';
+import { EdgeMapDecoder } from './edgecodec';
+import { GLRenderer } from './glrenderer';
+
+export interface DisplayedFrame {
+    // null for static images
+    header: FrameHeader | null;
+    width: number;
+    height: number;
+    // performance.timeOrigin + performance.now(); worker and page clocks have different origins
+    displayedAtEpochMs: number;
+    // from handing the frame to the renderer until drawn: decode, draw and waiting behind the previous frame
+    renderMs: number;
+    // frames replaced before they were drawn, since the last reset
+    dropped: number;
+}
+
+// Page -> worker
+export type RenderRequest =
+    | { type: 'init'; canvas: OffscreenCanvas }
+    | { type: 'frame'; buffer: ArrayBuffer }
+    | { type: 'image'; blob: Blob }
+    | { type: 'reset' };
+
+// Worker -> page
+export type RenderEvent =
+    | { type: 'displayed'; frame: DisplayedFrame }
+    | { type: 'error'; message: string };
+
+/**
+ * What the viewer draws frames through, a FrameRenderer or a proxy to one in a worker
+ */
+export interface FrameSink {
+    /** A binary frame message; the buffer may be transferred */
+    pushFrame(buffer: ArrayBuffer): void;
+    /** A static image file */
+    pushImage(blob: Blob): void;
+    /** A new stream starts with a keyframe */
+    reset(): void;
+}
+
+type DisplayCallback = (frame: DisplayedFrame) => void;
+type ErrorCallback = (message: string) => void;
+
+interface PendingFrame {
+    header: FrameHeader | null;
+    // image to decode, or null for the current edge map (decoder or GPU texture)
+    blob: Blob | null;
+    pushedAt: number;
+}
+
+type Canvas2D = CanvasRenderingContext2D | OffscreenCanvasRenderingContext2D;
+
+export class FrameRenderer implements FrameSink {
+    // exactly one of these; a canvas only ever has one kind of context
+    private readonly gl: GLRenderer | null;
+    private readonly ctx: Canvas2D | null;
+    private edgeDecoder = new EdgeMapDecoder();
+    private pending: PendingFrame | null = null;
+    private drawing = false;
+    private dropped = 0;
+
+    constructor(
+        private readonly canvas: HTMLCanvasElement | OffscreenCanvas,
+        private readonly onDisplayed: DisplayCallback,
+        private readonly onError: ErrorCallback,
+    ) {
+        this.gl = GLRenderer.create(canvas);
+        this.ctx = this.gl ? null : (canvas as OffscreenCanvas).getContext('2d')!;
+    }
+
+    pushFrame(buffer: ArrayBuffer): void {
+        const pushedAt = performance.now();
+        try {
+            const frame = decodeFrame(buffer);
+            if (frame.header.type !== MessageType.FRAME) {
+                return;
+            }
+            if (frame.header.codec === Codec.EDGE) {
+                if (this.applyEdgeMap(frame.header, frame.payload)) {
+                    this.enqueue({ header: frame.header, blob: null, pushedAt });
+                }
+                return;
+            }
+            const blob = new Blob([frame.payload], { type: codecMimeType(frame.header.codec) });
+            this.enqueue({ header: frame.header, blob, pushedAt });
+        } catch (error) {
+            this.onError(`Invalid frame: ${error}`);
+        }
+    }
+
+    /**
+     * Every edge frame is applied as it arrives, on the GPU with WebGL
+     */
+    private applyEdgeMap(header: FrameHeader, payload: Uint8Array): boolean {
+        if (!this.gl) {
+            return this.edgeDecoder.apply(header, payload);
+        }
+        const packed = this.edgeDecoder.unpack(header, payload);
+        if (!packed) {
+            return false;
+        }
+        const keyframe = (header.flags & Flags.KEYFRAME) !== 0;
+        this.gl.applyEdgeMap(packed, this.edgeDecoder.getStride(), header.width, header.height, keyframe);
+        return true;
+    }
+
+    pushImage(blob: Blob): void {
+        this.enqueue({ header: null, blob, pushedAt: performance.now() });
+    }
+
+    reset(): void {
+        this.edgeDecoder.reset();
+        this.pending = null;
+        this.dropped = 0;
+    }
+
+    private enqueue(frame: PendingFrame): void {
+        if (this.pending) {
+            this.dropped++;
+        }
+        this.pending = frame;
+        if (!this.drawing) {
+            this.drawPending();
+        }
+    }
+
+    private async drawPending(): Promise<void> {
+        this.drawing = true;
+        try {
+            // let frames already queued behind this one replace it first
+            await nextTask();
+            while (this.pending) {
+                const frame = this.pending;
+                this.pending = null;
+                try {
+                    await this.draw(frame);
+                } catch (error) {
+                    this.onError(`Frame decode failed: ${error}`);
+                }
+                await nextTask();
+            }
+        } finally {
+            this.drawing = false;
+        }
+    }
+
+    private async draw(frame: PendingFrame): Promise<void> {
+        let width: number;
+        let height: number;
+        if (frame.blob) {
+            const bitmap = await createImageBitmap(frame.blob);
+            try {
+                width = bitmap.width;
+                height = bitmap.height;
+                this.resize(width, height);
+                if (this.gl) {
+                    this.gl.drawImage(bitmap);
+                } else {
+                    this.ctx!.drawImage(bitmap, 0, 0);
+                }
+            } finally {
+                bitmap.close();
+            }
+        } else {
+            width = frame.header!.width;
+            height = frame.header!.height;
+            this.resize(width, height);
+            if (this.gl) {
+                this.gl.drawEdgeMap();
+            } else {
+                this.ctx!.putImageData(this.edgeDecoder.render(), 0, 0);
+            }
+        }
+        const now = performance.now();
+        this.onDisplayed({
+            header: frame.header,
+            width,
+            height,
+            displayedAtEpochMs: performance.timeOrigin + now,
+            renderMs: now - frame.pushedAt,
+            dropped: this.dropped,
+        });
+    }
+
+    private resize(width: number, height: number): void {
+        // Resizing clears and reallocates the canvas, only do it when the stream size changes
+        if (this.canvas.width !== width || this.canvas.height !== height) {
+            this.canvas.width = width;
+            this.canvas.height = height;
+        }
+    }
+}
+
+function nextTask(): Promise<void> {
+    return new Promise((resolve) => setTimeout(resolve, 0));
+}
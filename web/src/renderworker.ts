@@ -0,0 +1,32 @@
+// Worker entry for FrameRenderer; the page sends RenderRequests and gets RenderEvents back
+
+import { FrameRenderer, RenderRequest, RenderEvent } from './renderer';
+
+const scope = self as unknown as Worker;
+let renderer: FrameRenderer | null = null;
+
+function post(event: RenderEvent): void {
+    scope.postMessage(event);
+}
+
+scope.onmessage = (event: MessageEvent<RenderRequest>) => {
+    const request = event.data;
+    switch (request.type) {
+        case 'init':
+            renderer = new FrameRenderer(
+                request.canvas,
+                (frame) => post({ type: 'displayed', frame }),
+                (message) => post({ type: 'error', message }),
+            );
+            break;
+        case 'frame':
+            renderer?.pushFrame(request.buffer);
+            break;
+        case 'image':
+            renderer?.pushImage(request.blob);
+            break;
+        case 'reset':
+            renderer?.reset();
+            break;
+    }
+};